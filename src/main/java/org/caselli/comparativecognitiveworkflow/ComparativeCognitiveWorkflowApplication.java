@@ -1,9 +1,16 @@
 package org.caselli.comparativecognitiveworkflow;
 
+import io.netty.channel.ChannelOption;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.Bean;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
 
 @SpringBootApplication
 public class ComparativeCognitiveWorkflowApplication {
@@ -12,8 +19,36 @@ public class ComparativeCognitiveWorkflowApplication {
         SpringApplication.run(ComparativeCognitiveWorkflowApplication.class, args);
     }
 
+    /**
+     * Client of the inventory and routing backend: connections are pooled and kept alive, responses are
+     * gzip-compressed and every request is bounded by the connect and response timeouts.
+     */
     @Bean
-    public RestTemplate restTemplate() {
-        return new RestTemplate();
+    public WebClient inventoryWebClient(WebClient.Builder builder,
+                                        @Value("${ai4ne.inventory.base-url:http://localhost:8000}") String baseUrl,
+                                        @Value("${ai4ne.inventory.http.max-connections:50}") int maxConnections,
+                                        @Value("${ai4ne.inventory.http.pending-acquire-timeout-ms:5000}") long pendingAcquireTimeoutMs,
+                                        @Value("${ai4ne.inventory.http.max-idle-time-ms:30000}") long maxIdleTimeMs,
+                                        @Value("${ai4ne.inventory.http.connect-timeout-ms:2000}") int connectTimeoutMs,
+                                        @Value("${ai4ne.inventory.http.response-timeout-ms:10000}") long responseTimeoutMs,
+                                        @Value("${ai4ne.inventory.http.compression:true}") boolean compression,
+                                        @Value("${ai4ne.inventory.http.max-body-bytes:67108864}") int maxBodyBytes) {
+        ConnectionProvider connectionProvider = ConnectionProvider.builder("inventory")
+                .maxConnections(maxConnections)
+                .pendingAcquireTimeout(Duration.ofMillis(pendingAcquireTimeoutMs))
+                .maxIdleTime(Duration.ofMillis(maxIdleTimeMs))
+                .build();
+
+        HttpClient httpClient = HttpClient.create(connectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeoutMs)
+                .responseTimeout(Duration.ofMillis(responseTimeoutMs))
+                .keepAlive(true)
+                .compress(compression);
+
+        return builder
+                .baseUrl(baseUrl)
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .codecs(codecs -> codecs.defaultCodecs().maxInMemorySize(maxBodyBytes))
+                .build();
     }
 }
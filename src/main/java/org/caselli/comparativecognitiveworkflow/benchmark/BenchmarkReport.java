@@ -0,0 +1,90 @@
+package org.caselli.comparativecognitiveworkflow.benchmark;
+
+import org.caselli.comparativecognitiveworkflow.services.RoutingStrategy;
+
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * Machine-readable result of a benchmark run, one summary per routing strategy
+ */
+public record BenchmarkReport(Instant startedAt, Settings settings, Map<RoutingStrategy, StrategySummary> strategies) {
+
+    public record Settings(int corpusSize, int iterations, int warmup, int concurrency) { }
+
+    /**
+     * Outcome of a single routing request. Phases, tokens and tool calls come from the trace of the response.
+     */
+    public record Sample(long latencyMs, boolean failed, boolean validPath, Map<String, Long> phaseMillis,
+                         long promptTokens, long completionTokens, int toolCalls, boolean escalated) {
+
+        public static Sample failure(long latencyMs) {
+            return new Sample(latencyMs, true, false, Map.of(), 0, 0, 0, false);
+        }
+    }
+
+    public record Latency(long p50, long p95, long p99, double mean, long max) { }
+
+    /**
+     * @param validityRate fraction of the requests (failed ones included) whose selected path is valid
+     * @param phaseMeanMs mean time spent in each phase by the requests that completed
+     * @param escalationRate fraction of the completed requests escalated by the cascade to the reasoning model
+     */
+    public record StrategySummary(int requests, int failures, double validityRate, double throughputPerSecond,
+                                  Latency latencyMs, Map<String, Double> phaseMeanMs,
+                                  double promptTokensMean, double completionTokensMean, long totalTokens,
+                                  double toolCallsMean, double escalationRate) { }
+
+
+    public static StrategySummary summarize(List<Sample> samples, long wallClockMs) {
+        List<Sample> completed = samples.stream().filter(s -> !s.failed()).toList();
+        int failures = samples.size() - completed.size();
+        long valid = samples.stream().filter(Sample::validPath).count();
+
+        long[] latencies = samples.stream().mapToLong(Sample::latencyMs).sorted().toArray();
+        Latency latency = new Latency(
+                percentile(latencies, 50),
+                percentile(latencies, 95),
+                percentile(latencies, 99),
+                Arrays.stream(latencies).average().orElse(0),
+                latencies.length == 0 ? 0 : latencies[latencies.length - 1]
+        );
+
+        Map<String, Double> phaseMeanMs = new TreeMap<>();
+        for (Sample sample : completed)
+            sample.phaseMillis().forEach((phase, millis) -> phaseMeanMs.merge(phase, (double) millis, Double::sum));
+        phaseMeanMs.replaceAll((phase, total) -> total / completed.size());
+
+        long promptTokens = completed.stream().mapToLong(Sample::promptTokens).sum();
+        long completionTokens = completed.stream().mapToLong(Sample::completionTokens).sum();
+
+        return new StrategySummary(
+                samples.size(),
+                failures,
+                samples.isEmpty() ? 0 : (double) valid / samples.size(),
+                wallClockMs == 0 ? 0 : samples.size() * 1000.0 / wallClockMs,
+                latency,
+                phaseMeanMs,
+                mean(promptTokens, completed.size()),
+                mean(completionTokens, completed.size()),
+                promptTokens + completionTokens,
+                mean(completed.stream().mapToLong(Sample::toolCalls).sum(), completed.size()),
+                mean(completed.stream().filter(Sample::escalated).count(), completed.size())
+        );
+    }
+
+
+    /**
+     * Nearest-rank percentile of sorted values
+     */
+    static long percentile(long[] sorted, int percentile) {
+        if (sorted.length == 0) return 0;
+        int rank = (int) Math.ceil(percentile / 100.0 * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+
+
+    private static double mean(long total, int count) {
+        return count == 0 ? 0 : (double) total / count;
+    }
+}
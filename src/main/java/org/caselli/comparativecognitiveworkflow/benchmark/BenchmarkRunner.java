@@ -0,0 +1,167 @@
+package org.caselli.comparativecognitiveworkflow.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.caselli.comparativecognitiveworkflow.benchmark.BenchmarkReport.Sample;
+import org.caselli.comparativecognitiveworkflow.benchmark.BenchmarkReport.Settings;
+import org.caselli.comparativecognitiveworkflow.benchmark.BenchmarkReport.StrategySummary;
+import org.caselli.comparativecognitiveworkflow.services.AI4NeService;
+import org.caselli.comparativecognitiveworkflow.services.AI4NeService.RouteResponse;
+import org.caselli.comparativecognitiveworkflow.services.RoutingStrategy;
+import org.caselli.comparativecognitiveworkflow.services.RoutingTrace;
+import org.caselli.comparativecognitiveworkflow.services.ToolService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+/**
+ * Replays a corpus of routing requests against each routing strategy and writes a JSON report with latency
+ * percentiles, time per phase, tokens, tool calls and path validity rate.
+ * It runs at startup when {@code ai4ne.benchmark.enabled} is set; with the {@code benchmark} profile both the
+ * inventory and the chat model are served by the {@link BenchmarkStubServer}, so the run is fully offline.
+ */
+@Component
+@ConditionalOnProperty(name = "ai4ne.benchmark.enabled", havingValue = "true")
+public class BenchmarkRunner implements ApplicationRunner {
+
+    private final Logger logger = Logger.getLogger(BenchmarkRunner.class.getName());
+
+    private final AI4NeService ai4NeService;
+    private final ToolService toolService;
+    private final ObjectMapper objectMapper;
+    private final ConfigurableApplicationContext applicationContext;
+
+    private final Resource corpus;
+    private final List<RoutingStrategy> strategies;
+    private final int iterations;
+    private final int warmup;
+    private final int concurrency;
+    private final Path reportPath;
+    private final boolean exitWhenDone;
+    private final double minValidityRate;
+
+    public BenchmarkRunner(AI4NeService ai4NeService, ToolService toolService, ObjectMapper objectMapper,
+                           ConfigurableApplicationContext applicationContext,
+                           @Value("${ai4ne.benchmark.corpus:classpath:benchmark/corpus.json}") Resource corpus,
+                           @Value("${ai4ne.benchmark.strategies:SIMPLE_LLM,REASONING_LLM,FUNCTION_CALLING,HYBRID,CASCADE,SCORING_ENGINE}") List<RoutingStrategy> strategies,
+                           @Value("${ai4ne.benchmark.iterations:1}") int iterations,
+                           @Value("${ai4ne.benchmark.warmup:1}") int warmup,
+                           @Value("${ai4ne.benchmark.concurrency:4}") int concurrency,
+                           @Value("${ai4ne.benchmark.report:target/benchmark-report.json}") Path reportPath,
+                           @Value("${ai4ne.benchmark.exit:true}") boolean exitWhenDone,
+                           @Value("${ai4ne.benchmark.min-validity-rate:0.0}") double minValidityRate) {
+        this.ai4NeService = ai4NeService;
+        this.toolService = toolService;
+        this.objectMapper = objectMapper;
+        this.applicationContext = applicationContext;
+        this.corpus = corpus;
+        this.strategies = strategies;
+        this.iterations = iterations;
+        this.warmup = warmup;
+        this.concurrency = concurrency;
+        this.reportPath = reportPath;
+        this.exitWhenDone = exitWhenDone;
+        this.minValidityRate = minValidityRate;
+    }
+
+
+    @Override
+    public void run(ApplicationArguments args) throws Exception {
+        List<String> requests = loadCorpus();
+        Instant startedAt = Instant.now();
+        logger.info("Benchmarking " + strategies + " on " + requests.size() + " requests x " + iterations + " iterations, concurrency " + concurrency);
+
+        Map<RoutingStrategy, StrategySummary> summaries = new LinkedHashMap<>();
+        for (RoutingStrategy strategy : strategies) {
+            summaries.put(strategy, benchmark(strategy, requests));
+            logger.info(strategy + ": " + summaries.get(strategy));
+        }
+
+        BenchmarkReport report = new BenchmarkReport(startedAt, new Settings(requests.size(), iterations, warmup, concurrency), summaries);
+
+        if (reportPath.getParent() != null) Files.createDirectories(reportPath.getParent());
+        objectMapper.copy()
+                .enable(SerializationFeature.INDENT_OUTPUT)
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .writeValue(reportPath.toFile(), report);
+        logger.info("Benchmark report written to " + reportPath.toAbsolutePath());
+
+        if (exitWhenDone) {
+            boolean regression = summaries.values().stream().anyMatch(s -> s.validityRate() < minValidityRate);
+            System.exit(SpringApplication.exit(applicationContext, () -> regression ? 1 : 0));
+        }
+    }
+
+
+    /**
+     * A JSON array of requests, either strings or objects with a {@code request} field (the payload of the endpoints)
+     */
+    private List<String> loadCorpus() throws IOException {
+        try (InputStream in = corpus.getInputStream()) {
+            List<String> requests = new ArrayList<>();
+            for (JsonNode item : objectMapper.readTree(in))
+                requests.add(item.isTextual() ? item.asText() : item.path("request").asText());
+            if (requests.isEmpty()) throw new IllegalArgumentException("The benchmark corpus " + corpus + " is empty");
+            return requests;
+        }
+    }
+
+
+    private StrategySummary benchmark(RoutingStrategy strategy, List<String> requests) throws Exception {
+        for (int i = 0; i < warmup; i++) execute(strategy, requests.get(i % requests.size()));
+
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        try {
+            long start = System.nanoTime();
+
+            List<Future<Sample>> futures = new ArrayList<>();
+            for (int iteration = 0; iteration < iterations; iteration++)
+                for (String request : requests)
+                    futures.add(executor.submit(() -> execute(strategy, request)));
+
+            List<Sample> samples = new ArrayList<>();
+            for (Future<Sample> future : futures) samples.add(future.get());
+
+            return BenchmarkReport.summarize(samples, (System.nanoTime() - start) / 1_000_000);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+
+    /**
+     * Runs one request the same way the endpoints do, recording the outcome instead of propagating failures
+     */
+    private Sample execute(RoutingStrategy strategy, String request) {
+        long start = System.nanoTime();
+        try {
+            RouteResponse response = ai4NeService.route(strategy, request, toolService.getSnapshot());
+            long latencyMs = (System.nanoTime() - start) / 1_000_000;
+
+            RoutingTrace trace = response.getTrace();
+            boolean valid = response.getValidation() != null && response.getValidation().valid();
+            return new Sample(latencyMs, false, valid, trace.getPhaseMillis(), trace.getPromptTokens(),
+                    trace.getCompletionTokens(), trace.getToolCalls(), trace.getEscalation() != null);
+        } catch (RuntimeException e) {
+            logger.warning(strategy + " failed for request '" + request + "': " + e.getMessage());
+            return Sample.failure((System.nanoTime() - start) / 1_000_000);
+        }
+    }
+}
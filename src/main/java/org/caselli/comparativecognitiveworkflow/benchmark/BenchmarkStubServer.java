@@ -0,0 +1,277 @@
+package org.caselli.comparativecognitiveworkflow.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.logging.Logger;
+
+/**
+ * Local stand-in for the inventory service and for an OpenAI-compatible chat model, so that the benchmark
+ * can run offline. The topology is a synthetic layered network: a start node, {@code layers} layers of
+ * {@code width} nodes each (every node connected to all the nodes of the next layer) and an end node.
+ * The chat model answers after a configurable latency with a path through the first node of each layer,
+ * and when tools are offered it calls {@code fetchDevices} and {@code route} before answering, like the
+ * function-calling strategy is asked to do. Region selection prompts (hierarchical context) are answered
+ * with the first two regions.
+ */
+@Component
+@ConditionalOnProperty(name = "ai4ne.benchmark.stub.enabled", havingValue = "true")
+public class BenchmarkStubServer {
+
+    private final Logger logger = Logger.getLogger(BenchmarkStubServer.class.getName());
+
+    private final ObjectMapper objectMapper;
+    private final int layers;
+    private final int width;
+    private final long baseLatencyMs;
+    private final double latencyPerTokenMs;
+    private final double invalidPathRate;
+
+    private final String topology;
+    private final String devices;
+    private final List<HttpServer> servers = new ArrayList<>();
+
+    public BenchmarkStubServer(ObjectMapper objectMapper,
+                               @Value("${ai4ne.benchmark.stub.inventory-port:18000}") int inventoryPort,
+                               @Value("${ai4ne.benchmark.stub.model-port:18090}") int modelPort,
+                               @Value("${ai4ne.benchmark.stub.layers:4}") int layers,
+                               @Value("${ai4ne.benchmark.stub.width:8}") int width,
+                               @Value("${ai4ne.benchmark.stub.base-latency-ms:50}") long baseLatencyMs,
+                               @Value("${ai4ne.benchmark.stub.latency-per-token-ms:0.05}") double latencyPerTokenMs,
+                               @Value("${ai4ne.benchmark.stub.invalid-path-rate:0.0}") double invalidPathRate) throws IOException {
+        this.objectMapper = objectMapper;
+        this.layers = layers;
+        this.width = width;
+        this.baseLatencyMs = baseLatencyMs;
+        this.latencyPerTokenMs = latencyPerTokenMs;
+        this.invalidPathRate = invalidPathRate;
+
+        this.topology = objectMapper.writeValueAsString(buildTopology());
+        this.devices = objectMapper.writeValueAsString(buildDevices());
+
+        HttpServer inventory = start(inventoryPort);
+        inventory.createContext("/devices", exchange -> respondDocument(exchange, "/devices", devices));
+        inventory.createContext("/network_topology", exchange -> respondDocument(exchange, "/network_topology", topology));
+
+        HttpServer model = start(modelPort);
+        model.createContext("/v1/chat/completions", this::chatCompletion);
+
+        logger.info("Benchmark stubs listening: inventory on port " + inventoryPort + ", chat model on port " + modelPort);
+    }
+
+
+    private HttpServer start(int port) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        servers.add(server);
+        return server;
+    }
+
+
+    @PreDestroy
+    public void stop() {
+        servers.forEach(server -> server.stop(0));
+    }
+
+
+    private static String node(int layer, int index) {
+        return "n" + layer + "-" + index;
+    }
+
+
+    private ObjectNode buildTopology() {
+        ObjectNode root = objectMapper.createObjectNode();
+        ArrayNode nodes = root.putObject("topology").putArray("nodes");
+        ArrayNode connections = ((ObjectNode) root.get("topology")).putArray("connections");
+
+        nodes.addObject().put("id", "start").put("start", true).putArray("devices").add("dev-start");
+        for (int layer = 0; layer < layers; layer++)
+            for (int i = 0; i < width; i++)
+                nodes.addObject().put("id", node(layer, i)).putArray("devices").add("dev-" + node(layer, i));
+        nodes.addObject().put("id", "end").put("end", true).putArray("devices").add("dev-end");
+
+        for (int i = 0; i < width; i++) {
+            connections.addObject().put("source", "start").put("target", node(0, i));
+            connections.addObject().put("source", node(layers - 1, i)).put("target", "end");
+        }
+        for (int layer = 0; layer + 1 < layers; layer++)
+            for (int i = 0; i < width; i++)
+                for (int j = 0; j < width; j++)
+                    connections.addObject().put("source", node(layer, i)).put("target", node(layer + 1, j));
+
+        return root;
+    }
+
+
+    private ArrayNode buildDevices() {
+        String[] categories = { "Switch", "DPU", "SmartNIC", "GPU", "CPU" };
+        ArrayNode devices = objectMapper.createArrayNode();
+        devices.addObject().put("id", "dev-start").put("category", "Modem").put("bandwidth_gbps", 10);
+        for (int layer = 0; layer < layers; layer++) {
+            for (int i = 0; i < width; i++) {
+                devices.addObject()
+                        .put("id", "dev-" + node(layer, i))
+                        .put("category", categories[(layer + i) % categories.length])
+                        .put("bandwidth_gbps", 10 * (1 + i % 4))
+                        .put("latency_us", 5 + 3 * i)
+                        .put("power_w", 20 + 5 * (i % 5))
+                        .put("manual", "Datasheet of device " + node(layer, i) + " with the full list of supported protocols and offloads.");
+            }
+        }
+        devices.addObject().put("id", "dev-end").put("category", "Modem").put("bandwidth_gbps", 10);
+        return devices;
+    }
+
+
+    private void chatCompletion(HttpExchange exchange) throws IOException {
+        JsonNode request = objectMapper.readTree(readBody(exchange));
+        JsonNode messages = request.path("messages");
+
+        int promptChars = 0;
+        String lastToolCall = null;
+        boolean regionSelection = false;
+        for (JsonNode message : messages) {
+            promptChars += message.path("content").asText("").length();
+            regionSelection |= message.path("content").asText("").contains("<RegionSelection>");
+            for (JsonNode call : message.path("tool_calls")) lastToolCall = call.path("function").path("name").asText();
+        }
+        promptChars += request.path("tools").toString().length();
+
+        ObjectNode message = objectMapper.createObjectNode().put("role", "assistant");
+        String finishReason;
+        int completionChars;
+
+        boolean tools = request.path("tools").size() > 0;
+        if (regionSelection) {
+            ObjectNode selection = objectMapper.createObjectNode().put("motivation", "The start region and its neighbours contain the required devices.");
+            selection.putArray("regions").add("R0").add("R1");
+            String answer = selection.toString();
+            message.put("content", answer);
+            completionChars = answer.length();
+            finishReason = "stop";
+        } else if (tools && lastToolCall == null) {
+            completionChars = addToolCall(message, "fetchDevices", objectMapper.createObjectNode());
+            finishReason = "tool_calls";
+        } else if (tools && lastToolCall.equals("fetchDevices")) {
+            ObjectNode arguments = objectMapper.createObjectNode();
+            arguments.putArray("deviceIds").add("dev-" + node(0, 0));
+            completionChars = addToolCall(message, "route", arguments);
+            finishReason = "tool_calls";
+        } else {
+            String answer = objectMapper.writeValueAsString(answer());
+            message.put("content", answer);
+            completionChars = answer.length();
+            finishReason = "stop";
+        }
+
+        int promptTokens = (promptChars + 3) / 4;
+        int completionTokens = (completionChars + 3) / 4;
+        sleep(baseLatencyMs + Math.round(latencyPerTokenMs * (promptTokens + 10 * completionTokens)));
+
+        ObjectNode response = objectMapper.createObjectNode()
+                .put("id", "chatcmpl-" + UUID.randomUUID())
+                .put("object", "chat.completion")
+                .put("created", System.currentTimeMillis() / 1000)
+                .put("model", request.path("model").asText("stub"));
+        ObjectNode choice = response.putArray("choices").addObject();
+        choice.put("index", 0).put("finish_reason", finishReason).set("message", message);
+        response.putObject("usage")
+                .put("prompt_tokens", promptTokens)
+                .put("completion_tokens", completionTokens)
+                .put("total_tokens", promptTokens + completionTokens);
+
+        respond(exchange, 200, objectMapper.writeValueAsString(response));
+    }
+
+
+    private int addToolCall(ObjectNode message, String name, ObjectNode arguments) {
+        String serialized = arguments.toString();
+        ObjectNode call = message.putArray("tool_calls").addObject()
+                .put("id", "call-" + UUID.randomUUID())
+                .put("type", "function");
+        call.putObject("function").put("name", name).put("arguments", serialized);
+        return name.length() + serialized.length();
+    }
+
+
+    /**
+     * A path through the first node of each layer, or (with probability invalid-path-rate) one skipping a layer
+     */
+    private ObjectNode answer() {
+        boolean invalid = layers > 1 && ThreadLocalRandom.current().nextDouble() < invalidPathRate;
+
+        ObjectNode answer = objectMapper.createObjectNode();
+        ArrayNode path = answer.putArray("selectedPath").add("start");
+        for (int layer = 0; layer < layers; layer++)
+            if (!(invalid && layer == 1)) path.add(node(layer, 0));
+        path.add("end");
+        answer.putArray("qualifiedDevices").add("dev-" + node(0, 0));
+        answer.put("motivation", "The device " + node(0, 0) + " meets the requirements and the selected path is the shortest one going through it.");
+        return answer;
+    }
+
+
+    /**
+     * Inventory document with its ETag, 304 when the client already has it. The stub offers no deltas.
+     */
+    private static void respondDocument(HttpExchange exchange, String path, String document) throws IOException {
+        if (!exchange.getRequestURI().getPath().equals(path)) {
+            respond(exchange, 404, "{}");
+            return;
+        }
+
+        String etag = "\"" + Integer.toHexString(document.hashCode()) + "\"";
+        exchange.getResponseHeaders().set("ETag", etag);
+        if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            exchange.sendResponseHeaders(304, -1);
+            exchange.close();
+            return;
+        }
+        respond(exchange, 200, document);
+    }
+
+
+    private static String readBody(HttpExchange exchange) throws IOException {
+        try (InputStream body = exchange.getRequestBody()) {
+            return new String(body.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
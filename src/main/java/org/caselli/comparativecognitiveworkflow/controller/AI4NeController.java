@@ -2,32 +2,103 @@ package org.caselli.comparativecognitiveworkflow.controller;
 
 import lombok.Data;
 import org.caselli.comparativecognitiveworkflow.services.AI4NeService;
+import org.caselli.comparativecognitiveworkflow.services.BatchRoutingService;
+import org.caselli.comparativecognitiveworkflow.services.BatchRoutingService.BatchItemResult;
+import org.caselli.comparativecognitiveworkflow.services.RoutingStrategy;
+import org.caselli.comparativecognitiveworkflow.services.StrategyBulkheads;
 import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Comparator;
+import java.util.List;
 
 @RestController
 @RequestMapping("/ai4ne")
 public class AI4NeController {
     private final AI4NeService ai4NeService;
+    private final BatchRoutingService batchRoutingService;
+    private final StrategyBulkheads bulkheads;
 
-    public AI4NeController(AI4NeService ai4NeService) {
+    public AI4NeController(AI4NeService ai4NeService, BatchRoutingService batchRoutingService, StrategyBulkheads bulkheads) {
         this.ai4NeService = ai4NeService;
+        this.batchRoutingService = batchRoutingService;
+        this.bulkheads = bulkheads;
     }
 
     @PostMapping("/simple_llm")
     public Object routeWithSimpleLLM(@RequestBody RequestPayload request) {
-        return this.ai4NeService.performRoutingWithSimpleLLM(request.request);
+        return this.bulkheads.run(RoutingStrategy.SIMPLE_LLM, () -> this.ai4NeService.performRoutingWithSimpleLLM(request.request));
     }
 
     @PostMapping("/reasoning_llm")
     public Object routeWithReasoningLLM(@RequestBody RequestPayload request) {
-        return this.ai4NeService.performRoutingWithReasoningLLM(request.request);
+        return this.bulkheads.run(RoutingStrategy.REASONING_LLM, () -> this.ai4NeService.performRoutingWithReasoningLLM(request.request));
     }
 
 
     @PostMapping(value = "/function_calling",  produces = MediaType.APPLICATION_JSON_VALUE)
     public Object routeWithFunctionCalling(@RequestBody RequestPayload request) {
-        return this.ai4NeService.performRoutingWithFunctionCallingLLM(request.request);
+        return this.bulkheads.run(RoutingStrategy.FUNCTION_CALLING, () -> this.ai4NeService.performRoutingWithFunctionCallingLLM(request.request));
+    }
+
+    @PostMapping(value = "/hybrid", produces = MediaType.APPLICATION_JSON_VALUE)
+    public Object routeWithHybrid(@RequestBody RequestPayload request) {
+        return this.bulkheads.run(RoutingStrategy.HYBRID, () -> this.ai4NeService.performRoutingWithHybrid(request.request));
+    }
+
+    @PostMapping(value = "/cascade", produces = MediaType.APPLICATION_JSON_VALUE)
+    public Object routeWithCascade(@RequestBody RequestPayload request) {
+        return this.bulkheads.run(RoutingStrategy.CASCADE, () -> this.ai4NeService.performRoutingWithCascade(request.request));
+    }
+
+    @PostMapping(value = "/scoring_engine", produces = MediaType.APPLICATION_JSON_VALUE)
+    public Object routeWithScoringEngine(@RequestBody RequestPayload request) {
+        return this.bulkheads.run(RoutingStrategy.SCORING_ENGINE, () -> this.ai4NeService.performRoutingWithScoringEngine(request.request));
+    }
+
+    @PostMapping(value = "/simple_llm/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Object>> streamRouteWithSimpleLLM(@RequestBody RequestPayload request) {
+        return this.bulkheads.stream(RoutingStrategy.SIMPLE_LLM, () -> this.ai4NeService.streamRouting(RoutingStrategy.SIMPLE_LLM, request.request));
+    }
+
+    @PostMapping(value = "/reasoning_llm/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Object>> streamRouteWithReasoningLLM(@RequestBody RequestPayload request) {
+        return this.bulkheads.stream(RoutingStrategy.REASONING_LLM, () -> this.ai4NeService.streamRouting(RoutingStrategy.REASONING_LLM, request.request));
+    }
+
+    @PostMapping(value = "/function_calling/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Object>> streamRouteWithFunctionCalling(@RequestBody RequestPayload request) {
+        return this.bulkheads.stream(RoutingStrategy.FUNCTION_CALLING, () -> this.ai4NeService.streamRouting(RoutingStrategy.FUNCTION_CALLING, request.request));
+    }
+
+    @PostMapping(value = "/hybrid/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Object>> streamRouteWithHybrid(@RequestBody RequestPayload request) {
+        return this.bulkheads.stream(RoutingStrategy.HYBRID, () -> this.ai4NeService.streamRouting(RoutingStrategy.HYBRID, request.request));
+    }
+
+    @PostMapping(value = "/cascade/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Object>> streamRouteWithCascade(@RequestBody RequestPayload request) {
+        return this.bulkheads.stream(RoutingStrategy.CASCADE, () -> this.ai4NeService.streamRouting(RoutingStrategy.CASCADE, request.request));
+    }
+
+    @PostMapping(value = "/scoring_engine/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Object>> streamRouteWithScoringEngine(@RequestBody RequestPayload request) {
+        return this.bulkheads.stream(RoutingStrategy.SCORING_ENGINE, () -> this.ai4NeService.streamRouting(RoutingStrategy.SCORING_ENGINE, request.request));
+    }
+
+    @PostMapping(value = "/batch", produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<List<BatchItemResult>> routeBatch(@RequestBody BatchRequestPayload request) {
+        return this.batchRoutingService.route(request.strategy, request.requests)
+                .collectSortedList(Comparator.comparingInt(BatchItemResult::index));
+    }
+
+    @PostMapping(value = "/batch/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<BatchItemResult>> streamBatch(@RequestBody BatchRequestPayload request) {
+        return this.batchRoutingService.route(request.strategy, request.requests)
+                .map(result -> ServerSentEvent.builder(result).event("result").id(String.valueOf(result.index())).build());
     }
 
     @Data
@@ -35,4 +106,10 @@ public class AI4NeController {
         private String request;
 
     }
+
+    @Data
+    public static class BatchRequestPayload {
+        private RoutingStrategy strategy;
+        private List<String> requests;
+    }
 }
@@ -0,0 +1,40 @@
+package org.caselli.comparativecognitiveworkflow.controller;
+
+import org.caselli.comparativecognitiveworkflow.services.InventoryCache;
+import org.caselli.comparativecognitiveworkflow.services.ResponseCache;
+import org.caselli.comparativecognitiveworkflow.services.ToolService;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@RequestMapping("/admin")
+public class AdminController {
+    private final ToolService toolService;
+    private final ResponseCache responseCache;
+
+    public AdminController(ToolService toolService, ResponseCache responseCache) {
+        this.toolService = toolService;
+        this.responseCache = responseCache;
+    }
+
+    @GetMapping("/inventory_cache")
+    public InventoryCache.Stats inventoryCacheStats() {
+        return this.toolService.getCacheStats();
+    }
+
+    @PostMapping("/inventory_cache/invalidate")
+    public InventoryCache.Stats invalidateInventoryCache() {
+        this.toolService.invalidateCache();
+        return this.toolService.getCacheStats();
+    }
+
+    @GetMapping("/response_cache")
+    public ResponseCache.Stats responseCacheStats() {
+        return this.responseCache.stats();
+    }
+
+    @PostMapping("/response_cache/invalidate")
+    public ResponseCache.Stats invalidateResponseCache() {
+        this.responseCache.invalidate();
+        return this.responseCache.stats();
+    }
+}
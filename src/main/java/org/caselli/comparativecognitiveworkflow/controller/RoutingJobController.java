@@ -0,0 +1,46 @@
+package org.caselli.comparativecognitiveworkflow.controller;
+
+import lombok.Data;
+import org.caselli.comparativecognitiveworkflow.services.RoutingJobService;
+import org.caselli.comparativecognitiveworkflow.services.RoutingJobStore.RoutingJob;
+import org.caselli.comparativecognitiveworkflow.services.RoutingStrategy;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.net.URI;
+
+/**
+ * Asynchronous variant of the routing endpoints: the job is accepted immediately and its status and result
+ * are polled at its location, or sent to the callback URL when it finishes.
+ */
+@RestController
+@RequestMapping("/ai4ne/jobs")
+public class RoutingJobController {
+    private final RoutingJobService routingJobService;
+
+    public RoutingJobController(RoutingJobService routingJobService) {
+        this.routingJobService = routingJobService;
+    }
+
+    @PostMapping(produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<RoutingJob> submit(@RequestBody JobRequestPayload request) {
+        RoutingJob job = this.routingJobService.submit(request.strategy, request.request, request.callbackUrl);
+        return ResponseEntity.accepted().location(URI.create("/ai4ne/jobs/" + job.id())).body(job);
+    }
+
+    @GetMapping(value = "/{id}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public RoutingJob get(@PathVariable String id) {
+        return this.routingJobService.get(id)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Unknown or expired routing job " + id));
+    }
+
+    @Data
+    public static class JobRequestPayload {
+        private RoutingStrategy strategy;
+        private String request;
+        private String callbackUrl;
+    }
+}
@@ -0,0 +1,229 @@
+package org.caselli.comparativecognitiveworkflow.model;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.*;
+
+/**
+ * Attribute index over the devices of a snapshot, built once per snapshot.
+ * Numeric attributes (flattened to dotted paths, e.g. {@code specs.bandwidth_gbps}) get a range index, and all the
+ * textual values (categories, protocol lists, manuals) an inverted index of their normalized terms.
+ * <p>
+ * An attribute may occur several times in a device, e.g. once per port: range queries then use the sum of the
+ * occurrences for lower bounds ({@link #atLeast}, the capacities of the ports can be aggregated) and their minimum
+ * for upper bounds ({@link #atMost}), so that a device is never excluded because of how its specs are laid out.
+ * The attributes with a recognized {@link SpecDimension} are also summarized per device ({@link #spec}), in columns
+ * indexed by device ordinal.
+ */
+public final class DeviceIndex {
+
+    private static final List<String> CATEGORY_FIELDS = List.of("category", "type", "device_type", "kind");
+
+    private final Set<String> deviceIds;
+    private final Map<String, Integer> ordinals;
+    private final Map<String, RangeIndex> numeric;
+    private final Map<String, Set<String>> terms;
+    // Columns by dimension, indexed by device ordinal (NaN when not reported)
+    private final double[][] specs;
+    private final String[] categories;
+
+    private DeviceIndex(Set<String> deviceIds, Map<String, Integer> ordinals, Map<String, RangeIndex> numeric,
+                        Map<String, Set<String>> terms, double[][] specs, String[] categories) {
+        this.deviceIds = deviceIds;
+        this.ordinals = ordinals;
+        this.numeric = numeric;
+        this.terms = terms;
+        this.specs = specs;
+        this.categories = categories;
+    }
+
+
+    /**
+     * Index built one device at a time, so that the devices do not have to be in memory all together
+     */
+    public static final class Builder {
+        private final Map<String, Integer> ordinals = new LinkedHashMap<>();
+        private final List<String> categories = new ArrayList<>();
+        private final Map<String, Map<String, double[]>> values = new TreeMap<>();
+        private final Map<String, Set<String>> terms = new HashMap<>();
+
+        public Builder add(String id, JsonNode device) {
+            if (ordinals.putIfAbsent(id, ordinals.size()) == null) categories.add(categoryOf(device));
+            collect(id, "", device, values, terms);
+            return this;
+        }
+
+        public DeviceIndex build() {
+            Map<String, RangeIndex> numeric = new LinkedHashMap<>();
+            values.forEach((attribute, byDevice) -> numeric.put(attribute, RangeIndex.of(byDevice)));
+
+            return new DeviceIndex(Collections.unmodifiableSet(new LinkedHashSet<>(ordinals.keySet())), Map.copyOf(ordinals),
+                    numeric, terms, specs(values, ordinals), categories.toArray(new String[0]));
+        }
+
+        private static String categoryOf(JsonNode device) {
+            for (String field : CATEGORY_FIELDS)
+                if (device.hasNonNull(field) && device.get(field).isValueNode()) return device.get(field).asText();
+            return null;
+        }
+    }
+
+
+    /**
+     * For each dimension, the value of each device in its unit (NaN if not reported): the largest of the attributes of
+     * the dimension, each one aggregated over its occurrences (summed, except latencies, which take the lowest value)
+     */
+    private static double[][] specs(Map<String, Map<String, double[]>> values, Map<String, Integer> ordinals) {
+        double[][] specs = new double[SpecDimension.values().length][ordinals.size()];
+        for (double[] column : specs) Arrays.fill(column, Double.NaN);
+
+        values.forEach((attribute, byDevice) -> SpecDimension.of(attribute).ifPresent(unit -> byDevice.forEach((device, bounds) -> {
+            double[] column = specs[unit.dimension().ordinal()];
+            int i = ordinals.get(device);
+            double value = (unit.dimension() == SpecDimension.LATENCY ? bounds[0] : bounds[1]) * unit.scale();
+            column[i] = Double.isNaN(column[i]) ? value : Math.max(column[i], value);
+        })));
+        return specs;
+    }
+
+
+    private static void collect(String id, String path, JsonNode value, Map<String, Map<String, double[]>> values,
+                                Map<String, Set<String>> terms) {
+        if (value.isObject()) {
+            value.properties().forEach(field -> collect(id, path.isEmpty() ? field.getKey() : path + "." + field.getKey(),
+                    field.getValue(), values, terms));
+        } else if (value.isArray()) {
+            value.forEach(item -> collect(id, path, item, values, terms));
+        } else if (value.isNumber()) {
+            // { min, sum } of the occurrences of the attribute in the device
+            double[] bounds = values.computeIfAbsent(path, p -> new HashMap<>())
+                    .computeIfAbsent(id, d -> new double[]{ Double.POSITIVE_INFINITY, 0 });
+            bounds[0] = Math.min(bounds[0], value.asDouble());
+            bounds[1] += value.asDouble();
+        } else if (value.isTextual()) {
+            for (String term : terms(value.asText()))
+                terms.computeIfAbsent(term, t -> new HashSet<>()).add(id);
+        }
+    }
+
+
+    /**
+     * Normalized terms of a text: lower-case alphanumeric tokens, plus each pair of adjacent tokens joined,
+     * so that "RoCE v2", "RoCEv2" and "rocev2" or "SR-IOV" and "SRIOV" share a term
+     */
+    public static Set<String> terms(String text) {
+        String[] tokens = text.toLowerCase(Locale.ROOT).split("[^a-z0-9]+");
+        Set<String> terms = new HashSet<>();
+        String previous = null;
+        for (String token : tokens) {
+            if (token.isEmpty()) continue;
+            terms.add(token);
+            if (previous != null) terms.add(previous + token);
+            previous = token;
+        }
+        return terms;
+    }
+
+
+    public Set<String> deviceIds() {
+        return deviceIds;
+    }
+
+    public Set<String> numericAttributes() {
+        return Collections.unmodifiableSet(numeric.keySet());
+    }
+
+
+    /**
+     * @return the devices that report the attribute
+     */
+    public Set<String> reporting(String attribute) {
+        RangeIndex index = numeric.get(attribute);
+        return index == null ? Set.of() : index.devices(0, index.upperIds.length, index.upperIds);
+    }
+
+
+    /**
+     * @return the devices whose (aggregated) value of the attribute is at least the given one
+     */
+    public Set<String> atLeast(String attribute, double value) {
+        RangeIndex index = numeric.get(attribute);
+        if (index == null) return Set.of();
+        return index.devices(firstAtLeast(index.upper, value), index.upper.length, index.upperIds);
+    }
+
+
+    /**
+     * @return the devices whose (smallest) value of the attribute is at most the given one
+     */
+    public Set<String> atMost(String attribute, double value) {
+        RangeIndex index = numeric.get(attribute);
+        if (index == null) return Set.of();
+        return index.devices(0, firstAtLeast(index.lower, Math.nextUp(value)), index.lowerIds);
+    }
+
+
+    /**
+     * @return the value of the dimension for the device in the unit of the dimension, NaN if the device does not report it
+     */
+    public double spec(String deviceId, SpecDimension dimension) {
+        Integer device = ordinals.get(deviceId);
+        return device == null ? Double.NaN : specs[dimension.ordinal()][device];
+    }
+
+
+    /**
+     * @return the category (or type) of the device, {@code null} if it reports none
+     */
+    public String category(String deviceId) {
+        Integer device = ordinals.get(deviceId);
+        return device == null ? null : categories[device];
+    }
+
+
+    /**
+     * @param term a normalized term, see {@link #terms(String)}
+     * @return the devices mentioning the term in any of their textual attributes
+     */
+    public Set<String> mentioning(String term) {
+        return Collections.unmodifiableSet(terms.getOrDefault(term, Set.of()));
+    }
+
+
+    private static int firstAtLeast(double[] sorted, double value) {
+        int low = 0, high = sorted.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sorted[mid] < value) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+
+
+    /**
+     * Values of one attribute sorted in ascending order, with the parallel arrays of the devices they belong to
+     */
+    private record RangeIndex(double[] lower, String[] lowerIds, double[] upper, String[] upperIds) {
+
+        static RangeIndex of(Map<String, double[]> byDevice) {
+            List<Map.Entry<String, double[]>> byLower = new ArrayList<>(byDevice.entrySet());
+            byLower.sort(Comparator.comparingDouble(e -> e.getValue()[0]));
+            List<Map.Entry<String, double[]>> byUpper = new ArrayList<>(byDevice.entrySet());
+            byUpper.sort(Comparator.comparingDouble(e -> e.getValue()[1]));
+
+            return new RangeIndex(
+                    byLower.stream().mapToDouble(e -> e.getValue()[0]).toArray(),
+                    byLower.stream().map(Map.Entry::getKey).toArray(String[]::new),
+                    byUpper.stream().mapToDouble(e -> e.getValue()[1]).toArray(),
+                    byUpper.stream().map(Map.Entry::getKey).toArray(String[]::new)
+            );
+        }
+
+        Set<String> devices(int from, int to, String[] ids) {
+            Set<String> devices = new HashSet<>(Math.max(16, 2 * (to - from)));
+            for (int i = from; i < to; i++) devices.add(ids[i]);
+            return devices;
+        }
+    }
+}
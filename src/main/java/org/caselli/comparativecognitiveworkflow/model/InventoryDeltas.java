@@ -0,0 +1,129 @@
+package org.caselli.comparativecognitiveworkflow.model;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Applies in place the changes published by the inventory service to a previously downloaded document.
+ * <ul>
+ *     <li>topology: {@code {"nodes": {"upserted": [...], "removed": [ids]}, "connections": {"added": [...], "removed": [...]}}},
+ *     removing a node also removes its connections, and removed connections match in either direction unless the
+ *     topology is directed</li>
+ *     <li>devices: {@code {"upserted": [...], "removed": [ids]}}, an upserted device replacing the one with the same id</li>
+ * </ul>
+ * A delta that does not fit the document throws {@link IllegalArgumentException}, and the document must then be
+ * downloaded again as it may have been partially modified.
+ * <p>
+ * Only the transfer is incremental: the patched document is then serialized, hashed and parsed into the model of the
+ * snapshot in full, like a downloaded one, so a delta saves bandwidth and backend work but little CPU.
+ */
+public final class InventoryDeltas {
+
+    private InventoryDeltas() { }
+
+
+    public static void applyToTopology(JsonNode root, JsonNode delta, boolean directed) {
+        if (!(TopologyParser.unwrap(root) instanceof ObjectNode topology) || !(topology.get("nodes") instanceof ArrayNode nodes))
+            throw new IllegalArgumentException("The topology has no node list to apply the delta to");
+
+        Set<String> removedNodes = ids(delta.path("nodes").path("removed"));
+        Map<String, JsonNode> upsertedNodes = new HashMap<>();
+        for (JsonNode node : delta.path("nodes").path("upserted")) upsertedNodes.put(requireId(nodeId(node), node), node);
+
+        for (int i = nodes.size() - 1; i >= 0; i--) {
+            String id = nodeId(nodes.get(i));
+            if (removedNodes.contains(id)) nodes.remove(i);
+            else if (upsertedNodes.containsKey(id)) nodes.set(i, upsertedNodes.remove(id));
+        }
+        for (JsonNode node : delta.path("nodes").path("upserted")) {
+            if (upsertedNodes.remove(nodeId(node)) != null) nodes.add(node);
+        }
+
+        Set<String> removedEdges = new HashSet<>();
+        for (JsonNode edge : delta.path("connections").path("removed")) removedEdges.add(edgeKey(requireEndpoints(edge)));
+
+        ArrayNode edges = null;
+        for (String field : TopologyParser.EDGE_LISTS) {
+            if (!(topology.get(field) instanceof ArrayNode list)) continue;
+            if (edges == null) edges = list;
+
+            for (Iterator<JsonNode> it = list.elements(); it.hasNext(); ) {
+                String[] endpoints = TopologyParser.endpointsOf(it.next());
+                if (endpoints == null) continue;
+                if (removedNodes.contains(endpoints[0]) || removedNodes.contains(endpoints[1])
+                        || removedEdges.contains(edgeKey(endpoints))
+                        || (!directed && removedEdges.contains(edgeKey(new String[]{ endpoints[1], endpoints[0] }))))
+                    it.remove();
+            }
+        }
+
+        JsonNode added = delta.path("connections").path("added");
+        if (added.isEmpty()) return;
+        if (edges == null) edges = topology.putArray(TopologyParser.EDGE_LISTS[0]);
+        for (JsonNode edge : added) {
+            requireEndpoints(edge);
+            edges.add(edge);
+        }
+    }
+
+
+    public static void applyToDevices(JsonNode root, JsonNode delta) {
+        JsonNode list = root.has("devices") ? root.get("devices") : root;
+        Set<String> removed = ids(delta.path("removed"));
+
+        if (list instanceof ObjectNode byId) {
+            // Map from id to specs: the upserted devices carry their id
+            byId.remove(removed);
+            for (JsonNode device : delta.path("upserted")) byId.set(requireId(PromptInventory.idOf(device), device), device);
+            return;
+        }
+        if (!(list instanceof ArrayNode devices))
+            throw new IllegalArgumentException("The devices are neither a list nor a map to apply the delta to");
+
+        Map<String, JsonNode> upserted = new HashMap<>();
+        for (JsonNode device : delta.path("upserted")) upserted.put(requireId(PromptInventory.idOf(device), device), device);
+
+        for (int i = devices.size() - 1; i >= 0; i--) {
+            String id = PromptInventory.idOf(devices.get(i));
+            if (removed.contains(id)) devices.remove(i);
+            else if (upserted.containsKey(id)) devices.set(i, upserted.remove(id));
+        }
+        for (JsonNode device : delta.path("upserted")) {
+            if (upserted.remove(PromptInventory.idOf(device)) != null) devices.add(device);
+        }
+    }
+
+
+    private static Set<String> ids(JsonNode array) {
+        Set<String> ids = new HashSet<>();
+        for (JsonNode id : array) ids.add(id.asText());
+        return ids;
+    }
+
+    private static String nodeId(JsonNode node) {
+        JsonNode id = node.isValueNode() ? node : node.get("id");
+        return id == null || id.isNull() ? null : id.asText();
+    }
+
+    private static String requireId(String id, JsonNode element) {
+        if (id == null) throw new IllegalArgumentException("Delta element without id: " + element);
+        return id;
+    }
+
+    private static String[] requireEndpoints(JsonNode edge) {
+        String[] endpoints = TopologyParser.endpointsOf(edge);
+        if (endpoints == null) throw new IllegalArgumentException("Delta connection without endpoints: " + edge);
+        return endpoints;
+    }
+
+    private static String edgeKey(String[] endpoints) {
+        return endpoints[0] + '\u0000' + endpoints[1];
+    }
+}
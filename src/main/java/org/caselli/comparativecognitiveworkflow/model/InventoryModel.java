@@ -0,0 +1,199 @@
+package org.caselli.comparativecognitiveworkflow.model;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Typed, immutable view of an inventory snapshot, built once per snapshot version and shared by all the requests:
+ * the topology graph (node ids interned to ordinals, adjacency in CSR arrays), the specs of its connections, the
+ * device index (specs in columns by device ordinal) and the compact JSON fragments re-serialized in the prompts.
+ * <p>
+ * Both documents are read with the streaming parser, materializing a single node, connection or device at a time,
+ * so the full JSON trees are never in memory. Wrappers ({@code network_topology}, {@code topology}, {@code devices})
+ * and the field aliases are the ones accepted by {@link TopologyParser} and {@link PromptInventory#idOf}. Devices can be
+ * listed in an array, in an array wrapped in a {@code devices} field or in a map from id to specs.
+ */
+public final class InventoryModel {
+
+    private static final List<String> WRAPPERS = Arrays.asList(TopologyParser.WRAPPERS);
+    private static final List<String> EDGE_LISTS = Arrays.asList(TopologyParser.EDGE_LISTS);
+
+    private final long version;
+    private final NetworkGraph graph;
+    private final LinkSpecs links;
+    private final DeviceIndex devices;
+    private final PromptInventory prompt;
+
+    private InventoryModel(long version, NetworkGraph graph, LinkSpecs links, DeviceIndex devices, PromptInventory prompt) {
+        this.version = version;
+        this.graph = graph;
+        this.links = links;
+        this.devices = devices;
+        this.prompt = prompt;
+    }
+
+
+    /**
+     * @param excludedAttributes device attributes dropped from the prompt fragments
+     */
+    public static InventoryModel parse(InventorySnapshot snapshot, ObjectMapper objectMapper, boolean directed,
+                                       Set<String> excludedAttributes) {
+        Builders builders = new Builders(directed, objectMapper, excludedAttributes);
+
+        try (JsonParser parser = objectMapper.createParser(snapshot.networkTopology())) {
+            if (parser.nextToken() != JsonToken.START_OBJECT)
+                throw new IllegalArgumentException("The network topology is not a JSON object");
+            readTopology(parser, builders);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("The network topology is not valid JSON", e);
+        }
+
+        try (JsonParser parser = objectMapper.createParser(snapshot.devices())) {
+            readDevices(parser, builders);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("The devices are not valid JSON", e);
+        }
+
+        try {
+            NetworkGraph graph = builders.graph.build();
+            return new InventoryModel(snapshot.version(), graph, builders.links.build(graph), builders.devices.build(),
+                    builders.prompt.build(graph));
+        } catch (IOException e) {
+            throw new IllegalArgumentException("The inventory could not be serialized", e);
+        }
+    }
+
+
+    /**
+     * Reads the fields of the current object: node and connection lists, and the wrappers containing them
+     */
+    private static void readTopology(JsonParser parser, Builders builders) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+
+            if (value == JsonToken.START_ARRAY && field.equals("nodes")) {
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    JsonNode node = parser.readValueAsTree();
+                    TopologyParser.addNode(builders.graph, node);
+                    builders.prompt.addNode(node);
+                }
+            } else if (value == JsonToken.START_ARRAY && EDGE_LISTS.contains(field)) {
+                builders.prompt.edgeList(field);
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    JsonNode edge = parser.readValueAsTree();
+                    TopologyParser.addEdge(builders.graph, edge);
+                    builders.links.add(edge);
+                    builders.prompt.addEdge(edge);
+                }
+            } else if (value == JsonToken.START_OBJECT && WRAPPERS.contains(field)) {
+                readTopology(parser, builders);
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+
+    private static void readDevices(JsonParser parser, Builders builders) throws IOException {
+        JsonToken root = parser.nextToken();
+        if (root == JsonToken.START_ARRAY) {
+            readDeviceList(parser, builders);
+            return;
+        }
+        if (root != JsonToken.START_OBJECT) return;
+
+        // A map from id to specs, unless it has a devices field, which then holds the devices
+        boolean wrapped = false;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+
+            if (!wrapped && field.equals("devices")) {
+                wrapped = true;
+                builders.resetDevices();
+                if (value == JsonToken.START_ARRAY) readDeviceList(parser, builders);
+                else if (value == JsonToken.START_OBJECT) readDeviceMap(parser, builders);
+                else parser.skipChildren();
+            } else if (!wrapped) {
+                builders.addDevice(field, parser.readValueAsTree());
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+
+    private static void readDeviceList(JsonParser parser, Builders builders) throws IOException {
+        int index = 0;
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            JsonNode device = parser.readValueAsTree();
+            String id = PromptInventory.idOf(device);
+            builders.addDevice(id != null ? id : "#" + index, device);
+            index++;
+        }
+    }
+
+
+    private static void readDeviceMap(JsonParser parser, Builders builders) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String id = parser.currentName();
+            parser.nextToken();
+            builders.addDevice(id, parser.readValueAsTree());
+        }
+    }
+
+
+    private static final class Builders {
+        final NetworkGraph.Builder graph;
+        final LinkSpecs.Builder links = new LinkSpecs.Builder();
+        final PromptInventory.Builder prompt;
+        DeviceIndex.Builder devices = new DeviceIndex.Builder();
+
+        Builders(boolean directed, ObjectMapper objectMapper, Set<String> excludedAttributes) {
+            this.graph = NetworkGraph.builder(directed);
+            this.prompt = new PromptInventory.Builder(objectMapper, excludedAttributes);
+        }
+
+        void addDevice(String id, JsonNode device) throws IOException {
+            devices.add(id, device);
+            prompt.addDevice(id, device);
+        }
+
+        void resetDevices() {
+            devices = new DeviceIndex.Builder();
+            prompt.clearDevices();
+        }
+    }
+
+
+    public long version() {
+        return version;
+    }
+
+    public NetworkGraph graph() {
+        return graph;
+    }
+
+    public LinkSpecs links() {
+        return links;
+    }
+
+    public DeviceIndex devices() {
+        return devices;
+    }
+
+    /**
+     * Compact re-serialization of any part of the inventory for the prompts
+     */
+    public PromptInventory prompt() {
+        return prompt;
+    }
+}
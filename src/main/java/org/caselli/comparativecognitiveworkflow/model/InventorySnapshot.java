@@ -0,0 +1,27 @@
+package org.caselli.comparativecognitiveworkflow.model;
+
+import java.time.Instant;
+
+/**
+ * Devices and topology of the network as downloaded from the inventory service at a given time.
+ * Every request reads a single snapshot, so devices and topology are always consistent with each other.
+ *
+ * @param version increases every time the content of the inventory changes
+ */
+public record InventorySnapshot(long version, String devices, String networkTopology, Instant fetchedAt) {
+
+    public InventorySnapshot withVersion(long version) {
+        return new InventorySnapshot(version, devices, networkTopology, fetchedAt);
+    }
+
+    /**
+     * Rough size of the snapshot on the heap (strings are stored as UTF-16 in the worst case)
+     */
+    public long estimatedBytes() {
+        return 2L * (length(devices) + length(networkTopology));
+    }
+
+    private static long length(String s) {
+        return s == null ? 0 : s.length();
+    }
+}
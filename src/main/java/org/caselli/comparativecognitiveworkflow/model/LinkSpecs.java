@@ -0,0 +1,104 @@
+package org.caselli.comparativecognitiveworkflow.model;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bandwidth and latency of the connections of a topology, for the topologies whose connections carry them
+ * (e.g. {@code {"source": "a", "target": "b", "bandwidth_gbps": 100, "latency_us": 2}}), indexed by node ordinal
+ */
+public final class LinkSpecs {
+
+    private static final LinkSpecs NONE = new LinkSpecs(Map.of());
+
+    // { bandwidth in Gbps, latency in us } by edge key, NaN when not reported
+    private final Map<Long, double[]> links;
+
+    private LinkSpecs(Map<Long, double[]> links) {
+        this.links = links;
+    }
+
+
+    /**
+     * Specs collected one connection at a time, indexed once the graph of the topology is known
+     */
+    public static final class Builder {
+        private final List<String[]> endpoints = new ArrayList<>();
+        private final List<double[]> specs = new ArrayList<>();
+
+        public Builder add(JsonNode edge) {
+            String[] ids = TopologyParser.endpointsOf(edge);
+            if (ids == null || !edge.isObject()) return this;
+
+            double[] spec = { Double.NaN, Double.NaN };
+            collect("", edge, spec);
+            if (Double.isNaN(spec[0]) && Double.isNaN(spec[1])) return this;
+
+            endpoints.add(ids);
+            specs.add(spec);
+            return this;
+        }
+
+        public LinkSpecs build(NetworkGraph graph) {
+            Map<Long, double[]> links = new HashMap<>();
+            for (int i = 0; i < endpoints.size(); i++) {
+                int from = graph.ordinal(endpoints.get(i)[0]), to = graph.ordinal(endpoints.get(i)[1]);
+                if (from < 0 || to < 0) continue;
+
+                merge(links, key(from, to), specs.get(i));
+                if (!graph.isDirected()) merge(links, key(to, from), specs.get(i));
+            }
+            return links.isEmpty() ? NONE : new LinkSpecs(links);
+        }
+    }
+
+
+    private static void collect(String path, JsonNode value, double[] spec) {
+        if (value.isObject()) {
+            value.properties().forEach(field -> collect(path.isEmpty() ? field.getKey() : path + "." + field.getKey(), field.getValue(), spec));
+        } else if (value.isNumber()) {
+            SpecDimension.of(path).ifPresent(unit -> {
+                double v = value.asDouble() * unit.scale();
+                if (unit.dimension() == SpecDimension.BANDWIDTH) spec[0] = Double.isNaN(spec[0]) ? v : Math.max(spec[0], v);
+                if (unit.dimension() == SpecDimension.LATENCY) spec[1] = Double.isNaN(spec[1]) ? v : Math.min(spec[1], v);
+            });
+        }
+    }
+
+
+    /**
+     * Parallel connections between the same nodes: the best bandwidth and latency are kept
+     */
+    private static void merge(Map<Long, double[]> links, long key, double[] spec) {
+        double[] current = links.putIfAbsent(key, spec.clone());
+        if (current == null) return;
+        if (!Double.isNaN(spec[0])) current[0] = Double.isNaN(current[0]) ? spec[0] : Math.max(current[0], spec[0]);
+        if (!Double.isNaN(spec[1])) current[1] = Double.isNaN(current[1]) ? spec[1] : Math.min(current[1], spec[1]);
+    }
+
+
+    private static long key(int from, int to) {
+        return ((long) from << 32) | (to & 0xffffffffL);
+    }
+
+
+    /**
+     * @return the bandwidth of the connection in Gbps, NaN if not reported
+     */
+    public double bandwidth(int from, int to) {
+        double[] spec = links.get(key(from, to));
+        return spec == null ? Double.NaN : spec[0];
+    }
+
+    /**
+     * @return the latency of the connection in microseconds, NaN if not reported
+     */
+    public double latency(int from, int to) {
+        double[] spec = links.get(key(from, to));
+        return spec == null ? Double.NaN : spec[1];
+    }
+}
@@ -0,0 +1,237 @@
+package org.caselli.comparativecognitiveworkflow.model;
+
+import java.util.*;
+
+/**
+ * Compact, immutable graph of the network topology.
+ * Nodes are identified by their ordinal (position in {@link #nodeIds}), and the adjacency is stored in
+ * CSR form: the neighbours of node {@code u} are {@code targets[offsets[u] .. offsets[u + 1])}, sorted
+ * so that edge lookups are a binary search.
+ */
+public final class NetworkGraph {
+
+    private final String[] nodeIds;
+    private final Map<String, Integer> ordinals;
+    private final int[] offsets;
+    private final int[] targets;
+    private final int[] startNodes;
+    private final int[] endNodes;
+    private final String[][] nodeDevices;
+    private final Map<String, int[]> deviceNodes;
+    private final boolean directed;
+
+    private volatile NetworkGraph reversed;
+
+    private NetworkGraph(boolean directed, String[] nodeIds, Map<String, Integer> ordinals, int[] offsets, int[] targets,
+                         int[] startNodes, int[] endNodes, String[][] nodeDevices, Map<String, int[]> deviceNodes) {
+        this.nodeIds = nodeIds;
+        this.ordinals = ordinals;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.startNodes = startNodes;
+        this.endNodes = endNodes;
+        this.nodeDevices = nodeDevices;
+        this.deviceNodes = deviceNodes;
+        this.directed = directed;
+    }
+
+
+    public int size() {
+        return nodeIds.length;
+    }
+
+    public int edgeCount() {
+        return targets.length;
+    }
+
+    /**
+     * @return the ordinal of the node, or -1 if the node is not in the topology
+     */
+    public int ordinal(String nodeId) {
+        Integer ordinal = ordinals.get(nodeId);
+        return ordinal != null ? ordinal : -1;
+    }
+
+    public String id(int node) {
+        return nodeIds[node];
+    }
+
+    public int degree(int node) {
+        return offsets[node + 1] - offsets[node];
+    }
+
+    /**
+     * @return the i-th neighbour of the node, for {@code 0 <= i < degree(node)}
+     */
+    public int neighbour(int node, int i) {
+        return targets[offsets[node] + i];
+    }
+
+    public boolean hasEdge(int from, int to) {
+        return Arrays.binarySearch(targets, offsets[from], offsets[from + 1], to) >= 0;
+    }
+
+    public int[] startNodes() {
+        return startNodes.clone();
+    }
+
+    public int[] endNodes() {
+        return endNodes.clone();
+    }
+
+    public boolean isEnd(int node) {
+        return Arrays.binarySearch(endNodes, node) >= 0;
+    }
+
+    /**
+     * @return the ids of the devices associated to the node
+     */
+    public List<String> devicesOf(int node) {
+        return List.of(nodeDevices[node]);
+    }
+
+    /**
+     * @return the ordinals of the nodes that use the device (empty if the device is not in the topology)
+     */
+    public int[] nodesOf(String deviceId) {
+        int[] nodes = deviceNodes.get(deviceId);
+        return nodes != null ? nodes.clone() : new int[0];
+    }
+
+    public boolean isDirected() {
+        return directed;
+    }
+
+    /**
+     * @return the graph with all the edges reversed (the graph itself if it is undirected), built on first use
+     */
+    public NetworkGraph reversed() {
+        if (!directed) return this;
+
+        NetworkGraph result = reversed;
+        if (result == null) {
+            Builder builder = new Builder(true);
+            for (int u = 0; u < size(); u++)
+                builder.addNode(nodeIds[u], List.of(nodeDevices[u]), false, false);
+            for (int u = 0; u < size(); u++)
+                for (int i = offsets[u]; i < offsets[u + 1]; i++)
+                    builder.addEdge(nodeIds[targets[i]], nodeIds[u]);
+
+            NetworkGraph built = builder.build();
+            // The start and end nodes of the reversed graph are swapped
+            result = new NetworkGraph(true, built.nodeIds, built.ordinals, built.offsets, built.targets,
+                    endNodes, startNodes, built.nodeDevices, built.deviceNodes);
+            reversed = result;
+        }
+        return result;
+    }
+
+    public List<String> ids(int[] path) {
+        List<String> ids = new ArrayList<>(path.length);
+        for (int node : path) ids.add(nodeIds[node]);
+        return ids;
+    }
+
+
+    public static Builder builder(boolean directed) {
+        return new Builder(directed);
+    }
+
+
+    public static final class Builder {
+        private final boolean directed;
+        private final Map<String, Integer> ordinals = new HashMap<>();
+        private final List<String> nodeIds = new ArrayList<>();
+        private final List<String[]> nodeDevices = new ArrayList<>();
+        private final List<Integer> startNodes = new ArrayList<>();
+        private final List<Integer> endNodes = new ArrayList<>();
+        private final List<int[]> edges = new ArrayList<>();
+
+        private Builder(boolean directed) {
+            this.directed = directed;
+        }
+
+        public Builder addNode(String id, Collection<String> devices, boolean start, boolean end) {
+            int node = ordinalOf(id);
+            if (devices != null && !devices.isEmpty()) nodeDevices.set(node, devices.toArray(new String[0]));
+            if (start) startNodes.add(node);
+            if (end) endNodes.add(node);
+            return this;
+        }
+
+        /**
+         * Nodes referenced only by connections are added to the graph without devices
+         */
+        public Builder addEdge(String from, String to) {
+            edges.add(new int[]{ ordinalOf(from), ordinalOf(to) });
+            return this;
+        }
+
+        private int ordinalOf(String id) {
+            return ordinals.computeIfAbsent(id, k -> {
+                nodeIds.add(k);
+                nodeDevices.add(new String[0]);
+                return nodeIds.size() - 1;
+            });
+        }
+
+        public NetworkGraph build() {
+            int n = nodeIds.size();
+
+            // Count the out-degree of each node, then fill the CSR arrays
+            int[] degree = new int[n];
+            for (int[] edge : edges) {
+                degree[edge[0]]++;
+                if (!directed) degree[edge[1]]++;
+            }
+
+            int[] offsets = new int[n + 1];
+            for (int i = 0; i < n; i++) offsets[i + 1] = offsets[i] + degree[i];
+
+            int[] targets = new int[offsets[n]];
+            int[] cursor = Arrays.copyOf(offsets, n);
+            for (int[] edge : edges) {
+                targets[cursor[edge[0]]++] = edge[1];
+                if (!directed) targets[cursor[edge[1]]++] = edge[0];
+            }
+
+            // Sort and de-duplicate each adjacency list
+            int[] compactOffsets = new int[n + 1];
+            int write = 0;
+            for (int u = 0; u < n; u++) {
+                Arrays.sort(targets, offsets[u], offsets[u + 1]);
+                compactOffsets[u] = write;
+                for (int i = offsets[u]; i < offsets[u + 1]; i++) {
+                    if (i > offsets[u] && targets[i] == targets[i - 1]) continue;
+                    if (targets[i] == u) continue;
+                    targets[write++] = targets[i];
+                }
+            }
+            compactOffsets[n] = write;
+
+            Map<String, List<Integer>> devices = new HashMap<>();
+            for (int u = 0; u < n; u++)
+                for (String device : nodeDevices.get(u))
+                    devices.computeIfAbsent(device, k -> new ArrayList<>()).add(u);
+
+            Map<String, int[]> deviceNodes = new HashMap<>();
+            devices.forEach((device, nodes) -> deviceNodes.put(device, nodes.stream().mapToInt(Integer::intValue).toArray()));
+
+            return new NetworkGraph(
+                    directed,
+                    nodeIds.toArray(new String[0]),
+                    Map.copyOf(ordinals),
+                    compactOffsets,
+                    Arrays.copyOf(targets, write),
+                    sortedDistinct(startNodes),
+                    sortedDistinct(endNodes),
+                    nodeDevices.toArray(new String[0][]),
+                    deviceNodes
+            );
+        }
+
+        private static int[] sortedDistinct(List<Integer> values) {
+            return values.stream().mapToInt(Integer::intValue).sorted().distinct().toArray();
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package org.caselli.comparativecognitiveworkflow.model;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.*;
+
+/**
+ * Pre-serialized, compact JSON fragments of the devices and of the topology of a snapshot.
+ * It is built once per snapshot (see {@link InventoryModel}), so that the context of each request can be assembled
+ * by concatenating only the fragments of the relevant nodes, connections and devices.
+ */
+public final class PromptInventory {
+
+    private static final List<String> ID_FIELDS = List.of("id", "device_id", "deviceId", "name");
+    private static final List<String> EDGE_LISTS = List.of(TopologyParser.EDGE_LISTS);
+
+    private final String[] nodes;
+    private final int[] edgeFrom;
+    private final int[] edgeTo;
+    private final String[] edges;
+    private final String edgeListName;
+    private final LinkedHashMap<String, String> devices;
+
+    private PromptInventory(String[] nodes, int[] edgeFrom, int[] edgeTo, String[] edges, String edgeListName,
+                            LinkedHashMap<String, String> devices) {
+        this.nodes = nodes;
+        this.edgeFrom = edgeFrom;
+        this.edgeTo = edgeTo;
+        this.edges = edges;
+        this.edgeListName = edgeListName;
+        this.devices = devices;
+    }
+
+
+    /**
+     * Fragments serialized one element at a time, indexed once the graph of the topology is known
+     */
+    public static final class Builder {
+        private final ObjectMapper objectMapper;
+        private final Set<String> excludedAttributes;
+
+        private final Map<String, String> nodes = new HashMap<>();
+        private final List<String[]> endpoints = new ArrayList<>();
+        private final List<String> edges = new ArrayList<>();
+        private int edgeList = -1;
+        private final LinkedHashMap<String, String> devices = new LinkedHashMap<>();
+
+        public Builder(ObjectMapper objectMapper, Set<String> excludedAttributes) {
+            this.objectMapper = objectMapper;
+            this.excludedAttributes = excludedAttributes;
+        }
+
+        public Builder addNode(JsonNode node) throws JsonProcessingException {
+            JsonNode id = node.isValueNode() ? node : node.get("id");
+            if (id != null && !id.isNull()) nodes.put(id.asText(), objectMapper.writeValueAsString(node));
+            return this;
+        }
+
+        /**
+         * Declares a list of connections: the serialized topology uses the name of the last one, in the order of
+         * {@link #EDGE_LISTS}
+         */
+        public Builder edgeList(String field) {
+            edgeList = Math.max(edgeList, EDGE_LISTS.indexOf(field));
+            return this;
+        }
+
+        public Builder addEdge(JsonNode edge) throws JsonProcessingException {
+            String[] ids = TopologyParser.endpointsOf(edge);
+            if (ids == null) return this;
+            endpoints.add(ids);
+            edges.add(objectMapper.writeValueAsString(edge));
+            return this;
+        }
+
+        public Builder addDevice(String id, JsonNode device) throws JsonProcessingException {
+            JsonNode pruned = pruneAttributes(withId(id, device, objectMapper), excludedAttributes);
+            devices.put(id, objectMapper.writeValueAsString(pruned));
+            return this;
+        }
+
+        public Builder clearDevices() {
+            devices.clear();
+            return this;
+        }
+
+        public PromptInventory build(NetworkGraph graph) throws JsonProcessingException {
+            String[] nodeFragments = new String[graph.size()];
+            nodes.forEach((id, fragment) -> {
+                int ordinal = graph.ordinal(id);
+                if (ordinal >= 0) nodeFragments[ordinal] = fragment;
+            });
+            // Nodes that only appear in the connections
+            for (int i = 0; i < nodeFragments.length; i++)
+                if (nodeFragments[i] == null) nodeFragments[i] = objectMapper.writeValueAsString(Map.of("id", graph.id(i)));
+
+            return new PromptInventory(
+                    nodeFragments,
+                    endpoints.stream().mapToInt(e -> graph.ordinal(e[0])).toArray(),
+                    endpoints.stream().mapToInt(e -> graph.ordinal(e[1])).toArray(),
+                    edges.toArray(new String[0]),
+                    EDGE_LISTS.get(Math.max(0, edgeList)),
+                    devices
+            );
+        }
+    }
+
+
+    /**
+     * @return the id of a device listed in an array, {@code null} if it has none
+     */
+    static String idOf(JsonNode device) {
+        for (String field : ID_FIELDS) {
+            if (device.hasNonNull(field)) return device.get(field).asText();
+        }
+        return null;
+    }
+
+
+    /**
+     * @return a copy of the device that always carries its id, which is missing when devices are returned as a map
+     */
+    private static JsonNode withId(String id, JsonNode device, ObjectMapper objectMapper) {
+        if (!(device instanceof ObjectNode object) || ID_FIELDS.stream().anyMatch(object::has))
+            return device.deepCopy();
+
+        ObjectNode copy = objectMapper.createObjectNode().put("id", id);
+        copy.setAll(object.deepCopy());
+        return copy;
+    }
+
+
+    private static JsonNode pruneAttributes(JsonNode value, Set<String> excludedAttributes) {
+        if (value instanceof ObjectNode object) {
+            Iterator<Map.Entry<String, JsonNode>> fields = object.properties().iterator();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                JsonNode pruned = pruneAttributes(field.getValue(), excludedAttributes);
+                if (excludedAttributes.contains(field.getKey()) || isEmpty(pruned)) fields.remove();
+            }
+        } else if (value.isArray()) {
+            value.forEach(item -> pruneAttributes(item, excludedAttributes));
+        }
+        return value;
+    }
+
+
+    private static boolean isEmpty(JsonNode value) {
+        return value.isNull()
+                || (value.isTextual() && value.asText().isBlank())
+                || (value.isContainerNode() && value.isEmpty());
+    }
+
+
+    public Set<String> deviceIds() {
+        return Collections.unmodifiableSet(devices.keySet());
+    }
+
+    public int edgeCount() {
+        return edges.length;
+    }
+
+
+    /**
+     * @param keptNodes nodes to serialize, indexed by ordinal (connections are kept if both endpoints are kept)
+     */
+    public String topologyJson(boolean[] keptNodes) {
+        StringBuilder json = new StringBuilder("{\"topology\":{\"nodes\":[");
+        String separator = "";
+        for (int i = 0; i < nodes.length; i++) {
+            if (!keptNodes[i]) continue;
+            json.append(separator).append(nodes[i]);
+            separator = ",";
+        }
+
+        json.append("],\"").append(edgeListName).append("\":[");
+        separator = "";
+        for (int i = 0; i < edges.length; i++) {
+            if (edgeFrom[i] < 0 || edgeTo[i] < 0 || !keptNodes[edgeFrom[i]] || !keptNodes[edgeTo[i]]) continue;
+            json.append(separator).append(edges[i]);
+            separator = ",";
+        }
+        return json.append("]}}").toString();
+    }
+
+
+    public String topologyJson() {
+        boolean[] all = new boolean[nodes.length];
+        Arrays.fill(all, true);
+        return topologyJson(all);
+    }
+
+
+    public String devicesJson() {
+        return "[" + String.join(",", devices.values()) + "]";
+    }
+
+
+    public String devicesJson(Collection<String> keptDevices) {
+        StringJoiner json = new StringJoiner(",", "[", "]");
+        for (Map.Entry<String, String> device : devices.entrySet())
+            if (keptDevices.contains(device.getKey())) json.add(device.getValue());
+        return json.toString();
+    }
+}
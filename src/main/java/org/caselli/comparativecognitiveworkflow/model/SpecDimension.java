@@ -0,0 +1,68 @@
+package org.caselli.comparativecognitiveworkflow.model;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Quantities of the device and link specs used by the filtering and scoring of the inventory, with the unit
+ * their values are converted to
+ */
+public enum SpecDimension {
+    BANDWIDTH("bandwidth", "Gbps"),
+    POWER("power", "W"),
+    LATENCY("latency", "us"),
+    CORES("cores", ""),
+    MEMORY("memory", "GB");
+
+    public final String label;
+    public final String unit;
+
+    SpecDimension(String label, String unit) {
+        this.label = label;
+        this.unit = unit;
+    }
+
+
+    /**
+     * @param scale factor converting the values of the attribute to the unit of the dimension
+     */
+    public record Unit(SpecDimension dimension, double scale) { }
+
+
+    /**
+     * Dimension and unit of a numeric attribute, inferred from its name (e.g. {@code bandwidth_gbps},
+     * {@code maxPowerW}, {@code cpu_cores}); nested attributes are identified by their last segment.
+     * Attributes without an explicit unit are not recognized, except for core counts.
+     */
+    public static Optional<Unit> of(String attribute) {
+        String leaf = attribute.substring(attribute.lastIndexOf('.') + 1).replaceAll("([a-z0-9])([A-Z])", "$1_$2");
+        Set<String> tokens = new HashSet<>(Arrays.asList(leaf.toLowerCase(Locale.ROOT).split("[^a-z0-9]+")));
+
+        boolean memoryRelated = tokens.contains("memory") || tokens.contains("ram") || tokens.contains("dram") || tokens.contains("hbm");
+        if (!memoryRelated && !tokens.contains("pcie")) {
+            if (tokens.contains("tbps")) return Optional.of(new Unit(BANDWIDTH, 1000));
+            if (tokens.contains("gbps")) return Optional.of(new Unit(BANDWIDTH, 1));
+            if (tokens.contains("mbps")) return Optional.of(new Unit(BANDWIDTH, 0.001));
+        }
+        if (tokens.contains("latency") || tokens.contains("delay")) {
+            if (tokens.contains("ns")) return Optional.of(new Unit(LATENCY, 0.001));
+            if (tokens.contains("us")) return Optional.of(new Unit(LATENCY, 1));
+            if (tokens.contains("ms")) return Optional.of(new Unit(LATENCY, 1000));
+        }
+        if (tokens.contains("power") || tokens.contains("tdp") || tokens.contains("consumption") || tokens.contains("watts")) {
+            if (tokens.contains("w") || tokens.contains("watts")) return Optional.of(new Unit(POWER, 1));
+            if (tokens.contains("kw")) return Optional.of(new Unit(POWER, 1000));
+        }
+        if ((tokens.contains("cores") || tokens.contains("core")) && !tokens.contains("ghz") && !tokens.contains("mhz"))
+            return Optional.of(new Unit(CORES, 1));
+        if (memoryRelated) {
+            if (tokens.contains("gb")) return Optional.of(new Unit(MEMORY, 1));
+            if (tokens.contains("tb")) return Optional.of(new Unit(MEMORY, 1024));
+            if (tokens.contains("mb")) return Optional.of(new Unit(MEMORY, 1.0 / 1024));
+        }
+        return Optional.empty();
+    }
+}
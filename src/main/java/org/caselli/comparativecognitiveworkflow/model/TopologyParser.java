@@ -0,0 +1,96 @@
+package org.caselli.comparativecognitiveworkflow.model;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the nodes and connections of the JSON returned by the inventory service into a {@link NetworkGraph}.
+ * It accepts the {@code {"topology": {"nodes": [...], "connections": [...]}}} shape (optionally
+ * wrapped in {@code network_topology}) and the usual aliases for the node and edge fields.
+ */
+public final class TopologyParser {
+
+    static final String[] WRAPPERS = { "network_topology", "topology" };
+    static final String[] EDGE_LISTS = { "connections", "links", "edges" };
+    private static final String[] NODE_DEVICE_FIELDS = { "devices", "device", "device_id", "deviceId" };
+    private static final String[][] EDGE_ENDPOINTS = { { "source", "target" }, { "from", "to" }, { "src", "dst" }, { "node1", "node2" } };
+
+    private TopologyParser() { }
+
+
+    static void addNode(NetworkGraph.Builder builder, JsonNode node) {
+        String id = text(node.isValueNode() ? node : node.get("id"));
+        if (id != null)
+            builder.addNode(id, devicesOf(node), node.path("start").asBoolean(false), node.path("end").asBoolean(false));
+    }
+
+
+    static void addEdge(NetworkGraph.Builder builder, JsonNode edge) {
+        String[] endpoints = endpointsOf(edge);
+        if (endpoints != null) builder.addEdge(endpoints[0], endpoints[1]);
+    }
+
+
+    static JsonNode unwrap(JsonNode root) {
+        JsonNode current = root;
+        boolean unwrapped = true;
+        while (unwrapped && !current.has("nodes")) {
+            unwrapped = false;
+            for (String wrapper : WRAPPERS) {
+                if (current.has(wrapper)) {
+                    current = current.get(wrapper);
+                    unwrapped = true;
+                    break;
+                }
+            }
+        }
+        return current;
+    }
+
+
+    private static List<String> devicesOf(JsonNode node) {
+        List<String> devices = new ArrayList<>();
+        for (String field : NODE_DEVICE_FIELDS) {
+            JsonNode value = node.get(field);
+            if (value == null || value.isNull()) continue;
+
+            if (value.isArray()) {
+                for (JsonNode device : value) {
+                    String id = text(device.isObject() ? device.get("id") : device);
+                    if (id != null) devices.add(id);
+                }
+            } else {
+                String id = text(value.isObject() ? value.get("id") : value);
+                if (id != null) devices.add(id);
+            }
+        }
+        return devices;
+    }
+
+
+    /**
+     * @return the endpoints of the edge, either from named fields or from a two-element array
+     */
+    static String[] endpointsOf(JsonNode edge) {
+        if (edge.isArray() && edge.size() >= 2)
+            return pair(text(edge.get(0)), text(edge.get(1)));
+
+        for (String[] names : EDGE_ENDPOINTS) {
+            if (edge.has(names[0]) && edge.has(names[1]))
+                return pair(text(edge.get(names[0])), text(edge.get(names[1])));
+        }
+        return null;
+    }
+
+
+    private static String[] pair(String from, String to) {
+        return from != null && to != null ? new String[]{ from, to } : null;
+    }
+
+
+    private static String text(JsonNode value) {
+        return value == null || value.isNull() || value.isContainerNode() ? null : value.asText();
+    }
+}
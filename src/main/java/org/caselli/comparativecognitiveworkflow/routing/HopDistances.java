@@ -0,0 +1,51 @@
+package org.caselli.comparativecognitiveworkflow.routing;
+
+import org.caselli.comparativecognitiveworkflow.model.NetworkGraph;
+
+import java.util.Arrays;
+
+/**
+ * Hop distances computed with a multi-source breadth-first search.
+ */
+public final class HopDistances {
+
+    public static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    private HopDistances() { }
+
+
+    /**
+     * @return for each node, the number of hops from the closest source ({@link #UNREACHABLE} if not reachable)
+     */
+    public static int[] from(NetworkGraph graph, int[] sources) {
+        int[] distance = new int[graph.size()];
+        Arrays.fill(distance, UNREACHABLE);
+
+        int[] queue = new int[graph.size()];
+        int head = 0, tail = 0;
+        for (int source : sources) {
+            if (distance[source] == 0) continue;
+            distance[source] = 0;
+            queue[tail++] = source;
+        }
+
+        while (head < tail) {
+            int u = queue[head++];
+            for (int i = 0; i < graph.degree(u); i++) {
+                int v = graph.neighbour(u, i);
+                if (distance[v] != UNREACHABLE) continue;
+                distance[v] = distance[u] + 1;
+                queue[tail++] = v;
+            }
+        }
+        return distance;
+    }
+
+
+    /**
+     * @return for each node, the number of hops to the closest target ({@link #UNREACHABLE} if it cannot reach any)
+     */
+    public static int[] to(NetworkGraph graph, int[] targets) {
+        return from(graph.reversed(), targets);
+    }
+}
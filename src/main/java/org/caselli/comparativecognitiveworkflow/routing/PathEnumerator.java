@@ -0,0 +1,212 @@
+package org.caselli.comparativecognitiveworkflow.routing;
+
+import org.caselli.comparativecognitiveworkflow.model.NetworkGraph;
+
+import java.util.*;
+import java.util.stream.IntStream;
+
+/**
+ * Enumerates candidate paths from the start nodes to the end nodes of a {@link NetworkGraph}.
+ * Loopless paths are generated in increasing hop count with Yen's algorithm, and only the ones that
+ * satisfy the device constraints are kept. Both the number of returned paths and the number of spur
+ * searches are capped, so dense topologies cannot make the enumeration explode.
+ */
+public class PathEnumerator {
+
+    /**
+     * ANY: the path must visit at least one node using one of the constraint devices.
+     * ALL: the path must visit, for each constraint device, a node using it.
+     */
+    public enum ConstraintMode { ANY, ALL }
+
+    public record Limits(int maxPaths, int maxSpurSearches) { }
+
+    /**
+     * @param constraintNodes ordinals of the nodes using at least one of the constraint devices
+     * @param truncated whether the enumeration stopped because a limit was reached
+     */
+    public record Result(List<int[]> paths, int[] constraintNodes, boolean truncated) { }
+
+    private final NetworkGraph graph;
+    private final Limits limits;
+
+    public PathEnumerator(NetworkGraph graph, Limits limits) {
+        this.graph = graph;
+        this.limits = limits;
+    }
+
+
+    public Result enumerate(Collection<String> deviceIds, ConstraintMode mode) {
+        List<int[]> required = requiredNodeSets(deviceIds);
+        boolean[] constraintNode = new boolean[graph.size()];
+        for (int[] nodes : required)
+            for (int node : nodes) constraintNode[node] = true;
+
+        List<int[]> accepted = new ArrayList<>();
+        List<int[]> generated = new ArrayList<>();
+        PriorityQueue<int[]> candidates = new PriorityQueue<>(Comparator.<int[]>comparingInt(p -> p.length).thenComparing(Arrays::compare));
+        Set<PathKey> seen = new HashSet<>();
+
+        Search search = new Search(graph.size());
+
+        for (int start : graph.startNodes()) {
+            int[] shortest = search.shortestPath(start, null, Set.of());
+            if (shortest != null && seen.add(new PathKey(shortest))) candidates.add(shortest);
+        }
+
+        int spurSearches = 0;
+        boolean truncated = false;
+
+        while (!candidates.isEmpty() && accepted.size() < limits.maxPaths()) {
+            int[] path = candidates.poll();
+            generated.add(path);
+            if (satisfies(path, required, constraintNode, mode)) accepted.add(path);
+
+            for (int i = 0; i < path.length - 1; i++) {
+                if (++spurSearches > limits.maxSpurSearches()) {
+                    truncated = true;
+                    break;
+                }
+
+                int spur = path[i];
+
+                // Remove the edges leaving the root used by the paths already generated
+                Set<Long> removedEdges = new HashSet<>();
+                for (int[] other : generated) {
+                    if (other.length > i + 1 && Arrays.equals(other, 0, i + 1, path, 0, i + 1))
+                        removedEdges.add(edgeKey(other[i], other[i + 1]));
+                }
+
+                // The nodes of the root (except the spur node) cannot be visited again
+                boolean[] blocked = new boolean[graph.size()];
+                for (int j = 0; j < i; j++) blocked[path[j]] = true;
+
+                int[] spurPath = search.shortestPath(spur, blocked, removedEdges);
+                if (spurPath == null) continue;
+
+                int[] candidate = new int[i + spurPath.length];
+                System.arraycopy(path, 0, candidate, 0, i);
+                System.arraycopy(spurPath, 0, candidate, i, spurPath.length);
+
+                if (seen.add(new PathKey(candidate))) candidates.add(candidate);
+            }
+
+            if (truncated) break;
+        }
+
+        // Paths left in the queue were cut off by the limits
+        truncated |= !candidates.isEmpty();
+
+        int[] constraintNodes = IntStream.range(0, graph.size()).filter(node -> constraintNode[node]).toArray();
+
+        return new Result(accepted, constraintNodes, truncated);
+    }
+
+
+    /**
+     * For each constraint device, the nodes that use it. A device id that matches a node id is treated as
+     * a constraint on that node, for topologies that do not associate devices to nodes.
+     */
+    private List<int[]> requiredNodeSets(Collection<String> deviceIds) {
+        List<int[]> required = new ArrayList<>();
+        if (deviceIds == null) return required;
+
+        for (String deviceId : new LinkedHashSet<>(deviceIds)) {
+            int[] nodes = graph.nodesOf(deviceId);
+            if (nodes.length == 0 && graph.ordinal(deviceId) >= 0) nodes = new int[]{ graph.ordinal(deviceId) };
+            required.add(nodes);
+        }
+        return required;
+    }
+
+
+    private static boolean satisfies(int[] path, List<int[]> required, boolean[] constraintNode, ConstraintMode mode) {
+        if (required.isEmpty()) return true;
+
+        if (mode == ConstraintMode.ANY) {
+            for (int node : path) if (constraintNode[node]) return true;
+            return false;
+        }
+
+        for (int[] nodes : required) {
+            boolean visited = false;
+            for (int node : path) {
+                if (Arrays.stream(nodes).anyMatch(n -> n == node)) {
+                    visited = true;
+                    break;
+                }
+            }
+            if (!visited) return false;
+        }
+        return true;
+    }
+
+
+    private static long edgeKey(int from, int to) {
+        return ((long) from << 32) | (to & 0xffffffffL);
+    }
+
+
+    /**
+     * Breadth-first search workspace, reused across the spur searches of one enumeration
+     */
+    private final class Search {
+        private final int[] previous;
+        private final int[] visitedAt;
+        private final int[] queue;
+        private int epoch;
+
+        Search(int size) {
+            this.previous = new int[size];
+            this.visitedAt = new int[size];
+            this.queue = new int[size];
+        }
+
+        int[] shortestPath(int source, boolean[] blocked, Set<Long> removedEdges) {
+            epoch++;
+            int head = 0, tail = 0;
+            queue[tail++] = source;
+            visitedAt[source] = epoch;
+            previous[source] = -1;
+
+            while (head < tail) {
+                int u = queue[head++];
+                if (graph.isEnd(u)) return pathTo(u);
+
+                for (int i = 0; i < graph.degree(u); i++) {
+                    int v = graph.neighbour(u, i);
+                    if (visitedAt[v] == epoch) continue;
+                    if (blocked != null && blocked[v]) continue;
+                    if (!removedEdges.isEmpty() && removedEdges.contains(edgeKey(u, v))) continue;
+
+                    visitedAt[v] = epoch;
+                    previous[v] = u;
+                    queue[tail++] = v;
+                }
+            }
+            return null;
+        }
+
+        private int[] pathTo(int target) {
+            int length = 0;
+            for (int node = target; node != -1; node = previous[node]) length++;
+
+            int[] path = new int[length];
+            for (int node = target; node != -1; node = previous[node]) path[--length] = node;
+            return path;
+        }
+    }
+
+
+    private record PathKey(int[] path) {
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof PathKey other && Arrays.equals(path, other.path);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(path);
+        }
+    }
+}
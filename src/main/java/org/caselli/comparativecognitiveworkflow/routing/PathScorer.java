@@ -0,0 +1,179 @@
+package org.caselli.comparativecognitiveworkflow.routing;
+
+import org.caselli.comparativecognitiveworkflow.model.DeviceIndex;
+import org.caselli.comparativecognitiveworkflow.model.LinkSpecs;
+import org.caselli.comparativecognitiveworkflow.model.NetworkGraph;
+import org.caselli.comparativecognitiveworkflow.model.SpecDimension;
+
+import java.util.*;
+
+/**
+ * Deterministic evaluation of candidate paths: hop count, end-to-end latency (devices and connections), bottleneck
+ * bandwidth, total power and number of qualified devices on the path, computed from the device and link specs.
+ * Each metric is normalized over the candidates (1 for the best, 0 for the worst, 0.5 when a path does not report it)
+ * and the score is their weighted average. Paths meeting the requirements of the request come first, then the ones
+ * with the highest score.
+ */
+public final class PathScorer {
+
+    private PathScorer() { }
+
+
+    public record Weights(double hops, double latency, double bandwidth, double power, double qualified) { }
+
+    /**
+     * End-to-end requirements of the request, NaN when not stated
+     */
+    public record Requirements(double minBandwidthGbps, double maxLatencyUs) {
+        public static final Requirements NONE = new Requirements(Double.NaN, Double.NaN);
+    }
+
+    /**
+     * Metrics of a path, {@code null} when none of the devices and connections of the path report them
+     * ({@code qualifiedDevices} is {@code null} when there is no qualified device list)
+     */
+    public record PathScore(List<String> path, int hops, Double latencyUs, Double bottleneckGbps, Double powerW,
+                            Integer qualifiedDevices, double score, List<String> violations) { }
+
+
+    public static List<PathScore> rank(NetworkGraph graph, DeviceIndex devices, LinkSpecs links, List<List<String>> paths,
+                                       Collection<String> qualifiedDevices, Weights weights, Requirements requirements) {
+        Set<String> qualified = qualifiedDevices == null ? null : new HashSet<>(qualifiedDevices);
+
+        int n = paths.size();
+        double[] hops = new double[n], latency = new double[n], bandwidth = new double[n], power = new double[n], coverage = new double[n];
+        for (int p = 0; p < n; p++) {
+            double[] metrics = metrics(graph, devices, links, paths.get(p), qualified);
+            hops[p] = metrics[0];
+            latency[p] = metrics[1];
+            bandwidth[p] = metrics[2];
+            power[p] = metrics[3];
+            coverage[p] = metrics[4];
+        }
+
+        double[][] normalized = {
+                normalize(hops, false), normalize(latency, false), normalize(bandwidth, true), normalize(power, false), normalize(coverage, true)
+        };
+        double[] weight = { weights.hops(), weights.latency(), weights.bandwidth(), weights.power(), weights.qualified() };
+
+        List<PathScore> scores = new ArrayList<>(n);
+        for (int p = 0; p < n; p++) {
+            double total = 0, weightSum = 0;
+            for (int m = 0; m < weight.length; m++) {
+                // Metrics no candidate reports do not contribute to the score
+                if (normalized[m] == null || weight[m] <= 0) continue;
+                total += weight[m] * normalized[m][p];
+                weightSum += weight[m];
+            }
+
+            scores.add(new PathScore(
+                    paths.get(p),
+                    (int) hops[p],
+                    boxed(latency[p]),
+                    boxed(bandwidth[p]),
+                    boxed(power[p]),
+                    qualified == null ? null : (int) coverage[p],
+                    weightSum == 0 ? 0 : Math.round(1000 * total / weightSum) / 1000.0,
+                    violations(latency[p], bandwidth[p], requirements)
+            ));
+        }
+
+        scores.sort(Comparator.<PathScore>comparingInt(s -> s.violations().isEmpty() ? 0 : 1)
+                .thenComparing(Comparator.comparingDouble(PathScore::score).reversed())
+                .thenComparingInt(PathScore::hops)
+                .thenComparing(s -> String.join(",", s.path())));
+        return scores;
+    }
+
+
+    /**
+     * @return { hops, latency, bottleneck bandwidth, power, qualified devices } of the path, NaN when unknown
+     */
+    private static double[] metrics(NetworkGraph graph, DeviceIndex devices, LinkSpecs links, List<String> path,
+                                    Set<String> qualified) {
+        double latency = Double.NaN, bandwidth = Double.NaN, power = Double.NaN;
+        int covered = 0;
+
+        int previous = -1;
+        for (String id : path) {
+            int node = graph.ordinal(id);
+            if (node < 0) continue;
+
+            double nodeLatency = Double.NaN, nodeBandwidth = Double.NaN;
+            for (String device : devicesOf(graph, node)) {
+                nodeLatency = max(nodeLatency, devices.spec(device, SpecDimension.LATENCY));
+                nodeBandwidth = max(nodeBandwidth, devices.spec(device, SpecDimension.BANDWIDTH));
+                power = sum(power, devices.spec(device, SpecDimension.POWER));
+                if (qualified != null && qualified.contains(device)) covered++;
+            }
+            latency = sum(latency, nodeLatency);
+            bandwidth = min(bandwidth, nodeBandwidth);
+
+            if (previous >= 0) {
+                latency = sum(latency, links.latency(previous, node));
+                bandwidth = min(bandwidth, links.bandwidth(previous, node));
+            }
+            previous = node;
+        }
+
+        return new double[]{ path.size() - 1, latency, bandwidth, power, qualified == null ? Double.NaN : covered };
+    }
+
+
+    /**
+     * The devices of a node, or the node itself for topologies that do not associate devices to nodes
+     */
+    private static List<String> devicesOf(NetworkGraph graph, int node) {
+        List<String> devices = graph.devicesOf(node);
+        return devices.isEmpty() ? List.of(graph.id(node)) : devices;
+    }
+
+
+    private static List<String> violations(double latency, double bandwidth, Requirements requirements) {
+        List<String> violations = new ArrayList<>();
+        if (!Double.isNaN(requirements.minBandwidthGbps()) && !Double.isNaN(bandwidth) && bandwidth < requirements.minBandwidthGbps())
+            violations.add("bottleneck bandwidth " + bandwidth + " Gbps < " + requirements.minBandwidthGbps() + " Gbps");
+        if (!Double.isNaN(requirements.maxLatencyUs()) && !Double.isNaN(latency) && latency > requirements.maxLatencyUs())
+            violations.add("latency " + latency + " us > " + requirements.maxLatencyUs() + " us");
+        return violations;
+    }
+
+
+    /**
+     * @return the values scaled to [0, 1] with 1 for the best, 0.5 for the unknown ones, or null if all are unknown
+     */
+    private static double[] normalize(double[] values, boolean higherIsBetter) {
+        double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+        for (double v : values) {
+            if (Double.isNaN(v)) continue;
+            min = Math.min(min, v);
+            max = Math.max(max, v);
+        }
+        if (min > max) return null;
+
+        double[] normalized = new double[values.length];
+        for (int i = 0; i < values.length; i++) {
+            if (Double.isNaN(values[i])) normalized[i] = 0.5;
+            else if (max == min) normalized[i] = 1;
+            else normalized[i] = higherIsBetter ? (values[i] - min) / (max - min) : (max - values[i]) / (max - min);
+        }
+        return normalized;
+    }
+
+
+    private static double sum(double a, double b) {
+        return Double.isNaN(a) ? b : Double.isNaN(b) ? a : a + b;
+    }
+
+    private static double min(double a, double b) {
+        return Double.isNaN(a) ? b : Double.isNaN(b) ? a : Math.min(a, b);
+    }
+
+    private static double max(double a, double b) {
+        return Double.isNaN(a) ? b : Double.isNaN(b) ? a : Math.max(a, b);
+    }
+
+    private static Double boxed(double value) {
+        return Double.isNaN(value) ? null : value;
+    }
+}
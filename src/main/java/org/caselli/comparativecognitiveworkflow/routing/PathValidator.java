@@ -0,0 +1,84 @@
+package org.caselli.comparativecognitiveworkflow.routing;
+
+import org.caselli.comparativecognitiveworkflow.model.NetworkGraph;
+
+import java.util.*;
+
+/**
+ * Deterministic check of a path selected by the model against the topology.
+ * Every node and every hop is checked with an indexed lookup, so validation is linear in the path length.
+ */
+public final class PathValidator {
+
+    private PathValidator() { }
+
+
+    /**
+     * @param constraintDevices devices the path must go through (at least one of them), or empty to skip the check
+     */
+    public static PathValidation validate(NetworkGraph graph, List<String> path, Collection<String> constraintDevices) {
+        List<String> errors = new ArrayList<>();
+
+        if (path == null || path.isEmpty()) {
+            errors.add("The selected path is empty");
+            return new PathValidation(false, errors, 0);
+        }
+
+        int[] nodes = new int[path.size()];
+        Set<Integer> visited = new HashSet<>();
+        boolean allNodesExist = true;
+
+        for (int i = 0; i < path.size(); i++) {
+            nodes[i] = graph.ordinal(path.get(i));
+            if (nodes[i] < 0) {
+                errors.add("Node '" + path.get(i) + "' does not exist in the topology");
+                allNodesExist = false;
+            } else if (!visited.add(nodes[i])) {
+                errors.add("Node '" + path.get(i) + "' is visited more than once");
+            }
+        }
+
+        for (int i = 0; i < nodes.length - 1; i++) {
+            if (nodes[i] < 0 || nodes[i + 1] < 0) continue;
+            if (!graph.hasEdge(nodes[i], nodes[i + 1]))
+                errors.add("There is no connection from '" + path.get(i) + "' to '" + path.get(i + 1) + "'");
+        }
+
+        if (allNodesExist) {
+            int[] starts = graph.startNodes();
+            if (starts.length > 0 && Arrays.binarySearch(starts, nodes[0]) < 0)
+                errors.add("The path does not begin at a start node of the topology");
+
+            if (graph.endNodes().length > 0 && !graph.isEnd(nodes[nodes.length - 1]))
+                errors.add("The path does not finish at an end node of the topology");
+        }
+
+        if (constraintDevices != null && !constraintDevices.isEmpty() && !visitsAny(graph, nodes, constraintDevices))
+            errors.add("The path does not go through any of the devices " + constraintDevices);
+
+        return new PathValidation(errors.isEmpty(), errors, 0);
+    }
+
+
+    private static boolean visitsAny(NetworkGraph graph, int[] nodes, Collection<String> constraintDevices) {
+        Set<String> devices = new HashSet<>(constraintDevices);
+        for (int node : nodes) {
+            if (node < 0) continue;
+            if (devices.contains(graph.id(node))) return true;
+            for (String device : graph.devicesOf(node))
+                if (devices.contains(device)) return true;
+        }
+        return false;
+    }
+
+
+    /**
+     * @param errors why the path is not valid, empty if it is valid
+     * @param repairAttempts how many times the model was asked to fix the path before this verdict
+     */
+    public record PathValidation(boolean valid, List<String> errors, int repairAttempts) {
+        public PathValidation withRepairAttempts(int repairAttempts) {
+            return new PathValidation(valid, errors, repairAttempts);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package org.caselli.comparativecognitiveworkflow.routing;
+
+import org.caselli.comparativecognitiveworkflow.model.NetworkGraph;
+
+import java.util.*;
+import java.util.stream.IntStream;
+
+/**
+ * Partitions a {@link NetworkGraph} into connected regions of bounded size, and builds the region-level graph
+ * (one node per region, an edge between two regions if any of their nodes are connected). Regions are grown
+ * with breadth-first searches seeded in breadth-first order from the start nodes, so neighbouring nodes tend to
+ * end up in the same region and the partition is deterministic for a given topology.
+ */
+public final class RegionPartitioner {
+
+    private RegionPartitioner() { }
+
+
+    /**
+     * @param regionOf region of each node, indexed by node ordinal
+     * @param members nodes of each region, indexed by region ordinal
+     * @param regionGraph graph of the regions: a region is a start (end) node if it contains a start (end) node
+     */
+    public record Regions(int[] regionOf, int[][] members, NetworkGraph regionGraph) {
+
+        public int count() {
+            return members.length;
+        }
+
+        public static String id(int region) {
+            return "R" + region;
+        }
+    }
+
+
+    public static Regions partition(NetworkGraph graph, int maxRegionSize) {
+        int size = graph.size();
+        int[] regionOf = new int[size];
+        Arrays.fill(regionOf, -1);
+
+        List<int[]> members = new ArrayList<>();
+        int[] queue = new int[size];
+
+        for (int seed : seedOrder(graph)) {
+            if (regionOf[seed] != -1) continue;
+
+            int region = members.size();
+            int head = 0, tail = 0;
+            queue[tail++] = seed;
+            regionOf[seed] = region;
+
+            while (head < tail && tail < maxRegionSize) {
+                int u = queue[head++];
+                for (int i = 0; i < graph.degree(u) && tail < maxRegionSize; i++) {
+                    int v = graph.neighbour(u, i);
+                    if (regionOf[v] != -1) continue;
+                    regionOf[v] = region;
+                    queue[tail++] = v;
+                }
+            }
+            members.add(Arrays.copyOf(queue, tail));
+        }
+
+        return new Regions(regionOf, members.toArray(new int[0][]), regionGraph(graph, regionOf, members));
+    }
+
+
+    /**
+     * Breadth-first order of the nodes from the start nodes, followed by the nodes not reachable from them
+     */
+    private static int[] seedOrder(NetworkGraph graph) {
+        int[] distance = HopDistances.from(graph, graph.startNodes());
+        return IntStream.range(0, graph.size())
+                .boxed()
+                .sorted((a, b) -> distance[a] != distance[b] ? Integer.compare(distance[a], distance[b]) : Integer.compare(a, b))
+                .mapToInt(Integer::intValue)
+                .toArray();
+    }
+
+
+    private static NetworkGraph regionGraph(NetworkGraph graph, int[] regionOf, List<int[]> members) {
+        NetworkGraph.Builder builder = NetworkGraph.builder(graph.isDirected());
+
+        boolean[] start = new boolean[members.size()];
+        boolean[] end = new boolean[members.size()];
+        for (int node : graph.startNodes()) start[regionOf[node]] = true;
+        for (int node : graph.endNodes()) end[regionOf[node]] = true;
+
+        for (int region = 0; region < members.size(); region++)
+            builder.addNode(Regions.id(region), List.of(), start[region], end[region]);
+
+        Set<Long> edges = new HashSet<>();
+        for (int u = 0; u < graph.size(); u++) {
+            for (int i = 0; i < graph.degree(u); i++) {
+                int from = regionOf[u], to = regionOf[graph.neighbour(u, i)];
+                if (from != to && edges.add(((long) from << 32) | to))
+                    builder.addEdge(Regions.id(from), Regions.id(to));
+            }
+        }
+
+        return builder.build();
+    }
+}
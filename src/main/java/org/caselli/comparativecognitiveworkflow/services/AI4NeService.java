@@ -1,46 +1,157 @@
 package org.caselli.comparativecognitiveworkflow.services;
 
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonPropertyDescription;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.Data;
+import org.caselli.comparativecognitiveworkflow.model.InventorySnapshot;
+import org.caselli.comparativecognitiveworkflow.model.NetworkGraph;
+import org.caselli.comparativecognitiveworkflow.routing.PathScorer.PathScore;
+import org.caselli.comparativecognitiveworkflow.routing.PathValidator;
+import org.caselli.comparativecognitiveworkflow.routing.PathValidator.PathValidation;
+import org.caselli.comparativecognitiveworkflow.services.ContextPruningService.PrunedContext;
+import org.caselli.comparativecognitiveworkflow.services.ContextPruningService.PruningReport;
+import org.caselli.comparativecognitiveworkflow.services.DeviceFilterService.DeviceFilter;
+import org.caselli.comparativecognitiveworkflow.services.DeviceFilterService.DeviceFilterReport;
+import org.caselli.comparativecognitiveworkflow.services.PathScoringService.ScoredPaths;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.messages.Message;
 import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.ChatOptions;
 import org.springframework.ai.chat.prompt.Prompt;
 import org.springframework.ai.chat.prompt.SystemPromptTemplate;
+import org.springframework.ai.converter.BeanOutputConverter;
+import org.springframework.ai.support.ToolCallbacks;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import java.time.Duration;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Supplier;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
 
 @Service
 public class AI4NeService {
 
     private final ChatClient chatClient;
 
+    private final ChatClient warmupChatClient = ChatClient.create(new WarmupChatModel());
+
+    /**
+     * Set while {@link #warmup} runs on the calling thread, so that the trace of the request is marked as synthetic
+     */
+    private static final ThreadLocal<Boolean> WARMUP = ThreadLocal.withInitial(() -> false);
+
     private final ToolService toolService;
 
     private final Logger  logger = Logger.getLogger(AI4NeService.class.getName());
 
-    public AI4NeService(ChatClient.Builder chatClientBuilder, ToolService toolService) {
+    private final InventoryModelService inventoryModelService;
+
+    private final RoutingEngine routingEngine;
+
+    private final ContextPruningService contextPruningService;
+
+    private final DeviceFilterService deviceFilterService;
+
+    private final PathScoringService pathScoringService;
+
+    private final StrategyChatOptions strategyChatOptions;
+
+    private final ModelCallExecutor modelCallExecutor;
+
+    private final HierarchicalContextService hierarchicalContextService;
+
+    private final RoutingMetrics routingMetrics;
+
+    private final ResponseCache responseCache;
+
+    private final SingleFlight<InFlightKey, RouteResponse> inFlightRequests = new SingleFlight<>();
+
+    private final boolean coalescing;
+
+    private final int maxRepairAttempts;
+
+    private final ObjectMapper objectMapper;
+
+    private final int maxToolCalls;
+
+    private final boolean cascadeConfidenceCheck;
+
+    private static final BeanOutputConverter<RouteResponse> OUTPUT_CONVERTER = new BeanOutputConverter<>(RouteResponse.class);
+
+    private static final BeanOutputConverter<RegionSelection> REGION_CONVERTER = new BeanOutputConverter<>(RegionSelection.class);
+
+    private static final Supplier<ToolCallback[]> NO_TOOLS = () -> new ToolCallback[0];
+
+    public AI4NeService(ChatClient.Builder chatClientBuilder, ToolService toolService, InventoryModelService inventoryModelService,
+                        RoutingEngine routingEngine, ContextPruningService contextPruningService, DeviceFilterService deviceFilterService,
+                        PathScoringService pathScoringService, StrategyChatOptions strategyChatOptions,
+                        ModelCallExecutor modelCallExecutor,
+                        HierarchicalContextService hierarchicalContextService, RoutingMetrics routingMetrics,
+                        ResponseCache responseCache,
+                        ObjectMapper objectMapper,
+                        @Value("${ai4ne.validation.repair.max-attempts:0}") int maxRepairAttempts,
+                        @Value("${ai4ne.tools.max-calls:4}") int maxToolCalls,
+                        @Value("${ai4ne.cascade.confidence-check:true}") boolean cascadeConfidenceCheck,
+                        @Value("${ai4ne.coalescing.enabled:true}") boolean coalescing) {
         this.chatClient = chatClientBuilder.build();
         this.toolService = toolService;
+        this.inventoryModelService = inventoryModelService;
+        this.routingEngine = routingEngine;
+        this.contextPruningService = contextPruningService;
+        this.deviceFilterService = deviceFilterService;
+        this.pathScoringService = pathScoringService;
+        this.strategyChatOptions = strategyChatOptions;
+        this.modelCallExecutor = modelCallExecutor;
+        this.hierarchicalContextService = hierarchicalContextService;
+        this.routingMetrics = routingMetrics;
+        this.responseCache = responseCache;
+        this.maxRepairAttempts = maxRepairAttempts;
+        this.objectMapper = objectMapper;
+        this.maxToolCalls = maxToolCalls;
+        this.cascadeConfidenceCheck = cascadeConfidenceCheck;
+        this.coalescing = coalescing;
     }
 
 
     public RouteResponse performRoutingWithSimpleLLM(String inputRequest) {
-        logger.info("Fetching devices data from external service to enrich the context for routing request: " + inputRequest);
+        // Get the list of devices and the topology of the network in advance to enrich the context
+        return performRoutingWithSimpleLLM(inputRequest, toolService.getSnapshot());
+    }
+
+
+    public RouteResponse performRoutingWithSimpleLLM(String inputRequest, InventorySnapshot snapshot) {
+        RoutingTrace trace = newTrace(RoutingStrategy.SIMPLE_LLM);
+        return observed(trace, inputRequest, snapshot.version(), () -> {
+            Preparation preparation = prepare(inputRequest, snapshot, trace);
 
-        // Get the list of devices in advance to enrich the context
-        String devices = toolService.fetchDevices();
-        logger.info("Fetched devices data: " + devices);
 
-        // Get the topology of the network to enrich the context
-        String networkTopology = toolService.fetchNetworkTopology();
-        logger.info("Fetched network topology: " + networkTopology);
+            logger.info("Performing routing for request: " + inputRequest);
 
 
-        logger.info("Performing routing for request: " + inputRequest);
+            Prompt prompt = trace.time("prompt", () -> simpleLLMPrompt(inputRequest, preparation));
 
+            System.out.println("Prompt created: " + prompt);
 
+            RouteResponse route = call(prompt, trace);
+
+            System.out.println("LLM response: " + route);
+
+            return finish(inputRequest, route, snapshot, preparation, trace);
+        });
+    }
+
+
+    private Prompt simpleLLMPrompt(String inputRequest, Preparation preparation) {
         String systemPromptTemplateString = """
             <AgentProfile>
                 You are a highly specialized **AI for Network Engineering (AI4NE) agent**. Your core responsibility is to act as a **smart router**, dynamically finding the best network path and resources for any user request.
@@ -175,12 +286,18 @@ public class AI4NeService {
                 </Phases>
             
                 <DataSources>
+                    <DevicePreFilter>
+                        {deviceFilter}
+                    </DevicePreFilter>
                     <AvailableDevices>
                         {devices}
                     </AvailableDevices>
                     <NetworkTopology>
                         {networkTopology}
                     </NetworkTopology>
+                    <ScoredCandidatePaths>
+                        {scoredPaths}
+                    </ScoredCandidatePaths>
                 </DataSources>
             
                 <OutputGuidelines>
@@ -205,42 +322,48 @@ public class AI4NeService {
 
         Message systemMessage = systemPrompt.createMessage(
                 Map.of(
-                        "devices", devices,
-                        "networkTopology", networkTopology
+                        "deviceFilter", preparation.filter().promptNote(),
+                        "devices", preparation.context().devices(),
+                        "networkTopology", preparation.context().networkTopology(),
+                        "scoredPaths", pathScoringService.shortlistForPrompt(preparation.scoredPaths())
                 )
         );
 
         Message userMessage = new UserMessage(inputRequest);
 
-        Prompt prompt = new Prompt(List.of(systemMessage, userMessage));
-
-        System.out.println("Prompt created: " + prompt);
+        return new Prompt(List.of(systemMessage, userMessage));
+    }
 
-        RouteResponse route = chatClient.prompt(prompt)
-                .call()
-                .entity(RouteResponse.class);
 
-        System.out.println("LLM response: " + route);
 
-        return route;
+    public RouteResponse performRoutingWithReasoningLLM(String inputRequest) {
+        // Get the list of devices and the topology of the network in advance to enrich the context
+        return performRoutingWithReasoningLLM(inputRequest, toolService.getSnapshot());
     }
 
 
+    public RouteResponse performRoutingWithReasoningLLM(String inputRequest, InventorySnapshot snapshot) {
+        RoutingTrace trace = newTrace(RoutingStrategy.REASONING_LLM);
+        return observed(trace, inputRequest, snapshot.version(), () -> {
+            Preparation preparation = prepare(inputRequest, snapshot, trace);
 
-    public RouteResponse performRoutingWithReasoningLLM(String inputRequest) {
-        logger.info("Fetching devices data from external service to enrich the context for routing request: " + inputRequest);
 
-        // Get the list of devices in advance to enrich the context
-        String devices = toolService.fetchDevices();
-        logger.info("Fetched devices data: " + devices);
+            logger.info("Performing routing for request: " + inputRequest);
 
-        // Get the topology of the network to enrich the context
-        String networkTopology = toolService.fetchNetworkTopology();
-        logger.info("Fetched network topology: " + networkTopology);
+            Prompt prompt = trace.time("prompt", () -> reasoningLLMPrompt(inputRequest, preparation));
 
+            System.out.println("Prompt created: " + prompt);
 
-        logger.info("Performing routing for request: " + inputRequest);
+            RouteResponse route = call(prompt, trace);
 
+            System.out.println("LLM response: " + route);
+
+            return finish(inputRequest, route, snapshot, preparation, trace);
+        });
+    }
+
+
+    private Prompt reasoningLLMPrompt(String inputRequest, Preparation preparation) {
         String systemPromptTemplateString = """
                 <AgentProfile>
                     You are a highly specialized **AI for Network Engineering (AI4NE) agent**. Your core responsibility is to act as a **smart router**, dynamically finding the best network path and resources for any user request.
@@ -379,12 +502,18 @@ public class AI4NeService {
                     </Phases>             
                          
                     <DataSources>
+                        <DevicePreFilter>
+                            {deviceFilter}
+                        </DevicePreFilter>
                         <AvailableDevices>
                             {devices}
                         </AvailableDevices>
                         <NetworkTopology>
                             {networkTopology}
                         </NetworkTopology>
+                        <ScoredCandidatePaths>
+                            {scoredPaths}
+                        </ScoredCandidatePaths>
                     </DataSources>
                             
                     <OutputGuidelines>
@@ -452,29 +581,44 @@ public class AI4NeService {
 
         Message systemMessage = systemPrompt.createMessage(
                 Map.of(
-                        "devices", devices,
-                        "networkTopology", networkTopology
+                        "deviceFilter", preparation.filter().promptNote(),
+                        "devices", preparation.context().devices(),
+                        "networkTopology", preparation.context().networkTopology(),
+                        "scoredPaths", pathScoringService.shortlistForPrompt(preparation.scoredPaths())
                 )
         );
 
         Message userMessage = new UserMessage(inputRequest);
 
-        Prompt prompt = new Prompt(List.of(systemMessage, userMessage));
+        return new Prompt(List.of(systemMessage, userMessage));
+    }
+
 
-        System.out.println("Prompt created: " + prompt);
+    public RouteResponse performRoutingWithFunctionCallingLLM(String inputRequest) {
+        RoutingTrace trace = newTrace(RoutingStrategy.FUNCTION_CALLING);
+        // The tools read the same inventory snapshot, so its version identifies the data the answer is based on
+        InventorySnapshot snapshot = toolService.getSnapshot();
+        return observed(trace, inputRequest, snapshot.version(), () -> {
+            // The devices returned by fetchDevices are pre-filtered on the hard constraints of the request
+            DeviceFilter filter = trace.time("filter", () -> deviceFilterService.filter(inputRequest, snapshot));
 
-        RouteResponse route = chatClient.prompt(prompt)
-                .call()
-                .entity(RouteResponse.class);
+            Prompt prompt = trace.time("prompt", () -> functionCallingPrompt(inputRequest));
 
-        System.out.println("LLM response: " + route);
+            System.out.println("Prompt created: " + prompt);
 
-        return route;
-    }
+            // Time spent in the tools is recorded separately, and is also part of the model phase
+            RouteResponse res = call(prompt, trace, () -> tracedTools(trace, snapshot, filter));
 
 
-    public RouteResponse performRoutingWithFunctionCallingLLM(String inputRequest) {
+            System.out.println("LLM response: " + res);
+
+            return finish(inputRequest, res, snapshot, new Preparation(filter, null, null), trace);
+        });
+
+    }
 
+
+    private Prompt functionCallingPrompt(String inputRequest) {
         String systemPromptTemplateString = """
                 <AgentProfile>
                     You are a highly specialized **AI for Network Engineering (AI4NE) agent**. Your core responsibility is to act as a **smart router**, dynamically finding the best network path and resources for any user request.
@@ -610,26 +754,664 @@ public class AI4NeService {
         SystemPromptTemplate systemPrompt = new SystemPromptTemplate(systemPromptTemplateString);
         Message systemMessage = systemPrompt.createMessage();
         Message userMessage = new UserMessage(inputRequest);
-        Prompt prompt = new Prompt(List.of(systemMessage, userMessage));
+        return new Prompt(List.of(systemMessage, userMessage));
+    }
+
+
+    public RouteResponse performRoutingWithCascade(String inputRequest) {
+        return performRoutingWithCascade(inputRequest, toolService.getSnapshot());
+    }
+
 
-        System.out.println("Prompt created: " + prompt);
+    /**
+     * Cheap-first cascade: the simple prompt is sent to the fast model (options of {@code ai4ne.models.cascade}), and
+     * the request is escalated to the reasoning prompt and model only when the answer fails the path validation or
+     * the confidence check of the {@link CascadePolicy}. Both tiers share the same prepared context.
+     */
+    public RouteResponse performRoutingWithCascade(String inputRequest, InventorySnapshot snapshot) {
+        RoutingTrace trace = newTrace(RoutingStrategy.CASCADE);
+        return observed(trace, inputRequest, snapshot.version(), () -> {
+            Preparation preparation = prepare(inputRequest, snapshot, trace);
 
-        RouteResponse res = chatClient.prompt(prompt)
-                .tools(toolService)
-                .call()
-                .entity(RouteResponse.class);
+            logger.info("Performing cascade routing for request: " + inputRequest);
 
+            Prompt fastPrompt = trace.time("prompt", () -> simpleLLMPrompt(inputRequest, preparation));
+            RouteResponse route = call(fastPrompt, trace);
 
-        System.out.println("LLM response: " + res);
+            PathValidation validation = PathValidator.validate(inventoryModelService.graphFor(snapshot), route.getSelectedPath(), route.getQualifiedDevices());
+            String escalation = CascadePolicy.escalationReason(validation, route.getSelectedPath(), route.getQualifiedDevices(),
+                    cascadeConfidenceCheck, preparation.scoredPaths().ranked(), preparation.filter().candidates());
+
+            if (escalation != null) {
+                logger.info("Escalating request to the reasoning model (" + escalation + "): " + inputRequest);
+                trace.markEscalated(escalation);
+                Prompt reasoningPrompt = trace.time("prompt", () -> reasoningLLMPrompt(inputRequest, preparation));
+                route = call(reasoningPrompt, RoutingStrategy.REASONING_LLM, "escalation", trace, NO_TOOLS);
+            }
+
+            return finish(inputRequest, route, snapshot, preparation, trace);
+        });
+    }
+
+
+    public RouteResponse performRoutingWithHybrid(String inputRequest) {
+        return performRoutingWithHybrid(inputRequest, toolService.getSnapshot());
+    }
+
+
+    /**
+     * The engine proposes, the model ranks: the candidate paths are generated and scored locally, and the model only
+     * sees the shortlist, the devices on its paths and the request, picking and justifying one of the candidates
+     */
+    public RouteResponse performRoutingWithHybrid(String inputRequest, InventorySnapshot snapshot) {
+        RoutingTrace trace = newTrace(RoutingStrategy.HYBRID);
+        return observed(trace, inputRequest, snapshot.version(), () -> {
+            Preparation preparation = prepareHybrid(inputRequest, snapshot, trace);
+
+            logger.info("Performing hybrid routing for request: " + inputRequest);
+
+            Prompt prompt = trace.time("prompt", () -> hybridPrompt(inputRequest, preparation));
+            RouteResponse route = call(prompt, trace);
+
+            return finish(inputRequest, route, snapshot, preparation, trace);
+        });
+    }
+
+
+    private Prompt hybridPrompt(String inputRequest, Preparation preparation) {
+        String systemPromptTemplateString = """
+            <AgentProfile>
+                You are an **AI for Network Engineering (AI4NE) agent** acting as the final decision step of a routing engine.
+                The engine already enumerated the candidate network paths for the user request and scored them from the device and link specs:
+                your task is to pick the candidate that best fits the intent of the request and to justify the choice.
+            
+                <DataSources>
+                    <DevicePreFilter>
+                        {deviceFilter}
+                    </DevicePreFilter>
+                    <ScoredCandidatePaths>
+                        {scoredPaths}
+                    </ScoredCandidatePaths>
+                    <DevicesOnCandidatePaths>
+                        {devices}
+                    </DevicesOnCandidatePaths>
+                </DataSources>
+            
+                <OutputGuidelines>
+                    Your response must include:
+                     - motivation: a concise justification of the choice, referring to the requirements of the request and to the metrics of the candidates
+                     - selectedPath: one of the candidate paths, copied exactly (ids of the nodes, not of the devices)
+                     - qualifiedDevices: the ids of the devices on the selected path that satisfy the requirements of the request
+                    If there is no candidate path, return an empty selectedPath and explain why in the motivation.
+                </OutputGuidelines>
+            
+                <GuidingPrinciples>
+                    * **Candidates Only:** Do not build new paths, only the candidate paths are guaranteed to be valid in the topology
+                    * **Hard Constraints First:** Prefer the candidates without violations and with devices satisfying all the requirements
+                    * **Intent-Aware Trade-offs:** Weigh latency, bandwidth, power and hops according to the priorities stated in the request
+                </GuidingPrinciples>
+            </AgentProfile>
+            """;
+
+        Message systemMessage = new SystemPromptTemplate(systemPromptTemplateString).createMessage(Map.of(
+                "deviceFilter", preparation.filter().promptNote(),
+                "scoredPaths", pathScoringService.shortlistForPrompt(preparation.scoredPaths()),
+                "devices", preparation.context().devices()
+        ));
+
+        return new Prompt(List.of(systemMessage, new UserMessage(inputRequest)));
+    }
+
+
+    /**
+     * Preparation of the hybrid strategy: the context is restricted to the nodes of the shortlisted paths
+     */
+    private Preparation prepareHybrid(String inputRequest, InventorySnapshot snapshot, RoutingTrace trace) {
+        DeviceFilter filter = trace.time("filter", () -> deviceFilterService.filter(inputRequest, snapshot));
+        ScoredPaths scoredPaths = trace.time("scoring", () -> pathScoringService.score(snapshot, inputRequest, filter.candidates()));
+        PrunedContext context = trace.time("context", () -> {
+            NetworkGraph graph = inventoryModelService.graphFor(snapshot);
+            boolean[] keptNodes = new boolean[graph.size()];
+            for (PathScore candidate : pathScoringService.shortlist(scoredPaths))
+                for (String id : candidate.path()) {
+                    int node = graph.ordinal(id);
+                    if (node >= 0) keptNodes[node] = true;
+                }
+            return contextPruningService.restrict(snapshot, keptNodes, filter.candidates());
+        });
+        return new Preparation(filter, context, scoredPaths);
+    }
+
+
+    public RouteResponse performRoutingWithScoringEngine(String inputRequest) {
+        return performRoutingWithScoringEngine(inputRequest, toolService.getSnapshot());
+    }
+
+
+    /**
+     * Fast mode without any model call: the best candidate path of the scoring engine through the devices
+     * passing the pre-filter (among the shortest paths when the filter does not apply)
+     */
+    public RouteResponse performRoutingWithScoringEngine(String inputRequest, InventorySnapshot snapshot) {
+        RoutingTrace trace = newTrace(RoutingStrategy.SCORING_ENGINE);
+        return observed(trace, inputRequest, snapshot.version(), () -> {
+            DeviceFilter filter = trace.time("filter", () -> deviceFilterService.filter(inputRequest, snapshot));
+            ScoredPaths scoredPaths = trace.time("scoring", () -> pathScoringService.score(snapshot, inputRequest, filter.candidates()));
+
+            RouteResponse route = new RouteResponse();
+            if (scoredPaths.ranked().isEmpty()) {
+                route.setMotivation("The scoring engine found no candidate path through the devices satisfying the hard constraints of the request.");
+                route.setSelectedPath(List.of());
+                route.setQualifiedDevices(List.of());
+            } else {
+                PathScore best = scoredPaths.ranked().get(0);
+                route.setMotivation("Best of " + scoredPaths.ranked().size() + " candidate paths ranked by the scoring engine: "
+                        + best.hops() + " hops, latency " + best.latencyUs() + " us, bottleneck bandwidth " + best.bottleneckGbps()
+                        + " Gbps, power " + best.powerW() + " W, score " + best.score()
+                        + (best.violations().isEmpty() ? "" : ", violations " + best.violations()) + ".");
+                route.setSelectedPath(best.path());
+                route.setQualifiedDevices(qualifiedDevicesOn(best.path(), snapshot, filter));
+            }
+
+            return finish(inputRequest, route, snapshot, new Preparation(filter, null, scoredPaths), trace);
+        });
+    }
+
+
+    /**
+     * The devices of the path that passed the pre-filter (none when the filter does not apply)
+     */
+    private List<String> qualifiedDevicesOn(List<String> path, InventorySnapshot snapshot, DeviceFilter filter) {
+        if (filter.candidates() == null) return List.of();
+        NetworkGraph graph = inventoryModelService.graphFor(snapshot);
+        return path.stream()
+                .flatMap(node -> graph.devicesOf(graph.ordinal(node)).stream())
+                .filter(filter.candidates()::contains)
+                .toList();
+    }
+
+
+    /**
+     * Runs the given strategy. The context-injecting strategies use the given snapshot, so that many requests
+     * can share the same one; the function-calling strategy fetches the data through its tools.
+     */
+    public RouteResponse route(RoutingStrategy strategy, String inputRequest, InventorySnapshot snapshot) {
+        return switch (strategy) {
+            case SIMPLE_LLM -> performRoutingWithSimpleLLM(inputRequest, snapshot);
+            case REASONING_LLM -> performRoutingWithReasoningLLM(inputRequest, snapshot);
+            case FUNCTION_CALLING -> performRoutingWithFunctionCallingLLM(inputRequest);
+            case HYBRID -> performRoutingWithHybrid(inputRequest, snapshot);
+            case CASCADE -> performRoutingWithCascade(inputRequest, snapshot);
+            case SCORING_ENGINE -> performRoutingWithScoringEngine(inputRequest, snapshot);
+        };
+    }
+
+
+    /**
+     * Runs the strategy on a synthetic request to warm up the workflow (templates, converters, inventory model,
+     * JIT) before the instance receives traffic. The model calls are answered by the in-process {@link WarmupChatModel},
+     * and the request is neither cached nor recorded in the routing and model call metrics.
+     */
+    public RouteResponse warmup(RoutingStrategy strategy, String inputRequest, InventorySnapshot snapshot) {
+        WARMUP.set(true);
+        try {
+            return route(strategy, inputRequest, snapshot);
+        } finally {
+            WARMUP.remove();
+        }
+    }
 
-        return res;
 
+    private static RoutingTrace newTrace(RoutingStrategy strategy) {
+        return new RoutingTrace(strategy, WARMUP.get());
+    }
+
+
+    /**
+     * Streaming variant of the strategies. Emits server-sent events as the workflow progresses:
+     * {@code phase} events, the {@code motivation} text as the model generates it, and the validated
+     * {@code result} once the structured output is complete ({@code error} if anything fails).
+     * <p>
+     * The streamed model call is bounded by the deadline of the strategy, but it bypasses the rest of the
+     * {@link ModelCallExecutor} (no retries nor hedging) as well as the response cache and the coalescing of
+     * identical requests: every stream is a new model call.
+     */
+    public Flux<ServerSentEvent<Object>> streamRouting(RoutingStrategy strategy, String inputRequest) {
+        if (strategy == RoutingStrategy.SCORING_ENGINE || strategy == RoutingStrategy.CASCADE) {
+            // No single model output to stream (none, or one per tier), the result is emitted as soon as it is computed
+            return Mono.fromCallable(() -> event("result", route(strategy, inputRequest, toolService.getSnapshot())))
+                    .subscribeOn(Schedulers.boundedElastic())
+                    .flux()
+                    .startWith(phase(strategy == RoutingStrategy.CASCADE ? "model" : "scoring"))
+                    .onErrorResume(e -> Mono.just(event("error", Map.of("message", String.valueOf(e.getMessage())))));
+        }
+
+        RoutingTrace trace = newTrace(strategy);
+
+        return Mono.fromCallable(() -> prepareStreaming(strategy, inputRequest, trace))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMapMany(call -> {
+                    StreamingFieldExtractor motivation = new StreamingFieldExtractor("motivation");
+                    long modelStart = System.nanoTime();
+
+                    Flux<ServerSentEvent<Object>> motivationEvents = withDeadline(call.request().stream().content(), strategy)
+                            .doOnComplete(() -> trace.addPhase("model", (System.nanoTime() - modelStart) / 1_000_000))
+                            .map(motivation::accept)
+                            .filter(delta -> !delta.isEmpty())
+                            .map(delta -> event("motivation", delta));
+
+                    Mono<ServerSentEvent<Object>> result = Mono.fromCallable(() -> {
+                                RouteResponse route = trace.time("parsing", () -> OUTPUT_CONVERTER.convert(motivation.text()));
+                                logger.info("LLM response: " + route);
+
+                                InventorySnapshot snapshot = call.snapshot() != null ? call.snapshot() : toolService.getSnapshot();
+                                RouteResponse validated = finish(inputRequest, route, snapshot, call.preparation(), trace);
+                                routingMetrics.record(trace);
+                                return event("result", validated);
+                            })
+                            .subscribeOn(Schedulers.boundedElastic());
+
+                    return Flux.concat(
+                            Mono.just(phase("model")),
+                            motivationEvents,
+                            Mono.just(phase("validation")),
+                            result
+                    );
+                })
+                .startWith(phase("context"))
+                .onErrorResume(e -> {
+                    logger.warning("Streaming routing failed: " + e.getMessage());
+                    routingMetrics.recordFailure(trace, e);
+                    return Mono.just(event("error", Map.of("message", String.valueOf(e.getMessage()))));
+                });
+    }
+
+
+    /**
+     * Fails the stream with a {@link ModelCallExecutor.ModelCallTimeoutException} if it has not completed within the
+     * deadline of the strategy, counted from the subscription
+     */
+    private <T> Flux<T> withDeadline(Flux<T> stream, RoutingStrategy strategy) {
+        Duration timeout = modelCallExecutor.timeout(strategy);
+        return Flux.defer(() -> {
+            long deadline = System.nanoTime() + timeout.toNanos();
+            return stream.timeout(Mono.delay(timeout),
+                    item -> Mono.delay(Duration.ofNanos(Math.max(0, deadline - System.nanoTime()))),
+                    Flux.error(new ModelCallExecutor.ModelCallTimeoutException(strategy, timeout)));
+        });
+    }
+
+
+    private StreamingCall prepareStreaming(RoutingStrategy strategy, String inputRequest, RoutingTrace trace) {
+        logger.info("Performing streaming routing (" + strategy + ") for request: " + inputRequest);
+
+        String format = OUTPUT_CONVERTER.getFormat();
+
+        InventorySnapshot snapshot = toolService.getSnapshot();
+
+        if (strategy == RoutingStrategy.FUNCTION_CALLING) {
+            DeviceFilter filter = trace.time("filter", () -> deviceFilterService.filter(inputRequest, snapshot));
+            Prompt prompt = withFormat(functionCallingPrompt(inputRequest), format);
+            return new StreamingCall(request(prompt, strategy, trace).toolCallbacks(tracedTools(trace, snapshot, filter)), null,
+                    new Preparation(filter, null, null));
+        }
+
+        if (strategy == RoutingStrategy.HYBRID) {
+            Preparation preparation = prepareHybrid(inputRequest, snapshot, trace);
+            Prompt prompt = hybridPrompt(inputRequest, preparation);
+            return new StreamingCall(request(withFormat(prompt, format), strategy, trace), snapshot, preparation);
+        }
+
+        Preparation preparation = prepare(inputRequest, snapshot, trace);
+        Prompt prompt = strategy == RoutingStrategy.REASONING_LLM
+                ? reasoningLLMPrompt(inputRequest, preparation)
+                : simpleLLMPrompt(inputRequest, preparation);
+
+        return new StreamingCall(request(withFormat(prompt, format), strategy, trace), snapshot, preparation);
+    }
+
+
+    /**
+     * The output format instructions are added to the prompt explicitly, so that the model call and the
+     * parsing of the structured output can be timed separately (and the output parsed as it is streamed)
+     */
+    private static Prompt withFormat(Prompt prompt, String format) {
+        return prompt.augmentUserMessage(user -> user.mutate().text(user.getText() + System.lineSeparator() + format).build());
+    }
+
+
+    private static ServerSentEvent<Object> phase(String phase) {
+        return event("phase", Map.of("phase", phase));
+    }
+
+
+    private static ServerSentEvent<Object> event(String name, Object data) {
+        return ServerSentEvent.builder(data).event(name).build();
+    }
+
+
+    private record InFlightKey(RoutingStrategy strategy, String normalizedRequest, long snapshotVersion) { }
+
+
+    private record StreamingCall(ChatClient.ChatClientRequestSpec request, InventorySnapshot snapshot, Preparation preparation) { }
+
+
+    /**
+     * Results of the work done before the model call: the context and the scored paths are only computed by the
+     * strategies that inject them in the prompt
+     */
+    private record Preparation(DeviceFilter filter, PrunedContext context, ScoredPaths scoredPaths) { }
+
+
+    /**
+     * A request to the model with the options configured for the strategy
+     */
+    private ChatClient.ChatClientRequestSpec request(Prompt prompt, RoutingStrategy strategy, RoutingTrace trace) {
+        ChatClient.ChatClientRequestSpec request = (trace.synthetic() ? warmupChatClient : chatClient).prompt(prompt);
+        ChatOptions options = strategyChatOptions.of(strategy);
+        return options != null ? request.options(options) : request;
+    }
+
+
+    /**
+     * Calls the model and parses its structured output, recording the time of both and the tokens used in the trace
+     */
+    private RouteResponse call(Prompt prompt, RoutingTrace trace) {
+        return call(prompt, trace.getStrategy(), "model", trace, NO_TOOLS);
+    }
+
+    /**
+     * @param tools builds the tools of each attempt: a retried call is a new conversation, whose tool calls must be
+     *              neither memoized from nor capped by the ones of the failed attempt
+     */
+    private RouteResponse call(Prompt prompt, RoutingTrace trace, Supplier<ToolCallback[]> tools) {
+        return call(prompt, trace.getStrategy(), "model", trace, tools);
+    }
+
+
+    /**
+     * @param optionsOf strategy whose model options are used
+     * @param phase phase of the trace the model call is recorded as
+     */
+    private RouteResponse call(Prompt prompt, RoutingStrategy optionsOf, String phase, RoutingTrace trace, Supplier<ToolCallback[]> tools) {
+        ChatResponse response = trace.time(phase, () -> modelCall(trace, tools == NO_TOOLS,
+                () -> request(withFormat(prompt, OUTPUT_CONVERTER.getFormat()), optionsOf, trace)
+                        .toolCallbacks(tools.get())
+                        .call()
+                        .chatResponse()));
+        trace.addUsage(response);
+
+        return trace.time("parsing", () -> OUTPUT_CONVERTER.convert(response.getResult().getOutput().getText()));
+    }
+
+
+    /**
+     * Runs a model call with the deadline, retries and hedging of the strategy. The stub model of the synthetic
+     * requests is called directly, so that they are neither recorded in the model call metrics nor counted in the
+     * latencies the hedging delay is estimated from.
+     */
+    private <T> T modelCall(RoutingTrace trace, boolean hedgeable, Supplier<T> call) {
+        return trace.synthetic() ? call.get() : modelCallExecutor.call(trace.getStrategy(), hedgeable, call);
+    }
+
+
+    /**
+     * Serves the request from the response cache when the same request has already been answered on the same
+     * inventory snapshot, otherwise runs the workflow and caches its response if the selected path is valid.
+     * Identical requests arriving while the workflow is running wait for its response instead of calling the model again,
+     * unless the coalescing is disabled.
+     * The trace of the request is published to the metrics, whether it succeeds or fails.
+     */
+    private RouteResponse observed(RoutingTrace trace, String inputRequest, long snapshotVersion, Supplier<RouteResponse> workflow) {
+        if (trace.synthetic()) return workflow.get();
+
+        try {
+            RouteResponse cached = trace.time("cache", () -> responseCache.get(trace.getStrategy(), inputRequest, snapshotVersion));
+            if (cached != null) {
+                logger.info("Serving routing request from the response cache (snapshot v" + snapshotVersion + "): " + inputRequest);
+                trace.markCacheHit();
+                routingMetrics.record(trace);
+                return cached.withTrace(trace);
+            }
+
+            Supplier<RouteResponse> cachedWorkflow = () -> {
+                RouteResponse route = workflow.get();
+                if (route.getValidation() != null && route.getValidation().valid())
+                    responseCache.put(trace.getStrategy(), inputRequest, snapshotVersion, route);
+                return route;
+            };
+            if (!coalescing) {
+                RouteResponse route = cachedWorkflow.get();
+                routingMetrics.record(trace);
+                return route;
+            }
+
+            InFlightKey key = new InFlightKey(trace.getStrategy(), ResponseCache.normalize(inputRequest), snapshotVersion);
+            long start = System.nanoTime();
+            SingleFlight.Result<RouteResponse> result = inFlightRequests.execute(key, cachedWorkflow);
+
+            if (result.shared()) {
+                logger.info("Routing request coalesced with an identical in-flight request: " + inputRequest);
+                trace.addPhase("coalesced", (System.nanoTime() - start) / 1_000_000);
+                trace.markCoalesced();
+                routingMetrics.record(trace);
+                return result.value().withTrace(trace);
+            }
+
+            routingMetrics.record(trace);
+            return result.value();
+        } catch (RuntimeException e) {
+            routingMetrics.recordFailure(trace, e);
+            throw e;
+        }
+    }
+
+
+    /**
+     * The tools of the ToolService bound to the snapshot of the request, wrapped so that its calls are memoized, capped
+     * and recorded in its trace. When the device pre-filter applies, fetchDevices returns only the devices satisfying
+     * the hard constraints, instead of all of them.
+     */
+    private ToolCallback[] tracedTools(RoutingTrace trace, InventorySnapshot snapshot, DeviceFilter filter) {
+        ToolCallSession session = new ToolCallSession(trace, maxToolCalls, objectMapper);
+        Object tools = toolService.tools(snapshot, filter.report().applied() ? () -> deviceFilterService.devicesJson(snapshot, filter) : null);
+        return Arrays.stream(ToolCallbacks.from(tools))
+                .map(tool -> new TracedToolCallback(tool, session))
+                .toArray(ToolCallback[]::new);
+    }
+
+
+    /**
+     * Work done before the model call by the context-injecting strategies: the device pre-filter, the prompt context
+     * and the scoring of the candidate paths through the devices that passed the filter
+     */
+    private Preparation prepare(String inputRequest, InventorySnapshot snapshot, RoutingTrace trace) {
+        DeviceFilter filter = trace.time("filter", () -> deviceFilterService.filter(inputRequest, snapshot));
+        PrunedContext context = trace.time("context", () -> assembleContext(inputRequest, snapshot, filter, trace));
+        ScoredPaths scoredPaths = trace.time("scoring", () -> pathScoringService.score(snapshot, inputRequest, filter.candidates()));
+        return new Preparation(filter, context, scoredPaths);
+    }
+
+
+    /**
+     * Builds the data injected in the system prompt. Devices and topology come from a single inventory
+     * snapshot, which is cached by the ToolService and downloaded in parallel only when stale, and are pruned
+     * to the part of the network relevant for the request. Topologies too large for one prompt are handled
+     * hierarchically: the model first selects the relevant regions, and only those are injected.
+     * Only the devices passing the pre-filter on the hard constraints of the request are candidates.
+     */
+    private PrunedContext assembleContext(String inputRequest, InventorySnapshot snapshot, DeviceFilter filter, RoutingTrace trace) {
+        logger.info("Fetching devices data and network topology to enrich the context for routing request: " + inputRequest);
+        logger.info("Using inventory snapshot v" + snapshot.version() + " fetched at " + snapshot.fetchedAt());
+
+        PrunedContext context = hierarchicalContextService.appliesTo(snapshot)
+                ? hierarchicalContextService.expand(snapshot, selectRegions(inputRequest, snapshot, trace), filter.candidates())
+                : contextPruningService.prune(snapshot, filter.candidates());
+
+        logger.info("Devices data in context: " + context.devices());
+        logger.info("Network topology in context: " + context.networkTopology());
+        logger.info("Context tokens: " + context.report().tokensBefore() + " before pruning, " + context.report().tokensAfter() + " after");
+
+        return context;
+    }
+
+
+    /**
+     * Post-processing shared by all the strategies, both blocking and streaming
+     */
+    private RouteResponse finish(String inputRequest, RouteResponse route, InventorySnapshot snapshot, Preparation preparation,
+                                 RoutingTrace trace) {
+        RouteResponse validated = trace.time("validation", () -> validate(inputRequest, route, snapshot, trace));
+        if (preparation.context() != null) validated.setContextPruning(preparation.context().report());
+        if (preparation.scoredPaths() != null) validated.setScoredPaths(pathScoringService.shortlist(preparation.scoredPaths()));
+        validated.setDeviceFilter(preparation.filter().report());
+        validated.setTrace(trace);
+        return validated;
+    }
+
+
+    /**
+     * Checks the selected path against the topology. If the path is not valid, the model can be asked to fix it
+     * with a short prompt containing only the errors and the candidate paths, instead of re-running the whole workflow.
+     */
+    private RouteResponse validate(String inputRequest, RouteResponse route, InventorySnapshot snapshot, RoutingTrace trace) {
+        NetworkGraph graph = inventoryModelService.graphFor(snapshot);
+        PathValidation validation = PathValidator.validate(graph, route.getSelectedPath(), route.getQualifiedDevices());
+
+        // The scoring engine answers without the model, so there is nobody to ask for a repair
+        int maxAttempts = trace.getStrategy() == RoutingStrategy.SCORING_ENGINE ? 0 : maxRepairAttempts;
+        int attempts = 0;
+        while (!validation.valid() && attempts < maxAttempts) {
+            attempts++;
+            logger.info("Selected path " + route.getSelectedPath() + " is not valid " + validation.errors() + ", asking the model to fix it (attempt " + attempts + ")");
+
+            RouteResponse repaired = repair(inputRequest, route, validation, snapshot, trace);
+            if (repaired == null) break;
+
+            if (repaired.getQualifiedDevices() == null) repaired.setQualifiedDevices(route.getQualifiedDevices());
+            route = repaired;
+            validation = PathValidator.validate(graph, route.getSelectedPath(), route.getQualifiedDevices());
+        }
+
+        logger.info("Path validation for " + route.getSelectedPath() + ": " + (validation.valid() ? "valid" : "invalid " + validation.errors()));
+
+        route.setValidation(validation.withRepairAttempts(attempts));
+        return route;
+    }
+
+
+    private List<String> selectRegions(String inputRequest, InventorySnapshot snapshot, RoutingTrace trace) {
+        String regionPromptTemplateString = """
+                <RegionSelection>
+                    The network is too large to be analyzed at once, so it has been partitioned into regions.
+                    Select the regions that are relevant to route the request below.
+                    <Request>{request}</Request>
+                    <Regions>
+                        {regions}
+                    </Regions>
+                    <Instructions>
+                        Each region reports its number of nodes and the number of devices of each category it contains,
+                        the regions containing start and end nodes are marked, and links lists the pairs of adjacent regions.
+                        Select at most {maxRegions} regions, most relevant first: the regions containing the devices that can
+                        serve the request, and the regions connecting them to the start and end regions.
+                    </Instructions>
+                </RegionSelection>
+                """;
+
+        Message systemMessage = new SystemPromptTemplate(regionPromptTemplateString).createMessage(Map.of(
+                "request", inputRequest,
+                "regions", hierarchicalContextService.regionSummary(snapshot),
+                "maxRegions", hierarchicalContextService.maxRegions()
+        ));
+        Prompt prompt = withFormat(new Prompt(List.of(systemMessage)), REGION_CONVERTER.getFormat());
+
+        ChatResponse response = trace.time("regions", () -> modelCall(trace, true,
+                () -> request(prompt, trace.getStrategy(), trace).call().chatResponse()));
+        trace.addUsage(response);
+
+        RegionSelection selection = REGION_CONVERTER.convert(response.getResult().getOutput().getText());
+        logger.info("Regions selected for request " + inputRequest + ": " + selection);
+        return selection.getRegions();
+    }
+
+
+    private RouteResponse repair(String inputRequest, RouteResponse route, PathValidation validation, InventorySnapshot snapshot,
+                                 RoutingTrace trace) {
+        String repairPromptTemplateString = """
+                <PathRepair>
+                    You previously selected a network path for the request below, but the path is NOT valid in the network topology.
+                    <Request>{request}</Request>
+                    <SelectedPath>{selectedPath}</SelectedPath>
+                    <QualifiedDevices>{qualifiedDevices}</QualifiedDevices>
+                    <Errors>
+                        {errors}
+                    </Errors>
+                    <CandidatePaths>
+                        {candidatePaths}
+                    </CandidatePaths>
+                    <Instructions>
+                        Fix the path so that all the errors are resolved. Prefer one of the candidate paths, which are valid paths of the topology
+                        going through the qualified devices. Keep the same qualified devices and explain the correction in a short motivation.
+                    </Instructions>
+                </PathRepair>
+                """;
+
+        List<List<String>> candidatePaths = routingEngine.route(snapshot, route.getQualifiedDevices()).paths();
+
+        Message systemMessage = new SystemPromptTemplate(repairPromptTemplateString).createMessage(Map.of(
+                "request", inputRequest,
+                "selectedPath", String.valueOf(route.getSelectedPath()),
+                "qualifiedDevices", String.valueOf(route.getQualifiedDevices()),
+                "errors", String.join("\n", validation.errors()),
+                "candidatePaths", candidatePaths.isEmpty() ? "none" : candidatePaths.stream().map(p -> String.join(" -> ", p)).collect(Collectors.joining("\n"))
+        ));
+
+        try {
+            return call(new Prompt(List.of(systemMessage)), trace);
+        } catch (RuntimeException e) {
+            logger.warning("Path repair failed: " + e.getMessage());
+            return null;
+        }
     }
 
 
     @Data
+    public static class RegionSelection {
+        String motivation;
+        @JsonPropertyDescription("The ids of the selected regions, most relevant first")
+        List<String> regions;
+    }
+
+
+    @Data
+    @JsonIgnoreProperties(value = { "validation", "contextPruning", "deviceFilter", "scoredPaths", "trace" }, allowGetters = true)
     public static class RouteResponse {
         String motivation;
         List<String> selectedPath;
+        @JsonPropertyDescription("The ids of the devices qualified in the hardware selection phase")
+        List<String> qualifiedDevices;
+
+        // Attached after the model call: not part of the output the model is asked for
+        PathValidation validation;
+        PruningReport contextPruning;
+        DeviceFilterReport deviceFilter;
+        List<PathScore> scoredPaths;
+        RoutingTrace trace;
+
+        /**
+         * @return a copy of the response with the given trace, so that cached responses are never modified
+         */
+        RouteResponse withTrace(RoutingTrace trace) {
+            RouteResponse copy = new RouteResponse();
+            copy.setMotivation(motivation);
+            copy.setSelectedPath(selectedPath);
+            copy.setQualifiedDevices(qualifiedDevices);
+            copy.setValidation(validation);
+            copy.setContextPruning(contextPruning);
+            copy.setDeviceFilter(deviceFilter);
+            copy.setScoredPaths(scoredPaths);
+            copy.setTrace(trace);
+            return copy;
+        }
     }
 }
\ No newline at end of file
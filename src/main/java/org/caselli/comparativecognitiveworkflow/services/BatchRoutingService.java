@@ -0,0 +1,81 @@
+package org.caselli.comparativecognitiveworkflow.services;
+
+import org.caselli.comparativecognitiveworkflow.model.InventorySnapshot;
+import org.caselli.comparativecognitiveworkflow.services.AI4NeService.RouteResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Routes many requests against the same network: the inventory snapshot is read once for the whole batch
+ * and the model calls run in parallel, at most {@code maxConcurrency} at a time.
+ * Each item takes a slot of the {@link StrategyBulkheads bulkhead} of its strategy, waiting for one as long as needed
+ * but after the interactive requests.
+ */
+@Service
+public class BatchRoutingService {
+
+    private final AI4NeService ai4NeService;
+    private final ToolService toolService;
+    private final StrategyBulkheads bulkheads;
+    private final int maxConcurrency;
+    private final int maxSize;
+
+    private final Logger logger = Logger.getLogger(BatchRoutingService.class.getName());
+
+    public BatchRoutingService(AI4NeService ai4NeService,
+                               ToolService toolService,
+                               StrategyBulkheads bulkheads,
+                               @Value("${ai4ne.batch.max-concurrency:4}") int maxConcurrency,
+                               @Value("${ai4ne.batch.max-size:200}") int maxSize) {
+        this.ai4NeService = ai4NeService;
+        this.toolService = toolService;
+        this.bulkheads = bulkheads;
+        this.maxConcurrency = maxConcurrency;
+        this.maxSize = maxSize;
+    }
+
+
+    /**
+     * @return the result of each request, in completion order
+     */
+    public Flux<BatchItemResult> route(RoutingStrategy strategy, List<String> requests) {
+        if (strategy == null || requests == null || requests.isEmpty())
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "A strategy and at least one request are required");
+        if (requests.size() > maxSize)
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "A batch can contain at most " + maxSize + " requests");
+
+        logger.info("Routing batch of " + requests.size() + " requests with strategy " + strategy);
+
+        return Mono.fromCallable(toolService::getSnapshot)
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMapMany(snapshot -> Flux.range(0, requests.size())
+                        .flatMap(index -> Mono.fromCallable(() -> routeItem(strategy, index, requests.get(index), snapshot))
+                                .subscribeOn(Schedulers.boundedElastic()), maxConcurrency));
+    }
+
+
+    private BatchItemResult routeItem(RoutingStrategy strategy, int index, String request, InventorySnapshot snapshot) {
+        long start = System.nanoTime();
+        try {
+            RouteResponse response = bulkheads.runQueued(strategy, () -> ai4NeService.route(strategy, request, snapshot));
+            return new BatchItemResult(index, request, response, null, (System.nanoTime() - start) / 1_000_000);
+        } catch (RuntimeException e) {
+            logger.warning("Batch item " + index + " failed: " + e.getMessage());
+            return new BatchItemResult(index, request, null, String.valueOf(e.getMessage()), (System.nanoTime() - start) / 1_000_000);
+        }
+    }
+
+
+    /**
+     * @param error why the request failed, {@code null} if it succeeded
+     */
+    public record BatchItemResult(int index, String request, RouteResponse response, String error, long latencyMs) { }
+}
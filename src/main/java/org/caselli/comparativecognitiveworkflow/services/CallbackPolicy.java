@@ -0,0 +1,66 @@
+package org.caselli.comparativecognitiveworkflow.services;
+
+import java.net.Inet4Address;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Callback URLs the routing jobs may POST their result to, so that a client cannot make the service send requests to
+ * internal addresses (server-side request forgery). When allowed hosts are configured only those are accepted,
+ * otherwise the host must resolve to public addresses only: loopback, link-local (cloud metadata), private,
+ * unique local, shared (carrier-grade NAT), wildcard and multicast addresses are refused.
+ */
+final class CallbackPolicy {
+
+    private final Set<String> allowedHosts;
+
+    CallbackPolicy(Set<String> allowedHosts) {
+        this.allowedHosts = allowedHosts.stream()
+                .map(String::trim)
+                .filter(host -> !host.isEmpty())
+                .map(host -> host.toLowerCase(Locale.ROOT))
+                .collect(Collectors.toUnmodifiableSet());
+    }
+
+
+    /**
+     * Resolves the host, so the answer holds for the DNS records of the moment: it is checked again before sending
+     */
+    boolean allows(String url) {
+        URI uri;
+        try {
+            uri = URI.create(url);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        if (!"http".equalsIgnoreCase(uri.getScheme()) && !"https".equalsIgnoreCase(uri.getScheme())) return false;
+        if (uri.getHost() == null) return false;
+
+        String host = uri.getHost().toLowerCase(Locale.ROOT);
+        if (!allowedHosts.isEmpty()) return allowedHosts.contains(host);
+
+        try {
+            for (InetAddress address : InetAddress.getAllByName(host))
+                if (internal(address)) return false;
+            return true;
+        } catch (UnknownHostException e) {
+            return false;
+        }
+    }
+
+
+    static boolean internal(InetAddress address) {
+        if (address.isLoopbackAddress() || address.isLinkLocalAddress() || address.isSiteLocalAddress()
+                || address.isAnyLocalAddress() || address.isMulticastAddress()) return true;
+
+        byte[] bytes = address.getAddress();
+        // 100.64.0.0/10 (shared address space) and fc00::/7 (unique local)
+        if (address instanceof Inet4Address) return (bytes[0] & 0xff) == 100 && (bytes[1] & 0xc0) == 64;
+        return address instanceof Inet6Address && (bytes[0] & 0xfe) == 0xfc;
+    }
+}
@@ -0,0 +1,41 @@
+package org.caselli.comparativecognitiveworkflow.services;
+
+import org.caselli.comparativecognitiveworkflow.routing.PathScorer.PathScore;
+import org.caselli.comparativecognitiveworkflow.routing.PathValidator.PathValidation;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Decides whether the answer of the fast model of the cascade is accepted or the request is escalated to the
+ * reasoning model. The answer must select a valid path and, when the confidence check is enabled, agree with the
+ * deterministic analysis of the request: the path is one of the scored candidates, it meets the end-to-end
+ * requirements whenever another candidate does, and the qualified devices passed the pre-filter.
+ */
+final class CascadePolicy {
+
+    static final String INVALID_PATH = "invalid_path";
+    static final String NOT_A_CANDIDATE = "not_a_candidate";
+    static final String VIOLATIONS = "violations";
+    static final String UNQUALIFIED_DEVICES = "unqualified_devices";
+
+    private CascadePolicy() { }
+
+
+    /**
+     * @param ranked scored candidate paths of the request, best first
+     * @param candidates devices passing the pre-filter, or {@code null} when the filter does not apply
+     * @return why the answer must be escalated, or {@code null} if it is accepted
+     */
+    static String escalationReason(PathValidation validation, List<String> selectedPath, List<String> qualifiedDevices,
+                                   boolean confidenceCheck, List<PathScore> ranked, Collection<String> candidates) {
+        if (!validation.valid()) return INVALID_PATH;
+        if (!confidenceCheck || ranked.isEmpty()) return null;
+
+        PathScore selected = ranked.stream().filter(score -> score.path().equals(selectedPath)).findFirst().orElse(null);
+        if (selected == null) return NOT_A_CANDIDATE;
+        if (!selected.violations().isEmpty() && ranked.get(0).violations().isEmpty()) return VIOLATIONS;
+        if (candidates != null && qualifiedDevices != null && !candidates.containsAll(qualifiedDevices)) return UNQUALIFIED_DEVICES;
+        return null;
+    }
+}
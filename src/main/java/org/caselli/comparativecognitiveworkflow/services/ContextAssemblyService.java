@@ -0,0 +1,143 @@
+package org.caselli.comparativecognitiveworkflow.services;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * Context-assembly stage shared by the context-injecting strategies.
+ * All the sources are fetched in parallel, each one bounded by its own timeout, and the whole
+ * stage is bounded by a combined deadline.
+ */
+@Service
+public class ContextAssemblyService {
+
+    private final ExecutorService executor;
+    private final Duration defaultSourceTimeout;
+    private final Duration deadline;
+
+    private final Logger logger = Logger.getLogger(ContextAssemblyService.class.getName());
+
+    public ContextAssemblyService(
+            @Value("${ai4ne.context.pool-size:8}") int poolSize,
+            @Value("${ai4ne.context.source-timeout-ms:10000}") long sourceTimeoutMs,
+            @Value("${ai4ne.context.deadline-ms:15000}") long deadlineMs) {
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(poolSize, runnable -> {
+            Thread thread = new Thread(runnable, "context-assembly-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.defaultSourceTimeout = Duration.ofMillis(sourceTimeoutMs);
+        this.deadline = Duration.ofMillis(deadlineMs);
+    }
+
+
+    /**
+     * Fetch all the given sources concurrently.
+     * A failure (or timeout) of a required source fails the whole stage, while optional sources are
+     * simply left out of the result. Sources still running when they time out are cancelled with an interrupt,
+     * so that a hung source releases its pool thread.
+     */
+    public AssembledContext assemble(List<ContextSource> sources) {
+        long start = System.nanoTime();
+        long stageDeadline = start + deadline.toNanos();
+
+        Map<String, Future<String>> futures = new LinkedHashMap<>();
+        Map<String, Duration> timings = new ConcurrentHashMap<>();
+
+        for (ContextSource source : sources) {
+            futures.put(source.name(), executor.submit(() -> {
+                long sourceStart = System.nanoTime();
+                try {
+                    return source.loader().get();
+                } finally {
+                    timings.put(source.name(), Duration.ofNanos(System.nanoTime() - sourceStart));
+                }
+            }));
+        }
+
+        Map<String, String> values = new LinkedHashMap<>();
+        try {
+            for (ContextSource source : sources) {
+                Future<String> future = futures.get(source.name());
+                Duration timeout = source.timeout() != null ? source.timeout() : defaultSourceTimeout;
+                // Both timeouts run from the start of the stage, as the sources are fetched in parallel
+                long sourceDeadline = Math.min(start + timeout.toNanos(), stageDeadline);
+
+                Throwable cause;
+                try {
+                    values.put(source.name(), future.get(sourceDeadline - System.nanoTime(), TimeUnit.NANOSECONDS));
+                    continue;
+                } catch (TimeoutException e) {
+                    future.cancel(true);
+                    cause = sourceDeadline == stageDeadline ? null : e;
+                } catch (ExecutionException e) {
+                    cause = e.getCause();
+                } catch (CancellationException e) {
+                    cause = e;
+                }
+
+                if (source.required())
+                    throw new ContextAssemblyException("Required context source '" + source.name() + "' is not available", cause);
+
+                logger.warning("Skipping optional context source '" + source.name() + "': " + (cause != null ? cause : "deadline exceeded"));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ContextAssemblyException("Context assembly interrupted", e);
+        } finally {
+            // Nothing still running is needed any more, once the stage has completed or failed
+            futures.values().forEach(future -> future.cancel(true));
+        }
+
+        Duration total = Duration.ofNanos(System.nanoTime() - start);
+        if (System.nanoTime() - stageDeadline > 0)
+            logger.warning("Context assembly deadline of " + deadline.toMillis() + "ms exceeded");
+        logger.info("Context assembled in " + total.toMillis() + "ms, per source: " + timings);
+
+        return new AssembledContext(values, Map.copyOf(timings), total);
+    }
+
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+
+    /**
+     * A named source of context for the prompt.
+     * @param timeout per-source timeout, {@code null} to use the configured default
+     */
+    public record ContextSource(String name, Supplier<String> loader, Duration timeout, boolean required) {
+        public static ContextSource required(String name, Supplier<String> loader) {
+            return new ContextSource(name, loader, null, true);
+        }
+
+        public static ContextSource optional(String name, Supplier<String> loader, Duration timeout) {
+            return new ContextSource(name, loader, timeout, false);
+        }
+    }
+
+
+    public record AssembledContext(Map<String, String> values, Map<String, Duration> timings, Duration total) {
+        public String get(String name) {
+            return values.get(name);
+        }
+    }
+
+
+    public static class ContextAssemblyException extends RuntimeException {
+        public ContextAssemblyException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package org.caselli.comparativecognitiveworkflow.services;
+
+import org.caselli.comparativecognitiveworkflow.model.InventorySnapshot;
+import org.caselli.comparativecognitiveworkflow.model.NetworkGraph;
+import org.caselli.comparativecognitiveworkflow.model.PromptInventory;
+import org.caselli.comparativecognitiveworkflow.routing.HopDistances;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.logging.Logger;
+
+/**
+ * Reduces the devices and topology injected in the prompt to the part of the network that is relevant
+ * for the request: the nodes lying on a start-to-end route through a candidate device at most {@code hopRadius} hops
+ * longer than the shortest route through that candidate, the devices of those nodes, and only their meaningful attributes.
+ */
+@Service
+public class ContextPruningService {
+
+    private final InventoryModelService inventoryModelService;
+    private final boolean enabled;
+    private final int hopRadius;
+
+    private final Logger logger = Logger.getLogger(ContextPruningService.class.getName());
+
+    public ContextPruningService(InventoryModelService inventoryModelService,
+                                 @Value("${ai4ne.pruning.enabled:true}") boolean enabled,
+                                 @Value("${ai4ne.pruning.hop-radius:2}") int hopRadius) {
+        this.inventoryModelService = inventoryModelService;
+        this.enabled = enabled;
+        this.hopRadius = hopRadius;
+    }
+
+
+    /**
+     * @param candidateDevices devices that may serve the request, or {@code null} if every device is a candidate
+     */
+    public PrunedContext prune(InventorySnapshot snapshot, Collection<String> candidateDevices) {
+        int tokensBefore = estimateTokens(snapshot.devices()) + estimateTokens(snapshot.networkTopology());
+
+        if (!enabled) {
+            PruningReport report = new PruningReport(-1, -1, -1, -1, tokensBefore, tokensBefore);
+            return new PrunedContext(snapshot.devices(), snapshot.networkTopology(), report);
+        }
+
+        NetworkGraph graph = inventoryModelService.graphFor(snapshot);
+        return context(snapshot, graph, relevantNodes(graph, candidateDevices), candidateDevices, tokensBefore);
+    }
+
+
+    /**
+     * Restricts the context to the given nodes (indexed by ordinal in the graph of the snapshot) and their devices
+     * @param candidateDevices devices that may serve the request, or {@code null} if every device is a candidate
+     */
+    public PrunedContext restrict(InventorySnapshot snapshot, boolean[] keptNodes, Collection<String> candidateDevices) {
+        int tokensBefore = estimateTokens(snapshot.devices()) + estimateTokens(snapshot.networkTopology());
+        return context(snapshot, inventoryModelService.graphFor(snapshot), keptNodes, candidateDevices, tokensBefore);
+    }
+
+
+    /**
+     * @param keptDevices devices to serialize, or {@code null} for all of them
+     * @return the compact JSON of the devices of the snapshot, without the excluded attributes
+     */
+    public String devicesJson(InventorySnapshot snapshot, Collection<String> keptDevices) {
+        PromptInventory inventory = inventoryModelService.modelFor(snapshot).prompt();
+        return inventory.devicesJson(keptDevices != null ? new HashSet<>(keptDevices) : inventory.deviceIds());
+    }
+
+
+    private PrunedContext context(InventorySnapshot snapshot, NetworkGraph graph, boolean[] keptNodes,
+                                  Collection<String> candidateDevices, int tokensBefore) {
+        PromptInventory inventory = inventoryModelService.modelFor(snapshot).prompt();
+
+        int nodesAfter = 0;
+        for (boolean kept : keptNodes) if (kept) nodesAfter++;
+
+        Set<String> keptDevices = new HashSet<>();
+        boolean devicesOnNodes = false;
+        for (int node = 0; node < graph.size(); node++) {
+            devicesOnNodes |= !graph.devicesOf(node).isEmpty();
+            if (keptNodes[node]) keptDevices.addAll(graph.devicesOf(node));
+        }
+        // Topologies without device associations, or nothing pruned: nothing to prune on the device side either
+        if (!devicesOnNodes || (nodesAfter == graph.size() && candidateDevices == null)) keptDevices.addAll(inventory.deviceIds());
+        if (candidateDevices != null) keptDevices.retainAll(new HashSet<>(candidateDevices));
+
+        String topology = inventory.topologyJson(keptNodes);
+        String devices = inventory.devicesJson(keptDevices);
+
+        PruningReport report = new PruningReport(
+                graph.size(), nodesAfter,
+                inventory.deviceIds().size(), (int) inventory.deviceIds().stream().filter(keptDevices::contains).count(),
+                tokensBefore, estimateTokens(devices) + estimateTokens(topology)
+        );
+        logger.info("Pruned prompt context: " + report);
+
+        return new PrunedContext(devices, topology, report);
+    }
+
+
+    /**
+     * The nodes within {@code hopRadius} extra hops of a start-to-end route through one of the candidates, for each
+     * candidate separately: a candidate far from the shortest route keeps the detour leading to it. Without candidates
+     * (the pre-filter does not apply) any device may be the one the request needs, so the topology is kept whole.
+     */
+    private boolean[] relevantNodes(NetworkGraph graph, Collection<String> candidateDevices) {
+        boolean[] kept = new boolean[graph.size()];
+        int[] starts = graph.startNodes();
+        int[] ends = graph.endNodes();
+
+        if (candidateDevices == null || starts.length == 0 || ends.length == 0) {
+            Arrays.fill(kept, true);
+            return kept;
+        }
+
+        int[] fromStart = HopDistances.from(graph, starts);
+        int[] toEnd = HopDistances.to(graph, ends);
+
+        Set<Integer> candidateNodes = new LinkedHashSet<>();
+        for (String device : candidateDevices)
+            for (int node : candidateNodes(graph, device)) candidateNodes.add(node);
+
+        boolean reachable = false;
+        for (int candidate : candidateNodes) {
+            int shortest = routeLength(fromStart, toEnd, candidate);
+            if (shortest == HopDistances.UNREACHABLE) continue;
+            reachable = true;
+
+            // start -> node -> candidate -> end, or start -> candidate -> node -> end
+            int[] toCandidate = HopDistances.to(graph, new int[]{ candidate });
+            int[] fromCandidate = HopDistances.from(graph, new int[]{ candidate });
+            long limit = (long) shortest + hopRadius;
+            for (int node = 0; node < graph.size(); node++) {
+                if (kept[node]) continue;
+                kept[node] = length(fromStart[node], toCandidate[node], toEnd[candidate]) <= limit
+                        || length(fromStart[candidate], fromCandidate[node], toEnd[node]) <= limit;
+            }
+        }
+
+        // No route through any candidate: leave the whole topology to the model
+        if (!reachable) Arrays.fill(kept, true);
+        return kept;
+    }
+
+
+    private static int[] candidateNodes(NetworkGraph graph, String device) {
+        int[] nodes = graph.nodesOf(device);
+        if (nodes.length == 0 && graph.ordinal(device) >= 0) return new int[]{ graph.ordinal(device) };
+        return nodes;
+    }
+
+
+    private static long length(int... hops) {
+        long length = 0;
+        for (int h : hops) {
+            if (h == HopDistances.UNREACHABLE) return Long.MAX_VALUE;
+            length += h;
+        }
+        return length;
+    }
+
+
+    private static int routeLength(int[] fromStart, int[] toEnd, int node) {
+        if (fromStart[node] == HopDistances.UNREACHABLE || toEnd[node] == HopDistances.UNREACHABLE) return HopDistances.UNREACHABLE;
+        return fromStart[node] + toEnd[node];
+    }
+
+
+    /**
+     * Rough token count of a text, about 4 characters per token for JSON and English text
+     */
+    public static int estimateTokens(String text) {
+        return text == null ? 0 : (text.length() + 3) / 4;
+    }
+
+
+    public record PrunedContext(String devices, String networkTopology, PruningReport report) { }
+
+    /**
+     * Size of the prompt context before and after pruning (-1 for the counts when pruning is disabled)
+     */
+    public record PruningReport(int nodesBefore, int nodesAfter, int devicesBefore, int devicesAfter,
+                                int tokensBefore, int tokensAfter) { }
+}
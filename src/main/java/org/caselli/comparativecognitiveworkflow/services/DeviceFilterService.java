@@ -0,0 +1,318 @@
+package org.caselli.comparativecognitiveworkflow.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.caselli.comparativecognitiveworkflow.model.DeviceIndex;
+import org.caselli.comparativecognitiveworkflow.model.InventorySnapshot;
+import org.caselli.comparativecognitiveworkflow.model.SpecDimension;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Mechanical part of the hardware selection: extracts the hard constraints of a request that can be checked
+ * without interpretation (bandwidth, power, latency, cores and memory figures, required protocols) and eliminates
+ * the devices that do not satisfy them, using the {@link DeviceIndex} of the snapshot.
+ * <p>
+ * The filter is conservative, the model still checks the remaining devices against all the requirements:
+ * a device is eliminated only if it reports the attribute and fails the constraint (or, for protocols, if other
+ * devices mention the protocol and it does not), and a filter that would leave no device at all is not applied.
+ * Protocols the request excludes ("without TLS") are not constraints of the filter.
+ */
+@Service
+public class DeviceFilterService {
+
+    // Number of eliminated devices listed by name in the report of each constraint
+    private static final int REPORTED_DEVICES = 20;
+
+    private static final String NUMBER = "(\\d+(?:\\.\\d+)?)";
+    private static final String UPPER_BOUND = "(?:under|below|less than|lower than|at most|up to|no more than|within|max(?:imum)?(?: of)?|<=?)\\s*";
+
+    // Matched on the original text: the case of the b tells bits (Gb/s, Gbps) from bytes (GB/s, GBps)
+    private static final Pattern BANDWIDTH = Pattern.compile(NUMBER + "\\s*([TtGgMmKk])(?:(bps|b/s|(?i:bits?/s))|(Bps|B/s|(?i:bytes?/s)))(?![A-Za-z])");
+    // Protocols following a negation ("without TLS", "no IPsec or MACsec") are not constraints, they are left to the model
+    private static final Pattern NEGATED = Pattern.compile(
+            "\\b(?:without|no|not|excluding|except|avoid(?:ing)?)\\s+(?:(?:any|a|an|the|need(?:ing)?|requir(?:e|ing)|us(?:e|ing)|support(?:ing)?)\\s+)*"
+                    + "[\\w-]+(?:\\s*(?:,|/|\\bor\\b|\\bnor\\b|\\band\\b)\\s*[\\w-]+)*", Pattern.CASE_INSENSITIVE);
+    private static final Pattern POWER_LIMIT = Pattern.compile(UPPER_BOUND + NUMBER + "\\s*(kw|w|watts?)\\b");
+    private static final Pattern POWER_RANGE = Pattern.compile("between\\s+" + NUMBER + "\\s*(?:kw|w|watts?)?\\s+and\\s+" + NUMBER + "\\s*(kw|w|watts?)\\b");
+    private static final Pattern LATENCY_LIMIT = Pattern.compile(UPPER_BOUND + NUMBER + "\\s*(ns|nanoseconds?|us|µs|microseconds?|ms|milliseconds?)\\b");
+    private static final Pattern CORES = Pattern.compile("(\\d+)(?:\\s*|-)(?:cpu |compute |arm |physical |x86 )?cores?\\b");
+    private static final Pattern MEMORY = Pattern.compile(NUMBER + "\\s*(tb|gb|mb)\\s+(?:of\\s+)?(?:memory|ram|dram|hbm)\\b");
+
+    /**
+     * Protocols and features that, when named in a request, a device must mention, with the terms that count as a mention
+     */
+    private static final Map<String, Set<String>> PROTOCOLS = new LinkedHashMap<>();
+    static {
+        PROTOCOLS.put("RDMA", Set.of("rdma", "roce", "rocev2", "iwarp", "infiniband"));
+        PROTOCOLS.put("RoCE", Set.of("roce", "rocev2"));
+        PROTOCOLS.put("InfiniBand", Set.of("infiniband"));
+        PROTOCOLS.put("NVMe-oF", Set.of("nvmeof"));
+        PROTOCOLS.put("TLS", Set.of("tls"));
+        PROTOCOLS.put("IPsec", Set.of("ipsec"));
+        PROTOCOLS.put("MACsec", Set.of("macsec"));
+        PROTOCOLS.put("P4", Set.of("p4"));
+        PROTOCOLS.put("DPDK", Set.of("dpdk"));
+        PROTOCOLS.put("eBPF", Set.of("ebpf"));
+        PROTOCOLS.put("SR-IOV", Set.of("sriov"));
+        PROTOCOLS.put("VXLAN", Set.of("vxlan"));
+        PROTOCOLS.put("Geneve", Set.of("geneve"));
+        PROTOCOLS.put("MPLS", Set.of("mpls"));
+        PROTOCOLS.put("PTP", Set.of("ptp", "ieee1588"));
+        PROTOCOLS.put("QoS", Set.of("qos"));
+        PROTOCOLS.put("MQTT", Set.of("mqtt"));
+        PROTOCOLS.put("FIPS", Set.of("fips"));
+    }
+
+    private final InventoryModelService inventoryModelService;
+    private final ContextPruningService contextPruningService;
+    private final ObjectMapper objectMapper;
+    private final boolean enabled;
+
+    private final Logger logger = Logger.getLogger(DeviceFilterService.class.getName());
+
+    public DeviceFilterService(InventoryModelService inventoryModelService,
+                               ContextPruningService contextPruningService,
+                               ObjectMapper objectMapper,
+                               @Value("${ai4ne.device-filter.enabled:true}") boolean enabled) {
+        this.inventoryModelService = inventoryModelService;
+        this.contextPruningService = contextPruningService;
+        this.objectMapper = objectMapper;
+        this.enabled = enabled;
+    }
+
+
+    public DeviceFilter filter(String inputRequest, InventorySnapshot snapshot) {
+        if (!enabled) return new DeviceFilter(null, new DeviceFilterReport(false, -1, -1, List.of()));
+
+        DeviceIndex index = index(snapshot);
+        List<ConstraintDecision> decisions = extract(inputRequest).stream().map(c -> c.evaluate(index)).toList();
+
+        Set<String> eliminated = new HashSet<>();
+        decisions.forEach(decision -> eliminated.addAll(decision.eliminatedDevices));
+
+        Set<String> candidates = new LinkedHashSet<>(index.deviceIds());
+        candidates.removeAll(eliminated);
+
+        // Nothing to filter, or a filter leaving no device at all: the decision is left to the model
+        boolean applied = !eliminated.isEmpty() && !candidates.isEmpty();
+        DeviceFilterReport report = new DeviceFilterReport(applied, index.deviceIds().size(),
+                applied ? candidates.size() : index.deviceIds().size(),
+                decisions.stream().map(ConstraintDecision::reported).toList());
+        logger.info("Device pre-filter for request " + inputRequest + ": " + report);
+
+        return new DeviceFilter(applied ? candidates : null, report);
+    }
+
+
+    /**
+     * Devices of the snapshot restricted to the candidates of the filter, with a note for the model on the
+     * constraints already checked; it replaces the output of the {@code fetchDevices} tool
+     */
+    public String devicesJson(InventorySnapshot snapshot, DeviceFilter filter) {
+        String devices = contextPruningService.devicesJson(snapshot, filter.candidates());
+        try {
+            return "{\"preFilter\":" + objectMapper.writeValueAsString(filter.promptNote()) + ",\"devices\":" + devices + "}";
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+
+    /**
+     * Hard constraints stated in the request with explicit figures or protocol names
+     */
+    static List<HardConstraint> extract(String inputRequest) {
+        String request = inputRequest.toLowerCase(Locale.ROOT);
+        List<HardConstraint> constraints = new ArrayList<>();
+
+        double bandwidth = 0;
+        for (Matcher m = BANDWIDTH.matcher(inputRequest); m.find(); )
+            bandwidth = Math.max(bandwidth, Double.parseDouble(m.group(1)) * bandwidthScale(m.group(2), m.group(4) != null));
+        if (bandwidth > 0) constraints.add(new NumericConstraint(SpecDimension.BANDWIDTH, true, bandwidth));
+
+        Matcher range = POWER_RANGE.matcher(request);
+        if (range.find()) {
+            double scale = range.group(3).equals("kw") ? 1000 : 1;
+            constraints.add(new NumericConstraint(SpecDimension.POWER, true, Double.parseDouble(range.group(1)) * scale));
+            constraints.add(new NumericConstraint(SpecDimension.POWER, false, Double.parseDouble(range.group(2)) * scale));
+        } else {
+            Matcher power = POWER_LIMIT.matcher(request);
+            if (power.find())
+                constraints.add(new NumericConstraint(SpecDimension.POWER, false,
+                        Double.parseDouble(power.group(1)) * (power.group(2).equals("kw") ? 1000 : 1)));
+        }
+
+        Matcher latency = LATENCY_LIMIT.matcher(request);
+        if ((request.contains("latency") || request.contains("delay")) && latency.find())
+            constraints.add(new NumericConstraint(SpecDimension.LATENCY, false, Double.parseDouble(latency.group(1)) * latencyScale(latency.group(2))));
+
+        Matcher cores = CORES.matcher(request);
+        if (cores.find())
+            constraints.add(new NumericConstraint(SpecDimension.CORES, true, Double.parseDouble(cores.group(1))));
+
+        Matcher memory = MEMORY.matcher(request);
+        if (memory.find())
+            constraints.add(new NumericConstraint(SpecDimension.MEMORY, true, Double.parseDouble(memory.group(1)) * memoryScale(memory.group(2))));
+
+        Set<String> terms = DeviceIndex.terms(NEGATED.matcher(inputRequest).replaceAll(" "));
+        PROTOCOLS.forEach((protocol, mentions) -> {
+            if (terms.contains(DeviceIndex.terms(protocol).stream().max(Comparator.comparingInt(String::length)).orElseThrow()))
+                constraints.add(new ProtocolConstraint(protocol, mentions));
+        });
+
+        return constraints;
+    }
+
+
+    /**
+     * @return Gbps per unit of the given decimal prefix, in bits or in bytes per second
+     */
+    private static double bandwidthScale(String prefix, boolean bytes) {
+        double scale = switch (prefix.toLowerCase(Locale.ROOT)) {
+            case "t" -> 1000;
+            case "m" -> 0.001;
+            case "k" -> 0.000001;
+            default -> 1;
+        };
+        return bytes ? scale * 8 : scale;
+    }
+
+    private static double latencyScale(String unit) {
+        if (unit.startsWith("n")) return 0.001;
+        if (unit.startsWith("ms") || unit.startsWith("milli")) return 1000;
+        return 1;
+    }
+
+    private static double memoryScale(String unit) {
+        return switch (unit) {
+            case "tb" -> 1024;
+            case "mb" -> 1.0 / 1024;
+            default -> 1;
+        };
+    }
+
+
+    interface HardConstraint {
+        String description();
+
+        ConstraintDecision evaluate(DeviceIndex index);
+    }
+
+
+    /**
+     * @param atLeast whether the value is a lower bound (otherwise it is an upper bound)
+     */
+    record NumericConstraint(SpecDimension dimension, boolean atLeast, double value) implements HardConstraint {
+
+        @Override
+        public String description() {
+            String figure = value == Math.rint(value) ? String.valueOf((long) value) : String.valueOf(value);
+            return dimension.label + (atLeast ? " >= " : " <= ") + figure + (dimension.unit.isEmpty() ? "" : " " + dimension.unit);
+        }
+
+        @Override
+        public ConstraintDecision evaluate(DeviceIndex index) {
+            List<String> attributes = new ArrayList<>();
+            Set<String> reporting = new HashSet<>();
+            Set<String> satisfying = new HashSet<>();
+
+            for (String attribute : index.numericAttributes()) {
+                Optional<SpecDimension.Unit> unit = SpecDimension.of(attribute);
+                if (unit.isEmpty() || unit.get().dimension() != dimension) continue;
+
+                attributes.add(attribute);
+                reporting.addAll(index.reporting(attribute));
+                double bound = value / unit.get().scale();
+                satisfying.addAll(atLeast ? index.atLeast(attribute, bound) : index.atMost(attribute, bound));
+            }
+
+            reporting.removeAll(satisfying);
+            return new ConstraintDecision(description(), !attributes.isEmpty(), attributes, reporting.size(), sorted(reporting));
+        }
+    }
+
+
+    record ProtocolConstraint(String protocol, Set<String> mentions) implements HardConstraint {
+
+        @Override
+        public String description() {
+            return "protocol " + protocol;
+        }
+
+        @Override
+        public ConstraintDecision evaluate(DeviceIndex index) {
+            Set<String> mentioning = new HashSet<>();
+            mentions.forEach(term -> mentioning.addAll(index.mentioning(term)));
+
+            // No device mentions the protocol at all: the inventory does not describe it, nothing can be decided
+            if (mentioning.isEmpty()) return new ConstraintDecision(description(), false, List.of(), 0, List.of());
+
+            Set<String> failing = new HashSet<>(index.deviceIds());
+            failing.removeAll(mentioning);
+            return new ConstraintDecision(description(), true, List.of(), failing.size(), sorted(failing));
+        }
+    }
+
+
+    private static List<String> sorted(Set<String> devices) {
+        return devices.stream().sorted().toList();
+    }
+
+
+    /**
+     * @return the device index of the snapshot
+     */
+    public DeviceIndex index(InventorySnapshot snapshot) {
+        return inventoryModelService.modelFor(snapshot).devices();
+    }
+
+
+
+    /**
+     * @param candidates devices satisfying all the hard constraints, or {@code null} if the filter was not applied
+     */
+    public record DeviceFilter(Set<String> candidates, DeviceFilterReport report) {
+
+        /**
+         * Explanation of the filter for the hardware selection phase of the prompts
+         */
+        public String promptNote() {
+            if (!report.applied()) return "No pre-filtering has been applied: evaluate all the available devices.";
+
+            String constraints = report.constraints().stream()
+                    .filter(ConstraintDecision::evaluated)
+                    .map(ConstraintDecision::constraint)
+                    .collect(Collectors.joining(", "));
+            return "The devices have already been checked against these hard constraints of the request: " + constraints + ". "
+                    + (report.devicesBefore() - report.devicesAfter()) + " devices failing them have been removed. "
+                    + "The remaining devices must still be checked against all the other requirements.";
+        }
+    }
+
+
+    /**
+     * Decisions of the filter (-1 for the counts when the filter is disabled)
+     */
+    public record DeviceFilterReport(boolean applied, int devicesBefore, int devicesAfter, List<ConstraintDecision> constraints) { }
+
+    /**
+     * @param evaluated whether the inventory describes the constrained attribute or protocol at all
+     * @param attributes device attributes the constraint was checked against
+     * @param eliminatedDevices devices failing the constraint (at most 20 are listed in the reports)
+     */
+    public record ConstraintDecision(String constraint, boolean evaluated, List<String> attributes, int eliminated,
+                                     List<String> eliminatedDevices) {
+
+        ConstraintDecision reported() {
+            if (eliminatedDevices.size() <= REPORTED_DEVICES) return this;
+            return new ConstraintDecision(constraint, evaluated, attributes, eliminated, eliminatedDevices.subList(0, REPORTED_DEVICES));
+        }
+    }
+}
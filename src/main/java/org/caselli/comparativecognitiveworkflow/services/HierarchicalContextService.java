@@ -0,0 +1,228 @@
+package org.caselli.comparativecognitiveworkflow.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.caselli.comparativecognitiveworkflow.model.DeviceIndex;
+import org.caselli.comparativecognitiveworkflow.model.InventoryModel;
+import org.caselli.comparativecognitiveworkflow.model.InventorySnapshot;
+import org.caselli.comparativecognitiveworkflow.model.NetworkGraph;
+import org.caselli.comparativecognitiveworkflow.routing.HopDistances;
+import org.caselli.comparativecognitiveworkflow.routing.RegionPartitioner;
+import org.caselli.comparativecognitiveworkflow.routing.RegionPartitioner.Regions;
+import org.caselli.comparativecognitiveworkflow.services.ContextPruningService.PrunedContext;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.logging.Logger;
+
+/**
+ * Hierarchical context for topologies too large for a single prompt. The topology is partitioned into regions
+ * once per snapshot; the model first picks the relevant regions from a compact region-level summary, then only
+ * the nodes and devices of the picked regions are put in the routing prompt. The size of both prompts depends on
+ * the region size and on the number of regions picked, not on the size of the network.
+ */
+@Service
+public class HierarchicalContextService {
+
+    private final InventoryModelService inventoryModelService;
+    private final ContextPruningService contextPruningService;
+    private final ObjectMapper objectMapper;
+    private final boolean enabled;
+    private final int minNodes;
+    private final int regionSize;
+    private final int maxRegions;
+
+    private volatile Entry current;
+
+    private final Logger logger = Logger.getLogger(HierarchicalContextService.class.getName());
+
+    public HierarchicalContextService(InventoryModelService inventoryModelService,
+                                      ContextPruningService contextPruningService,
+                                      ObjectMapper objectMapper,
+                                      @Value("${ai4ne.hierarchy.enabled:true}") boolean enabled,
+                                      @Value("${ai4ne.hierarchy.min-nodes:2000}") int minNodes,
+                                      @Value("${ai4ne.hierarchy.region-size:100}") int regionSize,
+                                      @Value("${ai4ne.hierarchy.max-regions:6}") int maxRegions) {
+        this.inventoryModelService = inventoryModelService;
+        this.contextPruningService = contextPruningService;
+        this.objectMapper = objectMapper;
+        this.enabled = enabled;
+        this.minNodes = minNodes;
+        this.regionSize = regionSize;
+        this.maxRegions = maxRegions;
+    }
+
+
+    /**
+     * @return whether the topology of the snapshot is large enough to be routed hierarchically
+     */
+    public boolean appliesTo(InventorySnapshot snapshot) {
+        return enabled && inventoryModelService.graphFor(snapshot).size() >= minNodes;
+    }
+
+
+    public int maxRegions() {
+        return maxRegions;
+    }
+
+
+    /**
+     * Region-level view of the network: for each region its size, whether it contains start or end nodes and
+     * how many devices of each category it has, plus the links between regions
+     */
+    public String regionSummary(InventorySnapshot snapshot) {
+        return entryFor(snapshot).summary;
+    }
+
+
+    /**
+     * Context made of the nodes and devices of the selected regions. The regions with start and end nodes are
+     * always included, and if the selection does not connect them the regions of a shortest region-level route
+     * are added, so that the model always sees at least one complete path.
+     * @param candidateDevices devices that may serve the request, or {@code null} if every device is a candidate
+     */
+    public PrunedContext expand(InventorySnapshot snapshot, Collection<String> selectedRegions, Collection<String> candidateDevices) {
+        Regions regions = entryFor(snapshot).regions;
+        NetworkGraph regionGraph = regions.regionGraph();
+
+        boolean[] selected = new boolean[regions.count()];
+        int picked = 0;
+        if (selectedRegions != null) {
+            for (String id : selectedRegions) {
+                int region = regionGraph.ordinal(id);
+                if (region < 0 || selected[region] || picked >= maxRegions) continue;
+                selected[region] = true;
+                picked++;
+            }
+        }
+        for (int region : regionGraph.startNodes()) selected[region] = true;
+        for (int region : regionGraph.endNodes()) selected[region] = true;
+        connect(regionGraph, selected);
+
+        boolean[] keptNodes = new boolean[regions.regionOf().length];
+        List<String> expanded = new ArrayList<>();
+        for (int region = 0; region < regions.count(); region++) {
+            if (!selected[region]) continue;
+            expanded.add(Regions.id(region));
+            for (int node : regions.members()[region]) keptNodes[node] = true;
+        }
+
+        PrunedContext context = contextPruningService.restrict(snapshot, keptNodes, candidateDevices);
+        logger.info("Expanded regions " + expanded + " (model selected " + selectedRegions + "): " + context.report());
+        return context;
+    }
+
+
+    /**
+     * Adds to the selection the regions of a shortest route from a start region to an end region,
+     * preferring the regions already selected, unless the selection already connects them
+     */
+    private static void connect(NetworkGraph regionGraph, boolean[] selected) {
+        int[] starts = regionGraph.startNodes();
+        int[] ends = regionGraph.endNodes();
+        if (starts.length == 0 || ends.length == 0 || connected(regionGraph, selected, starts)) return;
+
+        int[] toEnd = HopDistances.to(regionGraph, ends);
+        int current = -1;
+        for (int start : starts)
+            if (toEnd[start] != HopDistances.UNREACHABLE && (current < 0 || toEnd[start] < toEnd[current])) current = start;
+        if (current < 0) return;
+
+        while (toEnd[current] > 0) {
+            int next = -1;
+            for (int i = 0; i < regionGraph.degree(current); i++) {
+                int v = regionGraph.neighbour(current, i);
+                if (toEnd[v] != toEnd[current] - 1) continue;
+                if (next < 0 || (selected[v] && !selected[next])) next = v;
+            }
+            current = next;
+            selected[current] = true;
+        }
+    }
+
+
+    private static boolean connected(NetworkGraph regionGraph, boolean[] selected, int[] starts) {
+        boolean[] visited = new boolean[regionGraph.size()];
+        Deque<Integer> queue = new ArrayDeque<>();
+        for (int start : starts) {
+            visited[start] = true;
+            queue.add(start);
+        }
+        while (!queue.isEmpty()) {
+            int u = queue.poll();
+            if (regionGraph.isEnd(u)) return true;
+            for (int i = 0; i < regionGraph.degree(u); i++) {
+                int v = regionGraph.neighbour(u, i);
+                if (!visited[v] && selected[v]) {
+                    visited[v] = true;
+                    queue.add(v);
+                }
+            }
+        }
+        return false;
+    }
+
+
+    private Entry entryFor(InventorySnapshot snapshot) {
+        Entry entry = current;
+        if (entry != null && entry.version == snapshot.version()) return entry;
+
+        synchronized (this) {
+            entry = current;
+            if (entry != null && entry.version == snapshot.version()) return entry;
+
+            long start = System.nanoTime();
+            InventoryModel model = inventoryModelService.modelFor(snapshot);
+            Regions regions = RegionPartitioner.partition(model.graph(), regionSize);
+            String summary = summarize(model.graph(), model.devices(), regions);
+            logger.info("Partitioned snapshot v" + snapshot.version() + " into " + regions.count() + " regions in "
+                    + (System.nanoTime() - start) / 1_000_000 + "ms, region summary of ~"
+                    + ContextPruningService.estimateTokens(summary) + " tokens");
+
+            current = new Entry(snapshot.version(), regions, summary);
+            return current;
+        }
+    }
+
+
+    private String summarize(NetworkGraph graph, DeviceIndex devices, Regions regions) {
+        NetworkGraph regionGraph = regions.regionGraph();
+
+        ObjectNode root = objectMapper.createObjectNode();
+        ArrayNode regionList = root.putArray("regions");
+        for (int region = 0; region < regions.count(); region++) {
+            Map<String, Integer> histogram = new TreeMap<>();
+            int deviceCount = 0;
+            for (int node : regions.members()[region]) {
+                for (String device : graph.devicesOf(node)) {
+                    deviceCount++;
+                    String category = devices.category(device);
+                    histogram.merge(category != null ? category : "other", 1, Integer::sum);
+                }
+            }
+
+            ObjectNode summary = regionList.addObject()
+                    .put("id", Regions.id(region))
+                    .put("nodes", regions.members()[region].length)
+                    .put("devices", deviceCount);
+            if (Arrays.binarySearch(regionGraph.startNodes(), region) >= 0) summary.put("start", true);
+            if (regionGraph.isEnd(region)) summary.put("end", true);
+            histogram.forEach(summary.putObject("categories")::put);
+        }
+
+        ArrayNode links = root.putArray("links");
+        for (int u = 0; u < regionGraph.size(); u++) {
+            for (int i = 0; i < regionGraph.degree(u); i++) {
+                int v = regionGraph.neighbour(u, i);
+                if (regionGraph.isDirected() || u < v) links.addArray().add(Regions.id(u)).add(Regions.id(v));
+            }
+        }
+
+        return root.toString();
+    }
+
+
+    private record Entry(long version, Regions regions, String summary) { }
+}
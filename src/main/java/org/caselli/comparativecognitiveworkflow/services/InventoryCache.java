@@ -0,0 +1,215 @@
+package org.caselli.comparativecognitiveworkflow.services;
+
+import org.caselli.comparativecognitiveworkflow.model.InventorySnapshot;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * In-memory cache holding the last inventory snapshot.
+ * Only one snapshot is retained at a time and snapshots bigger than the configured budget are never
+ * retained, so the memory used by the cache is bounded. Concurrent misses trigger a single download.
+ * <p>
+ * An expired snapshot is still served for {@code maxStale} after its expiration while a single refresh runs in the
+ * background, so the requests do not wait for the inventory service nor fail while it is unreachable.
+ */
+public class InventoryCache {
+
+    private final Duration ttl;
+    private final long maxBytes;
+    private final Duration maxStale;
+    private final Executor refreshExecutor;
+    private final Clock clock;
+
+    private final ReentrantLock loadLock = new ReentrantLock();
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+    private volatile Entry current;
+    private volatile String lastDigest;
+
+    private final AtomicLong version = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong staleHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+    private final AtomicLong oversized = new AtomicLong();
+
+    private final Logger logger = Logger.getLogger(InventoryCache.class.getName());
+
+    InventoryCache(Duration ttl, long maxBytes, Clock clock) {
+        this(ttl, maxBytes, Duration.ZERO, Runnable::run, clock);
+    }
+
+    InventoryCache(Duration ttl, long maxBytes, Duration maxStale, Executor refreshExecutor, Clock clock) {
+        this.ttl = ttl;
+        this.maxBytes = maxBytes;
+        this.maxStale = maxStale;
+        this.refreshExecutor = refreshExecutor;
+        this.clock = clock;
+    }
+
+
+    InventorySnapshot get(Supplier<InventorySnapshot> loader) {
+        Entry entry = current;
+        Instant now = clock.instant();
+        if (entry != null && !entry.isExpired(now)) {
+            hits.incrementAndGet();
+            return entry.snapshot;
+        }
+        if (entry != null && now.isBefore(entry.staleUntil)) {
+            staleHits.incrementAndGet();
+            refreshInBackground(loader);
+            return entry.snapshot;
+        }
+
+        return load(loader);
+    }
+
+
+    /**
+     * Starts a refresh of the expired snapshot, unless one is already running
+     */
+    private void refreshInBackground(Supplier<InventorySnapshot> loader) {
+        if (!refreshing.compareAndSet(false, true)) return;
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    load(loader);
+                } catch (RuntimeException e) {
+                    logger.warning("Background refresh of the inventory snapshot failed, still serving the stale one: " + e.getMessage());
+                } finally {
+                    refreshing.set(false);
+                }
+            });
+        } catch (RuntimeException e) {
+            refreshing.set(false);
+            logger.warning("Could not start the background refresh of the inventory snapshot: " + e.getMessage());
+        }
+    }
+
+
+    private InventorySnapshot load(Supplier<InventorySnapshot> loader) {
+        loadLock.lock();
+        try {
+            // Another thread may have loaded the snapshot while we were waiting
+            Entry entry = current;
+            if (entry != null && !entry.isExpired(clock.instant())) {
+                hits.incrementAndGet();
+                return entry.snapshot;
+            }
+
+            misses.incrementAndGet();
+            InventorySnapshot snapshot = stamp(loader.get());
+
+            if (snapshot.estimatedBytes() > maxBytes) {
+                oversized.incrementAndGet();
+                logger.warning("Inventory snapshot of ~" + snapshot.estimatedBytes() + " bytes exceeds the cache budget of " + maxBytes + " bytes, not caching it");
+                current = null;
+            } else {
+                Instant expiresAt = clock.instant().plus(ttl);
+                current = new Entry(snapshot, expiresAt, expiresAt.plus(maxStale));
+            }
+
+            return snapshot;
+        } finally {
+            loadLock.unlock();
+        }
+    }
+
+
+    /**
+     * Assigns the version to a freshly downloaded snapshot. The version only changes if the content
+     * differs from the previous download, so consumers keyed on it are not invalidated needlessly.
+     */
+    private InventorySnapshot stamp(InventorySnapshot loaded) {
+        // Documents answered with 304 are the very same strings, no need to hash them again
+        Entry previous = current;
+        if (previous != null && previous.snapshot.devices() == loaded.devices() && previous.snapshot.networkTopology() == loaded.networkTopology())
+            return loaded.withVersion(previous.snapshot.version());
+
+        // Only the digest of the previous download is kept, so that an oversized snapshot is not retained
+        String digest = digest(loaded);
+        long stamped = digest.equals(lastDigest) ? version.get() : version.incrementAndGet();
+        lastDigest = digest;
+
+        return loaded.withVersion(stamped);
+    }
+
+
+    private static String digest(InventorySnapshot snapshot) {
+        try {
+            MessageDigest sha = MessageDigest.getInstance("SHA-256");
+            sha.update(String.valueOf(snapshot.devices()).getBytes(StandardCharsets.UTF_8));
+            sha.update((byte) 0);
+            sha.update(String.valueOf(snapshot.networkTopology()).getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(sha.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+
+    /**
+     * Installs a snapshot persisted by a previous run, already expired so that the first request refreshes it.
+     * It is served while stale, that is until {@code maxStale} after the expiration it had when downloaded.
+     *
+     * @return whether the snapshot is recent enough to be served
+     */
+    boolean restore(InventorySnapshot snapshot) {
+        Instant staleUntil = snapshot.fetchedAt().plus(ttl).plus(maxStale);
+        if (!clock.instant().isBefore(staleUntil) || snapshot.estimatedBytes() > maxBytes) return false;
+
+        loadLock.lock();
+        try {
+            if (current != null) return false;
+            version.accumulateAndGet(snapshot.version(), Math::max);
+            lastDigest = digest(snapshot);
+            current = new Entry(snapshot, clock.instant(), staleUntil);
+            return true;
+        } finally {
+            loadLock.unlock();
+        }
+    }
+
+
+    void invalidate() {
+        invalidations.incrementAndGet();
+        current = null;
+    }
+
+
+    Stats stats() {
+        Entry entry = current;
+        return new Stats(
+                hits.get(),
+                staleHits.get(),
+                misses.get(),
+                invalidations.get(),
+                oversized.get(),
+                entry != null ? entry.snapshot.version() : null,
+                entry != null ? entry.snapshot.fetchedAt() : null,
+                entry != null ? entry.snapshot.estimatedBytes() : 0
+        );
+    }
+
+
+    private record Entry(InventorySnapshot snapshot, Instant expiresAt, Instant staleUntil) {
+        boolean isExpired(Instant now) {
+            return !now.isBefore(expiresAt);
+        }
+    }
+
+
+    public record Stats(long hits, long staleHits, long misses, long invalidations, long oversized,
+                        Long cachedVersion, Instant cachedAt, long cachedBytes) { }
+}
@@ -0,0 +1,97 @@
+package org.caselli.comparativecognitiveworkflow.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.caselli.comparativecognitiveworkflow.model.InventoryModel;
+import org.caselli.comparativecognitiveworkflow.model.InventorySnapshot;
+import org.caselli.comparativecognitiveworkflow.model.NetworkGraph;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.logging.Logger;
+
+/**
+ * Keeps the {@link InventoryModel} of the recent inventory snapshots, so that devices and topology are parsed
+ * once per snapshot version instead of once per request, and by all the services at once.
+ * <p>
+ * Models are keyed by version: requests still working on the previous snapshot keep sharing its model while the
+ * next one is built. Each version is built once, by its first caller and outside the lock, so building a new
+ * version never blocks the requests on the versions already built.
+ */
+@Service
+public class InventoryModelService {
+
+    private final ObjectMapper objectMapper;
+    private final boolean directed;
+    private final Set<String> excludedAttributes;
+
+    static final int RETAINED_VERSIONS = 2;
+
+    /** Most recently used last, guarded by itself */
+    private final Map<Long, CompletableFuture<InventoryModel>> models = new LinkedHashMap<>(4, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, CompletableFuture<InventoryModel>> eldest) {
+            return size() > RETAINED_VERSIONS;
+        }
+    };
+
+    private final Logger logger = Logger.getLogger(InventoryModelService.class.getName());
+
+    public InventoryModelService(ObjectMapper objectMapper,
+                                 @Value("${ai4ne.topology.directed:false}") boolean directed,
+                                 @Value("${ai4ne.pruning.excluded-device-attributes:}") Set<String> excludedAttributes) {
+        this.objectMapper = objectMapper;
+        this.directed = directed;
+        this.excludedAttributes = Set.copyOf(excludedAttributes);
+    }
+
+
+    public InventoryModel modelFor(InventorySnapshot snapshot) {
+        CompletableFuture<InventoryModel> future;
+        boolean build = false;
+        synchronized (models) {
+            future = models.get(snapshot.version());
+            if (future == null) {
+                future = new CompletableFuture<>();
+                models.put(snapshot.version(), future);
+                build = true;
+            }
+        }
+
+        if (build) {
+            try {
+                future.complete(build(snapshot));
+            } catch (RuntimeException e) {
+                // Not retained: the next caller tries again
+                synchronized (models) {
+                    models.remove(snapshot.version(), future);
+                }
+                future.completeExceptionally(e);
+            }
+        }
+
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+    }
+
+    private InventoryModel build(InventorySnapshot snapshot) {
+        long start = System.nanoTime();
+        InventoryModel model = InventoryModel.parse(snapshot, objectMapper, directed, excludedAttributes);
+        logger.info("Built inventory model for snapshot v" + snapshot.version() + " (" + model.graph().size() + " nodes, "
+                + model.graph().edgeCount() + " edges, " + model.devices().deviceIds().size() + " devices) in "
+                + (System.nanoTime() - start) / 1_000_000 + "ms");
+        return model;
+    }
+
+
+    public NetworkGraph graphFor(InventorySnapshot snapshot) {
+        return modelFor(snapshot).graph();
+    }
+}
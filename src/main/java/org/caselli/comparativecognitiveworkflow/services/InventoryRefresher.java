@@ -0,0 +1,188 @@
+package org.caselli.comparativecognitiveworkflow.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.logging.Logger;
+
+/**
+ * Downloads the inventory documents, re-using the previous download whenever possible:
+ * <ul>
+ *     <li>requests are conditional ({@code If-None-Match}, {@code If-Modified-Since}) and a 304 answer keeps the previous body;</li>
+ *     <li>for the documents with a delta applier, the changes since the previous ETag are requested first
+ *     ({@code <endpoint>/delta?since=<etag>}) and applied to the previously parsed document. A backend without the
+ *     delta endpoint (404, 405, 501) is not asked again, and any other failure falls back to the full download.</li>
+ * </ul>
+ * The previous body (and its parsed tree once a delta has been applied) is retained only if the body fits the memory
+ * budget of the inventory cache, otherwise the next download is unconditional. A patched document is re-serialized
+ * and the model of the snapshot rebuilt in full, as after a complete download.
+ */
+public class InventoryRefresher {
+
+    static final String NOT_MODIFIED = "not_modified";
+    static final String DELTA = "delta";
+    static final String FULL = "full";
+
+    private static final Set<Integer> DELTA_UNSUPPORTED = Set.of(404, 405, 501);
+
+    /**
+     * GET of the inventory service, answering every status instead of throwing
+     */
+    @FunctionalInterface
+    interface Transport {
+        Response get(String path, String since, String etag, String lastModified);
+    }
+
+    record Response(int status, String body, String etag, String lastModified) { }
+
+    /**
+     * Validators of a retained document, {@code null} when the backend did not send them
+     */
+    record Validators(String etag, String lastModified) { }
+
+    private record Resource(String body, String etag, String lastModified, JsonNode tree) { }
+
+    private final Transport transport;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    private final boolean conditional;
+    private final boolean deltas;
+    private final long maxBytes;
+
+    private final Map<String, Resource> resources = new ConcurrentHashMap<>();
+    private final Set<String> deltaUnsupported = ConcurrentHashMap.newKeySet();
+
+    private final Logger logger = Logger.getLogger(InventoryRefresher.class.getName());
+
+    InventoryRefresher(Transport transport, ObjectMapper objectMapper, MeterRegistry meterRegistry,
+                       boolean conditional, boolean deltas, long maxBytes) {
+        this.transport = transport;
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+        this.conditional = conditional;
+        this.deltas = deltas;
+        this.maxBytes = maxBytes;
+    }
+
+
+    /**
+     * @param deltaApplier applies in place a delta of the endpoint to its parsed document, {@code null} if the
+     *                     endpoint has no deltas
+     * @return the current body of the document
+     */
+    String fetch(String endpoint, BiConsumer<JsonNode, JsonNode> deltaApplier) {
+        Resource previous = conditional ? resources.get(endpoint) : null;
+
+        if (previous != null && previous.etag() != null && deltaApplier != null && deltas && !deltaUnsupported.contains(endpoint)) {
+            String body = fetchDelta(endpoint, previous, deltaApplier);
+            if (body != null) return body;
+        }
+
+        Response response = transport.get(endpoint, null,
+                previous != null ? previous.etag() : null, previous != null ? previous.lastModified() : null);
+
+        if (response.status() == 304 && previous != null) {
+            record(endpoint, NOT_MODIFIED, 0);
+            return previous.body();
+        }
+        if (response.status() / 100 != 2)
+            throw new IllegalStateException("The inventory service answered " + response.status() + " to GET " + endpoint);
+
+        record(endpoint, FULL, response.body().length());
+        retain(endpoint, new Resource(response.body(), response.etag(), response.lastModified(), null));
+        return response.body();
+    }
+
+
+    /**
+     * @return the updated body, or {@code null} to fall back to the full download
+     */
+    private String fetchDelta(String endpoint, Resource previous, BiConsumer<JsonNode, JsonNode> deltaApplier) {
+        Response response;
+        try {
+            response = transport.get(endpoint + "/delta", previous.etag(), null, null);
+        } catch (RuntimeException e) {
+            logger.warning("Delta request of " + endpoint + " failed, downloading it in full: " + e.getMessage());
+            return null;
+        }
+
+        if (response.status() == 304) {
+            record(endpoint, NOT_MODIFIED, 0);
+            return previous.body();
+        }
+        if (DELTA_UNSUPPORTED.contains(response.status())) {
+            logger.info("The inventory service has no deltas for " + endpoint + " (" + response.status() + "), using conditional downloads only");
+            deltaUnsupported.add(endpoint);
+            return null;
+        }
+        // 410 Gone: the previous version is too old to be diffed
+        if (response.status() != 200 || response.etag() == null) return null;
+
+        try {
+            JsonNode tree = previous.tree() != null ? previous.tree() : objectMapper.readTree(previous.body());
+            deltaApplier.accept(tree, objectMapper.readTree(response.body()));
+            String body = objectMapper.writeValueAsString(tree);
+
+            record(endpoint, DELTA, response.body().length());
+            retain(endpoint, new Resource(body, response.etag(), response.lastModified(), tree));
+            return body;
+        } catch (JsonProcessingException | IllegalArgumentException e) {
+            // The parsed tree may have been partially modified, the previous body is still consistent with its ETag
+            logger.warning("Could not apply the delta of " + endpoint + ", downloading it in full: " + e.getMessage());
+            resources.put(endpoint, new Resource(previous.body(), previous.etag(), previous.lastModified(), null));
+            return null;
+        }
+    }
+
+
+    private void retain(String endpoint, Resource resource) {
+        if (conditional && 2L * resource.body().length() <= maxBytes) resources.put(endpoint, resource);
+        else resources.remove(endpoint);
+    }
+
+
+    /**
+     * Retains a document downloaded by a previous run, so that its next fetch is conditional
+     */
+    void seed(String endpoint, String body, String etag, String lastModified) {
+        if (etag != null || lastModified != null) retain(endpoint, new Resource(body, etag, lastModified, null));
+    }
+
+
+    /**
+     * @return the validators of the given body if it is the one currently retained for the endpoint, otherwise {@code null}
+     */
+    Validators validators(String endpoint, String body) {
+        Resource resource = resources.get(endpoint);
+        return resource != null && resource.body() == body ? new Validators(resource.etag(), resource.lastModified()) : null;
+    }
+
+
+    void reset() {
+        resources.clear();
+    }
+
+
+    private void record(String endpoint, String outcome, long receivedChars) {
+        Counter.builder("ai4ne.inventory.refreshes")
+                .description("Refreshes of the inventory documents, by outcome (not_modified, delta, full)")
+                .tag("endpoint", endpoint)
+                .tag("outcome", outcome)
+                .register(meterRegistry)
+                .increment();
+        DistributionSummary.builder("ai4ne.inventory.received")
+                .description("Characters of inventory documents and deltas received")
+                .baseUnit("chars")
+                .tag("endpoint", endpoint)
+                .register(meterRegistry)
+                .record(receivedChars);
+    }
+}
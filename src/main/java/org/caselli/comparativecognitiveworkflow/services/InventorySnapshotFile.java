@@ -0,0 +1,137 @@
+package org.caselli.comparativecognitiveworkflow.services;
+
+import org.caselli.comparativecognitiveworkflow.model.InventorySnapshot;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Last good inventory snapshot persisted on the local disk, so that a restarted instance can serve before (or
+ * without) reaching the inventory service. The file is binary and memory-mapped when read:
+ * <pre>
+ * magic "AINV" | format (short) | snapshot version (long) | fetched at, epoch ms (long)
+ * 2 x document: etag | last modified | body   (each one an int byte length followed by UTF-8 bytes, -1 for null)
+ * CRC32 of all the previous bytes (long)
+ * </pre>
+ * The validators of the documents are kept so that the first refresh after a restart can be a conditional request.
+ * Files are replaced atomically, and a truncated, corrupted or unknown file is ignored.
+ */
+public class InventorySnapshotFile {
+
+    private static final int MAGIC = 0x41494E56;
+    private static final short FORMAT = 1;
+
+    /**
+     * A document of the snapshot with the validators it was downloaded with, {@code null} when unknown
+     */
+    record Document(String body, String etag, String lastModified) { }
+
+    record Persisted(long version, Instant fetchedAt, Document devices, Document networkTopology) {
+        InventorySnapshot snapshot() {
+            return new InventorySnapshot(version, devices.body(), networkTopology.body(), fetchedAt);
+        }
+    }
+
+    private final Path path;
+
+    private final Logger logger = Logger.getLogger(InventorySnapshotFile.class.getName());
+
+    InventorySnapshotFile(Path path) {
+        this.path = path;
+    }
+
+
+    Optional<Persisted> load() {
+        if (!Files.isRegularFile(path)) return Optional.empty();
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (buffer.remaining() < Long.BYTES || buffer.getInt() != MAGIC || buffer.getShort() != FORMAT)
+                throw new IOException("not an inventory snapshot of format " + FORMAT);
+
+            CRC32 crc = new CRC32();
+            crc.update(buffer.duplicate().position(0).limit(buffer.limit() - Long.BYTES));
+            if (crc.getValue() != buffer.getLong(buffer.limit() - Long.BYTES)) throw new IOException("checksum mismatch");
+
+            long version = buffer.getLong();
+            Instant fetchedAt = Instant.ofEpochMilli(buffer.getLong());
+            Document devices = readDocument(buffer);
+            Document topology = readDocument(buffer);
+            if (devices.body() == null || topology.body() == null) throw new IOException("missing document");
+
+            return Optional.of(new Persisted(version, fetchedAt, devices, topology));
+        } catch (IOException | RuntimeException e) {
+            logger.warning("Ignoring the persisted inventory snapshot " + path + ": " + e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+
+    void save(Persisted persisted) throws IOException {
+        byte[][] strings = {
+                bytes(persisted.devices().etag()), bytes(persisted.devices().lastModified()), bytes(persisted.devices().body()),
+                bytes(persisted.networkTopology().etag()), bytes(persisted.networkTopology().lastModified()), bytes(persisted.networkTopology().body())
+        };
+        int size = Integer.BYTES + Short.BYTES + 2 * Long.BYTES + Long.BYTES;
+        for (byte[] string : strings) size += Integer.BYTES + (string == null ? 0 : string.length);
+
+        ByteBuffer buffer = ByteBuffer.allocate(size)
+                .putInt(MAGIC)
+                .putShort(FORMAT)
+                .putLong(persisted.version())
+                .putLong(persisted.fetchedAt().toEpochMilli());
+        for (byte[] string : strings) {
+            buffer.putInt(string == null ? -1 : string.length);
+            if (string != null) buffer.put(string);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, buffer.position());
+        buffer.putLong(crc.getValue());
+
+        Path directory = path.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temporary = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+        try {
+            Files.write(temporary, buffer.array());
+            try {
+                Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+
+    private static Document readDocument(ByteBuffer buffer) {
+        String etag = readString(buffer), lastModified = readString(buffer);
+        return new Document(readString(buffer), etag, lastModified);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) return null;
+        String value = StandardCharsets.UTF_8.decode(buffer.slice(buffer.position(), length)).toString();
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    private static byte[] bytes(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+
+    Path path() {
+        return path;
+    }
+}
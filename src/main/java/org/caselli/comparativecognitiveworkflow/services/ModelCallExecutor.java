@@ -0,0 +1,263 @@
+package org.caselli.comparativecognitiveworkflow.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.springframework.ai.retry.TransientAiException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * Resilient invocation of the blocking model calls:
+ * <ul>
+ *     <li>a deadline per strategy ({@code ai4ne.models.<strategy>.timeout-ms}, default {@code ai4ne.model-calls.timeout-ms})
+ *     covering all the attempts, after which the request fails with 504</li>
+ *     <li>retry with exponential backoff of the transient errors (5xx, 429, I/O errors), within the deadline</li>
+ *     <li>optional hedging: once a call has been running for longer than the given percentile of the recent latencies of
+ *     the strategy, an identical second call is started; the first to answer wins and the other is cancelled.
+ *     Calls with tools are never hedged, as their tools would run twice.</li>
+ * </ul>
+ * Calls run on a pool bounded by the concurrency allowed by the {@link StrategyBulkheads} (twice that with hedging), or by
+ * {@code ai4ne.model-calls.max-threads} when set. A timed-out call is only cancelled: the blocking HTTP call underneath is
+ * not interrupted and keeps its thread until the read timeout of the client ({@code spring.http.client.read-timeout}),
+ * which should match the longest deadline.
+ * <p>
+ * Published metrics: {@code ai4ne.model.calls} (by strategy and outcome), {@code ai4ne.model.retries} (by strategy and
+ * exception) and {@code ai4ne.model.hedges} (hedges fired, by strategy and winner: primary, hedge or none).
+ */
+@Component
+public class ModelCallExecutor {
+
+    static final String PRIMARY = "primary";
+    static final String HEDGE = "hedge";
+
+    private static final int LATENCY_WINDOW = 256;
+
+    private final ExecutorService executor;
+    private final MeterRegistry meterRegistry;
+    private final Map<RoutingStrategy, Duration> timeouts = new EnumMap<>(RoutingStrategy.class);
+    private final int maxAttempts;
+    private final long backoffMs;
+    private final long maxBackoffMs;
+    private final boolean hedgeEnabled;
+    private final int hedgePercentile;
+    private final int hedgeMinSamples;
+    private final Map<RoutingStrategy, LatencyWindow> latencies = new ConcurrentHashMap<>();
+
+    private final Logger logger = Logger.getLogger(ModelCallExecutor.class.getName());
+
+    @Autowired
+    public ModelCallExecutor(Environment environment, MeterRegistry meterRegistry, StrategyBulkheads bulkheads,
+                             @Value("${ai4ne.model-calls.max-threads:0}") int maxThreads,
+                             @Value("${ai4ne.model-calls.timeout-ms:120000}") long timeoutMs,
+                             @Value("${ai4ne.model-calls.retry.max-attempts:3}") int maxAttempts,
+                             @Value("${ai4ne.model-calls.retry.backoff-ms:500}") long backoffMs,
+                             @Value("${ai4ne.model-calls.retry.max-backoff-ms:4000}") long maxBackoffMs,
+                             @Value("${ai4ne.model-calls.hedge.enabled:false}") boolean hedgeEnabled,
+                             @Value("${ai4ne.model-calls.hedge.percentile:95}") int hedgePercentile,
+                             @Value("${ai4ne.model-calls.hedge.min-samples:20}") int hedgeMinSamples) {
+        // A hedge must never queue behind the calls it is meant to overtake: each admitted request can run two calls
+        this(environment, meterRegistry, maxThreads > 0 ? maxThreads : (hedgeEnabled ? 2 : 1) * bulkheads.maxInFlight(),
+                timeoutMs, maxAttempts, backoffMs, maxBackoffMs, hedgeEnabled, hedgePercentile, hedgeMinSamples);
+    }
+
+    ModelCallExecutor(Environment environment, MeterRegistry meterRegistry, int threads, long timeoutMs, int maxAttempts,
+                      long backoffMs, long maxBackoffMs, boolean hedgeEnabled, int hedgePercentile, int hedgeMinSamples) {
+        AtomicInteger threadCount = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "model-call-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        pool.allowCoreThreadTimeOut(true);
+        this.executor = pool;
+        this.meterRegistry = meterRegistry;
+        for (RoutingStrategy strategy : RoutingStrategy.values()) {
+            Long strategyTimeout = environment.getProperty("ai4ne.models." + StrategyChatOptions.key(strategy) + ".timeout-ms", Long.class);
+            timeouts.put(strategy, Duration.ofMillis(strategyTimeout != null ? strategyTimeout : timeoutMs));
+        }
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.backoffMs = backoffMs;
+        this.maxBackoffMs = maxBackoffMs;
+        this.hedgeEnabled = hedgeEnabled;
+        this.hedgePercentile = hedgePercentile;
+        this.hedgeMinSamples = Math.max(1, hedgeMinSamples);
+    }
+
+
+    /**
+     * Deadline of the calls of a strategy
+     */
+    public Duration timeout(RoutingStrategy strategy) {
+        return timeouts.get(strategy);
+    }
+
+
+    /**
+     * @param hedgeable whether the call can be duplicated, i.e. it has no side effects such as tool executions
+     */
+    public <T> T call(RoutingStrategy strategy, boolean hedgeable, Supplier<T> call) {
+        long deadline = System.nanoTime() + timeouts.get(strategy).toNanos();
+        long start = System.nanoTime();
+
+        for (int attempt = 1; ; attempt++) {
+            try {
+                T result = attempt(strategy, hedgeable, call, deadline);
+                timer(strategy, "success").record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                return result;
+            } catch (ModelCallTimeoutException e) {
+                timer(strategy, "timeout").record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                throw e;
+            } catch (RuntimeException e) {
+                long backoff = Math.min(maxBackoffMs, backoffMs << Math.min(attempt - 1, 20));
+                if (!retryable(e) || attempt >= maxAttempts || System.nanoTime() + backoff * 1_000_000 >= deadline) {
+                    timer(strategy, "error").record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                    throw e;
+                }
+
+                logger.warning("Model call of " + strategy + " failed (" + e.getClass().getSimpleName() + ": " + e.getMessage()
+                        + "), retrying in " + backoff + "ms (attempt " + (attempt + 1) + " of " + maxAttempts + ")");
+                counter("ai4ne.model.retries", "strategy", strategy.name(), "exception", e.getClass().getSimpleName()).increment();
+                sleep(backoff);
+            }
+        }
+    }
+
+
+    private <T> T attempt(RoutingStrategy strategy, boolean hedgeable, Supplier<T> call, long deadline) {
+        CompletionService<T> completion = new ExecutorCompletionService<>(executor);
+        Map<Future<T>, String> calls = new HashMap<>();
+        Map<Future<T>, Long> starts = new HashMap<>();
+
+        Future<T> primary = completion.submit(call::get);
+        calls.put(primary, PRIMARY);
+        starts.put(primary, System.nanoTime());
+
+        RuntimeException failure = null;
+        try {
+            long hedgeDelay = hedgeable && hedgeEnabled ? hedgeDelayNanos(strategy) : -1;
+            while (!calls.isEmpty()) {
+                long remaining = deadline - System.nanoTime();
+                boolean hedgeDue = hedgeDelay >= 0 && calls.size() == 1 && calls.containsKey(primary);
+                long wait = hedgeDue ? Math.min(remaining, hedgeDelay - (System.nanoTime() - starts.get(primary))) : remaining;
+
+                Future<T> done = wait > 0 ? completion.poll(wait, TimeUnit.NANOSECONDS) : completion.poll();
+                if (done == null) {
+                    if (deadline - System.nanoTime() <= 0)
+                        throw new ModelCallTimeoutException(strategy, timeouts.get(strategy));
+                    if (!hedgeDue) continue;
+
+                    Future<T> hedge = completion.submit(call::get);
+                    calls.put(hedge, HEDGE);
+                    starts.put(hedge, System.nanoTime());
+                    hedgeDelay = -1;
+                    logger.info("Model call of " + strategy + " slower than its p" + hedgePercentile + ", hedging it");
+                    continue;
+                }
+
+                String label = calls.remove(done);
+                try {
+                    T result = done.get();
+                    latencies.computeIfAbsent(strategy, s -> new LatencyWindow()).add(System.nanoTime() - starts.get(done));
+                    if (starts.size() > 1) counter("ai4ne.model.hedges", "strategy", strategy.name(), "winner", label).increment();
+                    return result;
+                } catch (ExecutionException e) {
+                    // The other call, if any, may still succeed
+                    failure = e.getCause() instanceof RuntimeException runtime ? runtime : new CompletionException(e.getCause());
+                }
+            }
+
+            if (starts.size() > 1) counter("ai4ne.model.hedges", "strategy", strategy.name(), "winner", "none").increment();
+            throw failure;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while waiting for the model");
+        } finally {
+            calls.keySet().forEach(pending -> pending.cancel(true));
+        }
+    }
+
+
+    /**
+     * @return how long a call runs before being hedged, or -1 while there are too few latencies to estimate it
+     */
+    long hedgeDelayNanos(RoutingStrategy strategy) {
+        LatencyWindow window = latencies.get(strategy);
+        return window == null ? -1 : window.percentile(hedgePercentile, hedgeMinSamples);
+    }
+
+
+    static boolean retryable(Throwable e) {
+        return e instanceof TransientAiException || e instanceof ResourceAccessException;
+    }
+
+
+    private Timer timer(RoutingStrategy strategy, String outcome) {
+        return Timer.builder("ai4ne.model.calls").tags("strategy", strategy.name(), "outcome", outcome).register(meterRegistry);
+    }
+
+    private Counter counter(String name, String... tags) {
+        return Counter.builder(name).tags(tags).register(meterRegistry);
+    }
+
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while backing off");
+        }
+    }
+
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+
+    /**
+     * Latencies of the last successful calls of a strategy
+     */
+    private static class LatencyWindow {
+        private final long[] nanos = new long[LATENCY_WINDOW];
+        private int next;
+        private int size;
+
+        synchronized void add(long latency) {
+            nanos[next] = latency;
+            next = (next + 1) % LATENCY_WINDOW;
+            size = Math.min(size + 1, LATENCY_WINDOW);
+        }
+
+        synchronized long percentile(int percentile, int minSamples) {
+            if (size < minSamples) return -1;
+
+            long[] sorted = Arrays.copyOf(nanos, size);
+            Arrays.sort(sorted);
+            int rank = (int) Math.ceil(percentile / 100.0 * size);
+            return sorted[Math.max(0, rank - 1)];
+        }
+    }
+
+
+    public static class ModelCallTimeoutException extends ResponseStatusException {
+        public ModelCallTimeoutException(RoutingStrategy strategy, Duration timeout) {
+            super(HttpStatus.GATEWAY_TIMEOUT, "The model did not answer the " + strategy + " request within " + timeout.toMillis() + "ms");
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package org.caselli.comparativecognitiveworkflow.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.caselli.comparativecognitiveworkflow.model.InventoryModel;
+import org.caselli.comparativecognitiveworkflow.model.InventorySnapshot;
+import org.caselli.comparativecognitiveworkflow.model.SpecDimension;
+import org.caselli.comparativecognitiveworkflow.routing.PathScorer;
+import org.caselli.comparativecognitiveworkflow.routing.PathScorer.PathScore;
+import org.caselli.comparativecognitiveworkflow.routing.PathScorer.Requirements;
+import org.caselli.comparativecognitiveworkflow.routing.PathScorer.Weights;
+import org.caselli.comparativecognitiveworkflow.services.DeviceFilterService.HardConstraint;
+import org.caselli.comparativecognitiveworkflow.services.DeviceFilterService.NumericConstraint;
+import org.caselli.comparativecognitiveworkflow.services.RoutingEngine.RouteResult;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Scores the candidate paths of a request with the {@link PathScorer}, so that the arithmetic of the routing
+ * finalization (latency and power aggregation, bottleneck bandwidth, weighted ranking) is done in Java and
+ * the model receives a ranked shortlist instead of computing it.
+ */
+@Service
+public class PathScoringService {
+
+    private final InventoryModelService inventoryModelService;
+    private final RoutingEngine routingEngine;
+    private final ObjectMapper objectMapper;
+    private final Weights weights;
+    private final int shortlistSize;
+
+    private final Logger logger = Logger.getLogger(PathScoringService.class.getName());
+
+    public PathScoringService(InventoryModelService inventoryModelService,
+                              RoutingEngine routingEngine,
+                              ObjectMapper objectMapper,
+                              @Value("${ai4ne.scoring.weights.hops:1}") double hopsWeight,
+                              @Value("${ai4ne.scoring.weights.latency:1}") double latencyWeight,
+                              @Value("${ai4ne.scoring.weights.bandwidth:1}") double bandwidthWeight,
+                              @Value("${ai4ne.scoring.weights.power:1}") double powerWeight,
+                              @Value("${ai4ne.scoring.weights.qualified:1}") double qualifiedWeight,
+                              @Value("${ai4ne.scoring.shortlist-size:5}") int shortlistSize) {
+        this.inventoryModelService = inventoryModelService;
+        this.routingEngine = routingEngine;
+        this.objectMapper = objectMapper;
+        this.weights = new Weights(hopsWeight, latencyWeight, bandwidthWeight, powerWeight, qualifiedWeight);
+        this.shortlistSize = shortlistSize;
+    }
+
+
+    /**
+     * Enumerates the candidate paths through the given devices and ranks them
+     * @param inputRequest request whose end-to-end bandwidth and latency figures the paths must meet, or {@code null}
+     * @param qualifiedDevices devices the paths must go through, or {@code null} to rank the shortest paths
+     */
+    public ScoredPaths score(InventorySnapshot snapshot, String inputRequest, Collection<String> qualifiedDevices) {
+        long start = System.nanoTime();
+        RouteResult route = routingEngine.route(snapshot, qualifiedDevices == null ? List.of() : List.copyOf(qualifiedDevices));
+
+        InventoryModel model = inventoryModelService.modelFor(snapshot);
+        List<PathScore> ranked = PathScorer.rank(model.graph(), model.devices(), model.links(), route.paths(),
+                qualifiedDevices, weights, requirements(inputRequest));
+
+        logger.info("Scored " + ranked.size() + " candidate paths in " + (System.nanoTime() - start) / 1_000 + "us"
+                + (ranked.isEmpty() ? "" : ", best " + ranked.get(0)));
+        return new ScoredPaths(ranked, route);
+    }
+
+
+    /**
+     * The best {@code shortlist-size} paths as JSON, with the explanation of the metrics for the prompts
+     */
+    public String shortlistForPrompt(ScoredPaths scored) {
+        List<PathScore> shortlist = shortlist(scored);
+        if (shortlist.isEmpty()) return "No pre-scored candidate paths are available.";
+
+        try {
+            return "Candidate paths ranked by a deterministic scoring of the device and link specs (weights: hops " + weights.hops()
+                    + ", latency " + weights.latency() + ", bandwidth " + weights.bandwidth() + ", power " + weights.power()
+                    + ", qualified devices " + weights.qualified() + "). Latency is the end-to-end sum in microseconds, "
+                    + "bandwidth the bottleneck in Gbps, power the total in W; null means not reported. Use these metrics instead "
+                    + "of recomputing them. Paths with violations do not meet the end-to-end requirements of the request.\n"
+                    + objectMapper.writeValueAsString(shortlist);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+
+    public List<PathScore> shortlist(ScoredPaths scored) {
+        return scored.ranked().subList(0, Math.min(shortlistSize, scored.ranked().size()));
+    }
+
+
+    /**
+     * Output of the {@code route} tool: the candidate paths in ranking order with their scores
+     */
+    public String routeAsJson(InventorySnapshot snapshot, List<String> deviceIds) {
+        ScoredPaths scored = score(snapshot, null, deviceIds);
+        RouteResult ranked = new RouteResult(scored.ranked().stream().map(PathScore::path).toList(),
+                scored.route().constraintNodes(), scored.route().truncated());
+        return routingEngine.toJson(snapshot, ranked, scored.ranked());
+    }
+
+
+    private static Requirements requirements(String inputRequest) {
+        if (inputRequest == null) return Requirements.NONE;
+
+        double bandwidth = Double.NaN, latency = Double.NaN;
+        for (HardConstraint constraint : DeviceFilterService.extract(inputRequest)) {
+            if (!(constraint instanceof NumericConstraint numeric)) continue;
+            if (numeric.dimension() == SpecDimension.BANDWIDTH && numeric.atLeast()) bandwidth = numeric.value();
+            if (numeric.dimension() == SpecDimension.LATENCY && !numeric.atLeast()) latency = numeric.value();
+        }
+        return new Requirements(bandwidth, latency);
+    }
+
+
+    /**
+     * @param ranked all the candidate paths, best first
+     */
+    public record ScoredPaths(List<PathScore> ranked, RouteResult route) { }
+}
@@ -0,0 +1,159 @@
+package org.caselli.comparativecognitiveworkflow.services;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.caselli.comparativecognitiveworkflow.services.AI4NeService.RouteResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.text.Normalizer;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Cache of the routing responses, keyed by normalized request text, strategy and inventory snapshot version.
+ * Since the version changes whenever the devices or the topology change, entries of an outdated snapshot can
+ * never be hit again and are dropped as soon as a newer version is seen. The cache is bounded by the number
+ * of entries (least recently used ones are evicted first) and entries expire after the TTL.
+ */
+@Service
+public class ResponseCache implements MeterBinder {
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final boolean enabled;
+    private final int maxEntries;
+    private final Duration ttl;
+    private final Clock clock;
+
+    private final LinkedHashMap<Key, Entry> entries;
+    private long newestVersion = Long.MIN_VALUE;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    @Autowired
+    public ResponseCache(@Value("${ai4ne.response-cache.enabled:true}") boolean enabled,
+                         @Value("${ai4ne.response-cache.max-entries:1000}") int maxEntries,
+                         @Value("${ai4ne.response-cache.ttl-ms:600000}") long ttlMs) {
+        this(enabled, maxEntries, Duration.ofMillis(ttlMs), Clock.systemUTC());
+    }
+
+    ResponseCache(boolean enabled, int maxEntries, Duration ttl, Clock clock) {
+        this.enabled = enabled;
+        this.maxEntries = maxEntries;
+        this.ttl = ttl;
+        this.clock = clock;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                boolean evict = size() > ResponseCache.this.maxEntries;
+                if (evict) evictions.incrementAndGet();
+                return evict;
+            }
+        };
+    }
+
+
+    /**
+     * @return the cached response, or null if there is none for the request on the given snapshot version
+     */
+    public RouteResponse get(RoutingStrategy strategy, String request, long version) {
+        if (!enabled) return null;
+
+        Key key = new Key(strategy, normalize(request), version);
+        synchronized (entries) {
+            dropOutdated(version);
+
+            Entry entry = entries.get(key);
+            if (entry != null && !clock.instant().isBefore(entry.expiresAt)) {
+                entries.remove(key);
+                expirations.incrementAndGet();
+                entry = null;
+            }
+
+            (entry != null ? hits : misses).incrementAndGet();
+            return entry != null ? entry.response : null;
+        }
+    }
+
+
+    public void put(RoutingStrategy strategy, String request, long version, RouteResponse response) {
+        if (!enabled) return;
+
+        Key key = new Key(strategy, normalize(request), version);
+        synchronized (entries) {
+            dropOutdated(version);
+            // A response computed on a snapshot that has been replaced in the meantime is not worth caching
+            if (version < newestVersion) return;
+            entries.put(key, new Entry(response, clock.instant().plus(ttl)));
+        }
+    }
+
+
+    private void dropOutdated(long version) {
+        if (version <= newestVersion) return;
+
+        newestVersion = version;
+        entries.keySet().removeIf(key -> key.version < version);
+    }
+
+
+    /**
+     * Requests differing only in case, whitespace or Unicode representation share the same entry
+     */
+    static String normalize(String request) {
+        String normalized = Normalizer.normalize(request == null ? "" : request, Normalizer.Form.NFKC);
+        return WHITESPACE.matcher(normalized.strip()).replaceAll(" ").toLowerCase(Locale.ROOT);
+    }
+
+
+    public void invalidate() {
+        synchronized (entries) {
+            invalidations.incrementAndGet();
+            entries.clear();
+        }
+    }
+
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+
+    public Stats stats() {
+        return new Stats(enabled, hits.get(), misses.get(), evictions.get(), expirations.get(), invalidations.get(), size(), maxEntries);
+    }
+
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("ai4ne.response.cache.requests", hits, AtomicLong::get).tag("result", "hit").register(registry);
+        FunctionCounter.builder("ai4ne.response.cache.requests", misses, AtomicLong::get).tag("result", "miss").register(registry);
+        FunctionCounter.builder("ai4ne.response.cache.evictions", evictions, AtomicLong::get).register(registry);
+        FunctionCounter.builder("ai4ne.response.cache.expirations", expirations, AtomicLong::get).register(registry);
+        Gauge.builder("ai4ne.response.cache.size", this, ResponseCache::size).register(registry);
+    }
+
+
+    private record Key(RoutingStrategy strategy, String request, long version) { }
+
+    private record Entry(RouteResponse response, Instant expiresAt) { }
+
+    public record Stats(boolean enabled, long hits, long misses, long evictions, long expirations, long invalidations,
+                        int size, int maxEntries) { }
+}
@@ -0,0 +1,97 @@
+package org.caselli.comparativecognitiveworkflow.services;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.caselli.comparativecognitiveworkflow.model.InventorySnapshot;
+import org.caselli.comparativecognitiveworkflow.model.NetworkGraph;
+import org.caselli.comparativecognitiveworkflow.routing.PathEnumerator;
+import org.caselli.comparativecognitiveworkflow.routing.PathEnumerator.ConstraintMode;
+import org.caselli.comparativecognitiveworkflow.routing.PathEnumerator.Limits;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * In-process replacement of the external {@code /route} service: candidate paths are enumerated on
+ * the graph of the cached topology, without any network hop.
+ */
+@Service
+public class RoutingEngine {
+
+    private final InventoryModelService inventoryModelService;
+    private final ObjectMapper objectMapper;
+    private final Limits limits;
+    private final ConstraintMode constraintMode;
+
+    private final Logger logger = Logger.getLogger(RoutingEngine.class.getName());
+
+    public RoutingEngine(InventoryModelService inventoryModelService,
+                         ObjectMapper objectMapper,
+                         @Value("${ai4ne.routing.max-paths:20}") int maxPaths,
+                         @Value("${ai4ne.routing.max-spur-searches:5000}") int maxSpurSearches,
+                         @Value("${ai4ne.routing.constraint-mode:ANY}") ConstraintMode constraintMode) {
+        this.inventoryModelService = inventoryModelService;
+        this.objectMapper = objectMapper;
+        this.limits = new Limits(maxPaths, maxSpurSearches);
+        this.constraintMode = constraintMode;
+    }
+
+
+    public RouteResult route(InventorySnapshot snapshot, List<String> deviceIds) {
+        NetworkGraph graph = inventoryModelService.graphFor(snapshot);
+
+        long start = System.nanoTime();
+        PathEnumerator.Result result = new PathEnumerator(graph, limits).enumerate(deviceIds, constraintMode);
+        long elapsedMicros = (System.nanoTime() - start) / 1_000;
+
+        List<List<String>> paths = result.paths().stream().map(graph::ids).toList();
+        List<String> constraintNodes = graph.ids(result.constraintNodes());
+
+        logger.info("Enumerated " + paths.size() + " candidate paths for devices " + deviceIds + " in " + elapsedMicros + "us"
+                + (result.truncated() ? " (truncated)" : ""));
+
+        return new RouteResult(paths, constraintNodes, result.truncated());
+    }
+
+
+    /**
+     * Same output of the external {@code /route} service: candidate paths, constraint nodes and the whole topology
+     */
+    public String routeAsJson(InventorySnapshot snapshot, List<String> deviceIds) {
+        return toJson(snapshot, route(snapshot, deviceIds), null);
+    }
+
+
+    /**
+     * @param scores metrics of the paths, added as {@code scores} if not {@code null}
+     */
+    public String toJson(InventorySnapshot snapshot, RouteResult result, List<?> scores) {
+        StringWriter writer = new StringWriter();
+        try (JsonGenerator json = objectMapper.getFactory().createGenerator(writer)) {
+            json.writeStartObject();
+            json.writeFieldName("paths");
+            objectMapper.writeValue(json, result.paths());
+            json.writeFieldName("constraints");
+            objectMapper.writeValue(json, result.constraintNodes());
+            json.writeBooleanField("truncated", result.truncated());
+            if (scores != null) {
+                json.writeFieldName("scores");
+                objectMapper.writeValue(json, scores);
+            }
+            json.writeFieldName("network_topology");
+            json.writeRawValue(snapshot.networkTopology());
+            json.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return writer.toString();
+    }
+
+
+    public record RouteResult(List<List<String>> paths, List<String> constraintNodes, boolean truncated) { }
+}
@@ -0,0 +1,146 @@
+package org.caselli.comparativecognitiveworkflow.services;
+
+import jakarta.annotation.PreDestroy;
+import org.caselli.comparativecognitiveworkflow.services.AI4NeService.RouteResponse;
+import org.caselli.comparativecognitiveworkflow.services.RoutingJobStore.RoutingJob;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Asynchronous routing jobs: the request is queued and answered immediately with the job id, so that the client
+ * connection does not wait for the model. Each strategy has its own worker pool ({@code ai4ne.jobs.workers.<strategy>},
+ * default {@code ai4ne.jobs.default-workers}) with a bounded queue, so slow strategies cannot starve the fast ones.
+ * The result can be polled, or POSTed to the callback URL of the job once it is finished; callbacks only go to the
+ * {@code ai4ne.jobs.callback.allowed-hosts}, or to public addresses when none is configured (see {@link CallbackPolicy}).
+ * A running job also takes a slot of the {@link StrategyBulkheads bulkhead} of its strategy, shared with the
+ * interactive requests: it waits for one as long as needed, but after the interactive requests.
+ */
+@Service
+public class RoutingJobService {
+
+    private final AI4NeService ai4NeService;
+    private final ToolService toolService;
+    private final RoutingJobStore jobStore;
+    private final StrategyBulkheads bulkheads;
+    private final WebClient callbackClient;
+    private final Duration callbackTimeout;
+    private final CallbackPolicy callbackPolicy;
+    private final Map<RoutingStrategy, ThreadPoolExecutor> workers = new EnumMap<>(RoutingStrategy.class);
+
+    private final Logger logger = Logger.getLogger(RoutingJobService.class.getName());
+
+    public RoutingJobService(AI4NeService ai4NeService,
+                             ToolService toolService,
+                             RoutingJobStore jobStore,
+                             StrategyBulkheads bulkheads,
+                             WebClient.Builder webClientBuilder,
+                             Environment environment,
+                             @Value("${ai4ne.jobs.default-workers:4}") int defaultWorkers,
+                             @Value("${ai4ne.jobs.queue-capacity:100}") int queueCapacity,
+                             @Value("${ai4ne.jobs.callback-timeout-ms:10000}") long callbackTimeoutMs,
+                             @Value("${ai4ne.jobs.callback.allowed-hosts:}") Set<String> callbackAllowedHosts) {
+        this.ai4NeService = ai4NeService;
+        this.toolService = toolService;
+        this.jobStore = jobStore;
+        this.bulkheads = bulkheads;
+        this.callbackClient = webClientBuilder.build();
+        this.callbackTimeout = Duration.ofMillis(callbackTimeoutMs);
+        this.callbackPolicy = new CallbackPolicy(callbackAllowedHosts);
+
+        for (RoutingStrategy strategy : RoutingStrategy.values()) {
+            int poolSize = environment.getProperty("ai4ne.jobs.workers." + StrategyChatOptions.key(strategy), Integer.class, defaultWorkers);
+            AtomicInteger threadCount = new AtomicInteger();
+            workers.put(strategy, new ThreadPoolExecutor(poolSize, poolSize, 0, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                        Thread thread = new Thread(runnable, "routing-job-" + StrategyChatOptions.key(strategy) + "-" + threadCount.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }));
+        }
+    }
+
+
+    public RoutingJob submit(RoutingStrategy strategy, String request, String callbackUrl) {
+        if (strategy == null || request == null || request.isBlank())
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "A strategy and a request are required");
+        if (callbackUrl != null && !callbackPolicy.allows(callbackUrl))
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "The callback URL must be an absolute http(s) URL of an allowed public host");
+
+        RoutingJob job = jobStore.create(strategy, request, callbackUrl)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Too many routing jobs in progress"));
+
+        try {
+            workers.get(strategy).execute(() -> run(job.id()));
+        } catch (RejectedExecutionException e) {
+            jobStore.remove(job.id());
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "The job queue of " + strategy + " is full");
+        }
+
+        logger.info("Queued routing job " + job.id() + " (" + strategy + ")");
+        return job;
+    }
+
+
+    public Optional<RoutingJob> get(String id) {
+        return jobStore.get(id);
+    }
+
+
+    private void run(String id) {
+        RoutingJob job = jobStore.started(id);
+        if (job == null) return;
+
+        RoutingJob finished;
+        try {
+            RouteResponse result = bulkheads.runQueued(job.strategy(), () -> ai4NeService.route(job.strategy(), job.request(), toolService.getSnapshot()));
+            finished = jobStore.finished(id, result, null);
+        } catch (RuntimeException e) {
+            logger.warning("Routing job " + id + " failed: " + e.getMessage());
+            finished = jobStore.finished(id, null, String.valueOf(e.getMessage()));
+        }
+
+        if (finished != null && finished.callbackUrl() != null) notifyCallback(finished);
+    }
+
+
+    private void notifyCallback(RoutingJob job) {
+        // The host may resolve to another address than when the job was submitted
+        if (!callbackPolicy.allows(job.callbackUrl())) {
+            logger.warning("Callback of routing job " + job.id() + " to " + job.callbackUrl() + " refused: the host is not allowed");
+            jobStore.callbackStatus(job.id(), "refused: the host is not allowed");
+            return;
+        }
+
+        callbackClient.post()
+                .uri(job.callbackUrl())
+                .bodyValue(job)
+                .retrieve()
+                .toBodilessEntity()
+                .timeout(callbackTimeout)
+                .subscribe(
+                        response -> jobStore.callbackStatus(job.id(), "delivered (" + response.getStatusCode().value() + ")"),
+                        error -> {
+                            logger.warning("Callback of routing job " + job.id() + " to " + job.callbackUrl() + " failed: " + error.getMessage());
+                            jobStore.callbackStatus(job.id(), "failed: " + error.getMessage());
+                        });
+    }
+
+
+    @PreDestroy
+    public void shutdown() {
+        workers.values().forEach(ExecutorService::shutdownNow);
+    }
+}
@@ -0,0 +1,133 @@
+package org.caselli.comparativecognitiveworkflow.services;
+
+import org.caselli.comparativecognitiveworkflow.services.AI4NeService.RouteResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.UnaryOperator;
+
+/**
+ * Bounded in-memory store of the asynchronous routing jobs. Finished jobs are kept for {@code ttl} after their
+ * completion; when the store is full the oldest finished job makes room for the new one, and if every job is
+ * still queued or running the new one is refused.
+ */
+@Component
+public class RoutingJobStore {
+
+    public enum Status { QUEUED, RUNNING, SUCCEEDED, FAILED }
+
+    /**
+     * @param error why the job failed, {@code null} otherwise
+     * @param callbackStatus outcome of the notification of the callback URL, {@code null} until attempted
+     */
+    public record RoutingJob(String id, RoutingStrategy strategy, String request, Status status,
+                             Instant submittedAt, Instant startedAt, Instant finishedAt,
+                             RouteResponse result, String error, String callbackUrl, String callbackStatus) {
+
+        public boolean finished() {
+            return status == Status.SUCCEEDED || status == Status.FAILED;
+        }
+    }
+
+    private final int maxJobs;
+    private final Duration ttl;
+    private final Clock clock;
+
+    // Insertion order: the first finished job found is the oldest one
+    private final Map<String, RoutingJob> jobs = new LinkedHashMap<>();
+
+    @Autowired
+    public RoutingJobStore(@Value("${ai4ne.jobs.max-jobs:1000}") int maxJobs,
+                           @Value("${ai4ne.jobs.ttl-ms:600000}") long ttlMs) {
+        this(maxJobs, Duration.ofMillis(ttlMs), Clock.systemUTC());
+    }
+
+    RoutingJobStore(int maxJobs, Duration ttl, Clock clock) {
+        this.maxJobs = maxJobs;
+        this.ttl = ttl;
+        this.clock = clock;
+    }
+
+
+    /**
+     * @return the new queued job, or empty if the store is full of unfinished jobs
+     */
+    public synchronized Optional<RoutingJob> create(RoutingStrategy strategy, String request, String callbackUrl) {
+        purgeExpired();
+        if (jobs.size() >= maxJobs && !evictOldestFinished()) return Optional.empty();
+
+        RoutingJob job = new RoutingJob(UUID.randomUUID().toString(), strategy, request, Status.QUEUED,
+                clock.instant(), null, null, null, null, callbackUrl, null);
+        jobs.put(job.id(), job);
+        return Optional.of(job);
+    }
+
+
+    public synchronized Optional<RoutingJob> get(String id) {
+        RoutingJob job = jobs.get(id);
+        if (job != null && expired(job)) {
+            jobs.remove(id);
+            return Optional.empty();
+        }
+        return Optional.ofNullable(job);
+    }
+
+
+    /**
+     * @return the updated job, or {@code null} if it is no longer in the store
+     */
+    private synchronized RoutingJob update(String id, UnaryOperator<RoutingJob> update) {
+        return jobs.computeIfPresent(id, (key, job) -> update.apply(job));
+    }
+
+    public synchronized RoutingJob started(String id) {
+        return update(id, job -> new RoutingJob(job.id(), job.strategy(), job.request(), Status.RUNNING, job.submittedAt(),
+                clock.instant(), null, null, null, job.callbackUrl(), null));
+    }
+
+    public synchronized RoutingJob finished(String id, RouteResponse result, String error) {
+        return update(id, job -> new RoutingJob(job.id(), job.strategy(), job.request(), error == null ? Status.SUCCEEDED : Status.FAILED,
+                job.submittedAt(), job.startedAt(), clock.instant(), result, error, job.callbackUrl(), null));
+    }
+
+    public synchronized void callbackStatus(String id, String callbackStatus) {
+        update(id, job -> new RoutingJob(job.id(), job.strategy(), job.request(), job.status(), job.submittedAt(), job.startedAt(),
+                job.finishedAt(), job.result(), job.error(), job.callbackUrl(), callbackStatus));
+    }
+
+    public synchronized void remove(String id) {
+        jobs.remove(id);
+    }
+
+    public synchronized int size() {
+        return jobs.size();
+    }
+
+
+    private boolean expired(RoutingJob job) {
+        return job.finished() && job.finishedAt().plus(ttl).isBefore(clock.instant());
+    }
+
+    private void purgeExpired() {
+        jobs.values().removeIf(this::expired);
+    }
+
+    private boolean evictOldestFinished() {
+        for (Iterator<RoutingJob> it = jobs.values().iterator(); it.hasNext(); ) {
+            if (it.next().finished()) {
+                it.remove();
+                return true;
+            }
+        }
+        return false;
+    }
+}
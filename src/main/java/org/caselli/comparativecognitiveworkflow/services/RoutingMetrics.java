@@ -0,0 +1,93 @@
+package org.caselli.comparativecognitiveworkflow.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes the traces of the routing requests to Micrometer:
+ * <ul>
+ *     <li>{@code ai4ne.routing.requests}: end-to-end time, by strategy and outcome (success, cache_hit, coalesced, error)</li>
+ *     <li>{@code ai4ne.routing.phase}: time of each phase (context, prompt, model, parsing, validation), by strategy</li>
+ *     <li>{@code ai4ne.routing.tool}: time of each tool invocation, by strategy and tool</li>
+ *     <li>{@code ai4ne.routing.tokens}: prompt and completion tokens, by strategy</li>
+ *     <li>{@code ai4ne.routing.tool.calls}: tool calls, by strategy, tool and outcome (executed, memoized, rejected)</li>
+ *     <li>{@code ai4ne.routing.tool.result}: size of the tool results added to the conversation, by strategy and tool</li>
+ *     <li>{@code ai4ne.routing.errors}: failed requests, by strategy, failed phase and exception</li>
+ *     <li>{@code ai4ne.routing.escalations}: requests escalated by the cascade to the reasoning model, by reason</li>
+ * </ul>
+ * The inventory fetches (devices and topology) are timed by the ToolService as {@code ai4ne.inventory.requests}.
+ */
+@Service
+public class RoutingMetrics {
+
+    private static final String TOOL_PHASE_PREFIX = "tool:";
+
+    private final MeterRegistry meterRegistry;
+
+    public RoutingMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+
+    public void record(RoutingTrace trace) {
+        String strategy = trace.getStrategy().name();
+
+        timer("ai4ne.routing.requests", "strategy", strategy, "outcome", outcome(trace))
+                .record(trace.elapsedNanos(), TimeUnit.NANOSECONDS);
+
+        trace.getPhaseMillis().forEach((phase, millis) -> {
+            Timer timer = phase.startsWith(TOOL_PHASE_PREFIX)
+                    ? timer("ai4ne.routing.tool", "strategy", strategy, "tool", phase.substring(TOOL_PHASE_PREFIX.length()))
+                    : timer("ai4ne.routing.phase", "strategy", strategy, "phase", phase);
+            timer.record(Duration.ofMillis(millis));
+        });
+
+        counter("ai4ne.routing.tokens", "strategy", strategy, "type", "prompt").increment(trace.getPromptTokens());
+        counter("ai4ne.routing.tokens", "strategy", strategy, "type", "completion").increment(trace.getCompletionTokens());
+        if (trace.getEscalation() != null && !trace.isCacheHit() && !trace.isCoalesced())
+            counter("ai4ne.routing.escalations", "strategy", strategy, "reason", trace.getEscalation()).increment();
+        for (RoutingTrace.ToolCall call : trace.getToolCallLog()) {
+            counter("ai4ne.routing.tool.calls", "strategy", strategy, "tool", call.tool(), "outcome", call.outcome()).increment();
+            DistributionSummary.builder("ai4ne.routing.tool.result")
+                    .baseUnit("bytes")
+                    .tags("strategy", strategy, "tool", call.tool())
+                    .register(meterRegistry)
+                    .record(call.resultBytes());
+        }
+    }
+
+
+    private static String outcome(RoutingTrace trace) {
+        if (trace.isCacheHit()) return "cache_hit";
+        if (trace.isCoalesced()) return "coalesced";
+        return "success";
+    }
+
+
+    public void recordFailure(RoutingTrace trace, Throwable error) {
+        String strategy = trace.getStrategy().name();
+        String phase = trace.getFailedPhase() != null ? trace.getFailedPhase() : "unknown";
+
+        timer("ai4ne.routing.requests", "strategy", strategy, "outcome", "error")
+                .record(trace.elapsedNanos(), TimeUnit.NANOSECONDS);
+
+        counter("ai4ne.routing.errors", "strategy", strategy, "phase", phase, "exception", error.getClass().getSimpleName())
+                .increment();
+    }
+
+
+    private Timer timer(String name, String... tags) {
+        return Timer.builder(name).tags(tags).register(meterRegistry);
+    }
+
+
+    private Counter counter(String name, String... tags) {
+        return Counter.builder(name).tags(tags).register(meterRegistry);
+    }
+}
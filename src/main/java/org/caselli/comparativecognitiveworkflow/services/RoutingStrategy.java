@@ -0,0 +1,27 @@
+package org.caselli.comparativecognitiveworkflow.services;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+
+import java.util.Locale;
+
+/**
+ * The routing strategies compared by the project. In {@code HYBRID} the engine proposes scored candidate paths and
+ * the model only picks one; {@code CASCADE} tries a fast model first and escalates to the reasoning one when needed;
+ * {@code SCORING_ENGINE} is the deterministic baseline, which answers without calling the model.
+ */
+public enum RoutingStrategy {
+    SIMPLE_LLM,
+    REASONING_LLM,
+    FUNCTION_CALLING,
+    HYBRID,
+    CASCADE,
+    SCORING_ENGINE;
+
+    /**
+     * Accepts the names used in the endpoint paths as well (e.g. {@code simple_llm})
+     */
+    @JsonCreator
+    public static RoutingStrategy of(String name) {
+        return valueOf(name.trim().toUpperCase(Locale.ROOT));
+    }
+}
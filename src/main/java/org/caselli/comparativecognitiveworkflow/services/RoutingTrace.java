@@ -0,0 +1,165 @@
+package org.caselli.comparativecognitiveworkflow.services;
+
+import org.springframework.ai.chat.metadata.Usage;
+import org.springframework.ai.chat.model.ChatResponse;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * What happened while serving one routing request: time spent in each phase, tokens used by the
+ * model and number of tool calls. It is attached to the response so that strategies can be compared.
+ */
+public class RoutingTrace {
+
+    /**
+     * @param outcome executed, memoized (the result of an identical previous call was reused) or rejected (limit reached)
+     */
+    public record ToolCall(String tool, String arguments, long latencyMs, int argumentBytes, int resultBytes, String outcome) { }
+
+    private final RoutingStrategy strategy;
+    private final boolean synthetic;
+    private final long startNanos = System.nanoTime();
+    private final Map<String, Long> phaseMillis = new LinkedHashMap<>();
+    private long promptTokens;
+    private long completionTokens;
+    private final List<ToolCall> toolCalls = new ArrayList<>();
+    private String failedPhase;
+    private boolean cacheHit;
+    private boolean coalesced;
+    private String escalation;
+
+    public RoutingTrace(RoutingStrategy strategy) {
+        this(strategy, false);
+    }
+
+    /**
+     * @param synthetic the request is a warmup one, answered by the stub model and kept out of the cache and the metrics
+     */
+    RoutingTrace(RoutingStrategy strategy, boolean synthetic) {
+        this.strategy = strategy;
+        this.synthetic = synthetic;
+    }
+
+
+    /**
+     * Runs the phase and adds its duration to the trace (phases run more than once are summed up).
+     * If the phase fails, it is recorded as the cause of the failure of the request.
+     */
+    public <T> T time(String phase, Supplier<T> body) {
+        long start = System.nanoTime();
+        try {
+            return body.get();
+        } catch (RuntimeException e) {
+            failed(phase);
+            throw e;
+        } finally {
+            addPhase(phase, (System.nanoTime() - start) / 1_000_000);
+        }
+    }
+
+
+    public synchronized void addPhase(String phase, long millis) {
+        phaseMillis.merge(phase, millis, Long::sum);
+    }
+
+
+    public synchronized void addUsage(ChatResponse response) {
+        if (response == null || response.getMetadata() == null) return;
+
+        Usage usage = response.getMetadata().getUsage();
+        if (usage == null) return;
+
+        if (usage.getPromptTokens() != null) promptTokens += usage.getPromptTokens();
+        if (usage.getCompletionTokens() != null) completionTokens += usage.getCompletionTokens();
+    }
+
+
+    public synchronized void addToolCall(ToolCall toolCall) {
+        toolCalls.add(toolCall);
+    }
+
+
+    public synchronized void markCacheHit() {
+        cacheHit = true;
+    }
+
+
+    /**
+     * The response was computed by an identical request that was already in flight
+     */
+    public synchronized void markCoalesced() {
+        coalesced = true;
+    }
+
+
+    /**
+     * The cascade escalated the request to the reasoning model, for the given reason
+     */
+    public synchronized void markEscalated(String reason) {
+        escalation = reason;
+    }
+
+
+    /**
+     * Phases are nested (tools run inside the model call), so the innermost failed phase is kept
+     */
+    private synchronized void failed(String phase) {
+        if (failedPhase == null) failedPhase = phase;
+    }
+
+
+    public RoutingStrategy getStrategy() {
+        return strategy;
+    }
+
+    public synchronized Map<String, Long> getPhaseMillis() {
+        return new LinkedHashMap<>(phaseMillis);
+    }
+
+    public synchronized long getPromptTokens() {
+        return promptTokens;
+    }
+
+    public synchronized long getCompletionTokens() {
+        return completionTokens;
+    }
+
+    public synchronized int getToolCalls() {
+        return toolCalls.size();
+    }
+
+    public synchronized List<ToolCall> getToolCallLog() {
+        return List.copyOf(toolCalls);
+    }
+
+    public synchronized boolean isCacheHit() {
+        return cacheHit;
+    }
+
+    public synchronized boolean isCoalesced() {
+        return coalesced;
+    }
+
+    /**
+     * @return why the cascade escalated the request, or {@code null} if it did not
+     */
+    public synchronized String getEscalation() {
+        return escalation;
+    }
+
+    public synchronized String getFailedPhase() {
+        return failedPhase;
+    }
+
+    boolean synthetic() {
+        return synthetic;
+    }
+
+    long elapsedNanos() {
+        return System.nanoTime() - startNanos;
+    }
+}
@@ -0,0 +1,73 @@
+package org.caselli.comparativecognitiveworkflow.services;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent computations of the same key: the first caller (the leader) runs the computation in its
+ * own thread and the callers arriving while it is in flight wait for its result instead of starting their own.
+ * A failure of the leader is propagated to all the waiting callers. If the leader is cancelled (interrupted), the
+ * waiting callers are not failed with it: one of them takes over and runs the computation again. A waiting caller
+ * that is interrupted stops waiting without affecting the others.
+ */
+class SingleFlight<K, V> {
+
+    /**
+     * @param shared whether the value was computed by another caller
+     */
+    record Result<V>(V value, boolean shared) { }
+
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+
+    Result<V> execute(K key, Supplier<V> computation) {
+        while (true) {
+            CompletableFuture<V> created = new CompletableFuture<>();
+            CompletableFuture<V> existing = inFlight.putIfAbsent(key, created);
+
+            if (existing == null) return new Result<>(lead(key, created, computation), false);
+
+            try {
+                return new Result<>(existing.get(), true);
+            } catch (CancellationException e) {
+                // The leader has been cancelled: try again, possibly as the new leader
+            } catch (ExecutionException e) {
+                throw propagate(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Interrupted while waiting for the in-flight computation of " + key);
+            }
+        }
+    }
+
+
+    private V lead(K key, CompletableFuture<V> future, Supplier<V> computation) {
+        try {
+            V value = computation.get();
+            inFlight.remove(key, future);
+            future.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            inFlight.remove(key, future);
+            if (e instanceof CancellationException || Thread.currentThread().isInterrupted()) future.cancel(false);
+            else future.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+
+    private static RuntimeException propagate(Throwable cause) {
+        if (cause instanceof RuntimeException runtime) return runtime;
+        if (cause instanceof Error error) throw error;
+        return new CompletionException(cause);
+    }
+
+
+    int inFlight() {
+        return inFlight.size();
+    }
+}
@@ -0,0 +1,338 @@
+package org.caselli.comparativecognitiveworkflow.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.SignalType;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * Admission control of the routing endpoints: each strategy has its own concurrency limit and bounded wait queue,
+ * so that a burst of slow requests of one strategy cannot take all the server threads. A request finding the queue
+ * full is rejected at once with 429, one waiting longer than {@code max-wait-ms} with 503, both with a Retry-After hint.
+ * <p>
+ * Limits and queues are set per strategy ({@code ai4ne.bulkheads.<strategy>.limit}, {@code .queue-capacity}).
+ * With {@code ai4ne.bulkheads.adaptive} the limit follows the observed latency: it grows by one every {@code limit}
+ * requests answered within {@code tolerance} times the baseline (lowest recent) latency, and shrinks by 10% on
+ * slower or failed ones, between {@code min-limit} and {@code max-limit}.
+ * <p>
+ * Published metrics, by strategy: {@code ai4ne.bulkhead.in-flight}, {@code ai4ne.bulkhead.queue-depth} and
+ * {@code ai4ne.bulkhead.limit} gauges, {@code ai4ne.bulkhead.wait} timer and {@code ai4ne.bulkhead.rejections}
+ * counter (by reason: queue_full, wait_timeout).
+ */
+@Component
+public class StrategyBulkheads {
+
+    static final String QUEUE_FULL = "queue_full";
+    static final String WAIT_TIMEOUT = "wait_timeout";
+
+    private final boolean enabled;
+    private final long maxWaitNanos;
+    private final Map<RoutingStrategy, Bulkhead> bulkheads = new EnumMap<>(RoutingStrategy.class);
+    private final MeterRegistry meterRegistry;
+
+    private final Logger logger = Logger.getLogger(StrategyBulkheads.class.getName());
+
+    public StrategyBulkheads(Environment environment, MeterRegistry meterRegistry,
+                             @Value("${ai4ne.bulkheads.enabled:true}") boolean enabled,
+                             @Value("${ai4ne.bulkheads.default-limit:8}") int defaultLimit,
+                             @Value("${ai4ne.bulkheads.default-queue-capacity:16}") int defaultQueueCapacity,
+                             @Value("${ai4ne.bulkheads.max-wait-ms:2000}") long maxWaitMs,
+                             @Value("${ai4ne.bulkheads.adaptive:false}") boolean adaptive,
+                             @Value("${ai4ne.bulkheads.min-limit:2}") int minLimit,
+                             @Value("${ai4ne.bulkheads.max-limit:32}") int maxLimit,
+                             @Value("${ai4ne.bulkheads.tolerance:2.0}") double tolerance) {
+        this.enabled = enabled;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMs);
+        this.meterRegistry = meterRegistry;
+
+        for (RoutingStrategy strategy : RoutingStrategy.values()) {
+            String prefix = "ai4ne.bulkheads." + StrategyChatOptions.key(strategy) + ".";
+            int limit = environment.getProperty(prefix + "limit", Integer.class, defaultLimit);
+            int queueCapacity = environment.getProperty(prefix + "queue-capacity", Integer.class, defaultQueueCapacity);
+            Bulkhead bulkhead = new Bulkhead(limit, queueCapacity, adaptive, minLimit, maxLimit, tolerance);
+            bulkheads.put(strategy, bulkhead);
+
+            Gauge.builder("ai4ne.bulkhead.in-flight", bulkhead, Bulkhead::inFlight).tag("strategy", strategy.name()).register(meterRegistry);
+            Gauge.builder("ai4ne.bulkhead.queue-depth", bulkhead, Bulkhead::waiting).tag("strategy", strategy.name()).register(meterRegistry);
+            Gauge.builder("ai4ne.bulkhead.limit", bulkhead, Bulkhead::limit).tag("strategy", strategy.name()).register(meterRegistry);
+        }
+    }
+
+
+    /**
+     * Runs the request within the bulkhead of its strategy
+     */
+    public <T> T run(RoutingStrategy strategy, Supplier<T> request) {
+        if (!enabled) return request.get();
+
+        Bulkhead bulkhead = admit(strategy);
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            T result = request.get();
+            success = true;
+            return result;
+        } finally {
+            bulkhead.release(System.nanoTime() - start, success);
+        }
+    }
+
+
+    /**
+     * Variant for the work already accepted in a queue (routing jobs, batch items): instead of being rejected it waits
+     * for a slot as long as needed, but only takes the slots no interactive request is waiting for. Its concurrency is
+     * bounded by the job workers and by the concurrency of the batches.
+     */
+    public <T> T runQueued(RoutingStrategy strategy, Supplier<T> request) {
+        if (!enabled) return request.get();
+
+        Bulkhead bulkhead = bulkheads.get(strategy);
+        long wait = System.nanoTime();
+        bulkhead.acquireQueued();
+        Timer.builder("ai4ne.bulkhead.wait").tag("strategy", strategy.name()).register(meterRegistry)
+                .record(System.nanoTime() - wait, TimeUnit.NANOSECONDS);
+
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            T result = request.get();
+            success = true;
+            return result;
+        } finally {
+            bulkhead.release(System.nanoTime() - start, success);
+        }
+    }
+
+
+    /**
+     * Streaming variant: the slot is taken on subscription, so a stream never subscribed holds none, and is held
+     * until the stream terminates or is cancelled. A rejection is the error of the stream.
+     */
+    public <T> Flux<T> stream(RoutingStrategy strategy, Supplier<Flux<T>> request) {
+        if (!enabled) return Flux.defer(request);
+
+        return Flux.defer(() -> {
+            Bulkhead bulkhead = admit(strategy);
+            long start = System.nanoTime();
+            try {
+                return request.get().doFinally(signal -> bulkhead.release(System.nanoTime() - start, signal == SignalType.ON_COMPLETE));
+            } catch (RuntimeException e) {
+                bulkhead.release(System.nanoTime() - start, false);
+                throw e;
+            }
+        });
+    }
+
+
+    private Bulkhead admit(RoutingStrategy strategy) {
+        Bulkhead bulkhead = bulkheads.get(strategy);
+        long start = System.nanoTime();
+        String rejection = bulkhead.acquire(maxWaitNanos);
+        Timer.builder("ai4ne.bulkhead.wait").tag("strategy", strategy.name()).register(meterRegistry)
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        if (rejection == null) return bulkhead;
+
+        Counter.builder("ai4ne.bulkhead.rejections").tags("strategy", strategy.name(), "reason", rejection)
+                .register(meterRegistry).increment();
+        long retryAfter = bulkhead.retryAfterSeconds();
+        logger.warning("Rejected " + strategy + " request (" + rejection + "), retry after " + retryAfter + "s");
+        throw new OverloadedException(rejection.equals(QUEUE_FULL) ? HttpStatus.TOO_MANY_REQUESTS : HttpStatus.SERVICE_UNAVAILABLE,
+                "Too many " + strategy + " requests in progress (" + rejection + ")", retryAfter);
+    }
+
+
+    /**
+     * @return how many requests of all the strategies together can be in flight at most
+     */
+    public int maxInFlight() {
+        return bulkheads.values().stream().mapToInt(Bulkhead::maxInFlight).sum();
+    }
+
+
+    Bulkhead bulkhead(RoutingStrategy strategy) {
+        return bulkheads.get(strategy);
+    }
+
+
+    /**
+     * Concurrency limiter with a bounded wait queue and an optionally adaptive limit
+     */
+    static final class Bulkhead {
+        private final ReentrantLock lock = new ReentrantLock(true);
+        private final Condition released = lock.newCondition();
+        private final int queueCapacity;
+        private final boolean adaptive;
+        private final int minLimit;
+        private final int maxLimit;
+        private final double tolerance;
+
+        private double limit;
+        private int inFlight;
+        private int waiting;
+        private double baselineNanos = Double.NaN;
+        private double meanNanos = Double.NaN;
+
+        Bulkhead(int limit, int queueCapacity, boolean adaptive, int minLimit, int maxLimit, double tolerance) {
+            this.limit = limit;
+            this.queueCapacity = queueCapacity;
+            this.adaptive = adaptive;
+            this.minLimit = Math.max(1, minLimit);
+            this.maxLimit = Math.max(this.minLimit, maxLimit);
+            this.tolerance = tolerance;
+        }
+
+
+        /**
+         * @return {@code null} once admitted, otherwise the reason of the rejection
+         */
+        String acquire(long maxWaitNanos) {
+            lock.lock();
+            try {
+                if (waiting == 0 && inFlight < (int) limit) {
+                    inFlight++;
+                    return null;
+                }
+                if (waiting >= queueCapacity) return QUEUE_FULL;
+
+                waiting++;
+                try {
+                    long remaining = maxWaitNanos;
+                    while (inFlight >= (int) limit) {
+                        if (remaining <= 0) return WAIT_TIMEOUT;
+                        remaining = released.awaitNanos(remaining);
+                    }
+                    inFlight++;
+                    return null;
+                } finally {
+                    // The queued work waits for the interactive requests to be admitted first
+                    if (--waiting == 0) released.signalAll();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Interrupted while waiting for a bulkhead slot");
+            } finally {
+                lock.unlock();
+            }
+        }
+
+
+        void acquireQueued() {
+            lock.lock();
+            try {
+                while (waiting > 0 || inFlight >= (int) limit) released.await();
+                inFlight++;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Interrupted while waiting for a bulkhead slot");
+            } finally {
+                lock.unlock();
+            }
+        }
+
+
+        void release(long latencyNanos, boolean success) {
+            lock.lock();
+            try {
+                inFlight--;
+                meanNanos = Double.isNaN(meanNanos) ? latencyNanos : 0.9 * meanNanos + 0.1 * latencyNanos;
+                if (adaptive) adapt(latencyNanos, success);
+                released.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+
+        private void adapt(long latencyNanos, boolean success) {
+            // The baseline follows the lowest latencies, drifting slowly up so that it tracks a slower backend
+            baselineNanos = Double.isNaN(baselineNanos) ? latencyNanos : Math.min(latencyNanos, baselineNanos * 1.01);
+
+            if (success && latencyNanos <= tolerance * baselineNanos) limit = Math.min(maxLimit, limit + 1 / limit);
+            else limit = Math.max(minLimit, limit * 0.9);
+        }
+
+
+        /**
+         * Time for the queue in front of a new request to drain at the current mean latency
+         */
+        long retryAfterSeconds() {
+            lock.lock();
+            try {
+                double mean = Double.isNaN(meanNanos) ? TimeUnit.SECONDS.toNanos(1) : meanNanos;
+                double drain = mean * (waiting + 1) / Math.max(1, (int) limit);
+                return Math.max(1, (long) Math.ceil(drain / 1e9));
+            } finally {
+                lock.unlock();
+            }
+        }
+
+
+        int maxInFlight() {
+            return adaptive ? maxLimit : (int) limit();
+        }
+
+        int inFlight() {
+            lock.lock();
+            try {
+                return inFlight;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        int waiting() {
+            lock.lock();
+            try {
+                return waiting;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        double limit() {
+            lock.lock();
+            try {
+                return limit;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+
+    /**
+     * Rejection of an overloaded strategy, with the Retry-After header
+     */
+    public static class OverloadedException extends ResponseStatusException {
+        private final long retryAfterSeconds;
+
+        public OverloadedException(HttpStatus status, String reason, long retryAfterSeconds) {
+            super(status, reason);
+            this.retryAfterSeconds = retryAfterSeconds;
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            HttpHeaders headers = new HttpHeaders();
+            headers.set(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+            return headers;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package org.caselli.comparativecognitiveworkflow.services;
+
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.openai.OpenAiChatOptions;
+import org.springframework.ai.openai.api.OpenAiApi;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Model options of each strategy, read from {@code ai4ne.models.<strategy>.*} (e.g. {@code ai4ne.models.reasoning-llm.model}):
+ * model, temperature, max-tokens and reasoning-effort. The options that are not set fall back to the
+ * {@code spring.ai.openai.chat.options} defaults shared by all the strategies.
+ */
+@Component
+public class StrategyChatOptions {
+
+    private static final String PREFIX = "ai4ne.models.";
+
+    private final Map<RoutingStrategy, ChatOptions> options = new EnumMap<>(RoutingStrategy.class);
+
+    private final Logger logger = Logger.getLogger(StrategyChatOptions.class.getName());
+
+    public StrategyChatOptions(Environment environment) {
+        for (RoutingStrategy strategy : RoutingStrategy.values()) {
+            ChatOptions strategyOptions = read(environment, PREFIX + key(strategy) + ".");
+            if (strategyOptions == null) continue;
+
+            options.put(strategy, strategyOptions);
+            logger.info("Model options of " + strategy + ": model " + strategyOptions.getModel() + ", temperature "
+                    + strategyOptions.getTemperature() + ", max tokens " + strategyOptions.getMaxTokens());
+        }
+
+        // The cascade escalates to the model of the reasoning strategy: with the same model it only pays twice
+        String defaultModel = environment.getProperty("spring.ai.openai.chat.options.model", OpenAiApi.DEFAULT_CHAT_MODEL.getValue());
+        String fastModel = model(RoutingStrategy.CASCADE, defaultModel);
+        if (fastModel.equals(model(RoutingStrategy.REASONING_LLM, defaultModel)))
+            logger.warning("The CASCADE strategy escalates to the same model (" + fastModel + ") as its first tier: set different "
+                    + PREFIX + key(RoutingStrategy.CASCADE) + ".model and " + PREFIX + key(RoutingStrategy.REASONING_LLM) + ".model");
+    }
+
+
+    private String model(RoutingStrategy strategy, String defaultModel) {
+        ChatOptions strategyOptions = options.get(strategy);
+        return strategyOptions != null && StringUtils.hasText(strategyOptions.getModel()) ? strategyOptions.getModel() : defaultModel;
+    }
+
+
+    /**
+     * @return the options of the strategy, or {@code null} when it uses the defaults
+     */
+    public ChatOptions of(RoutingStrategy strategy) {
+        return options.get(strategy);
+    }
+
+
+    /**
+     * Property key of a strategy, e.g. {@code reasoning-llm}
+     */
+    static String key(RoutingStrategy strategy) {
+        return strategy.name().toLowerCase(Locale.ROOT).replace('_', '-');
+    }
+
+
+    private static ChatOptions read(Environment environment, String prefix) {
+        String model = environment.getProperty(prefix + "model");
+        Double temperature = environment.getProperty(prefix + "temperature", Double.class);
+        Integer maxTokens = environment.getProperty(prefix + "max-tokens", Integer.class);
+        String reasoningEffort = environment.getProperty(prefix + "reasoning-effort");
+
+        boolean reasoning = StringUtils.hasText(reasoningEffort);
+        if (!StringUtils.hasText(model) && temperature == null && maxTokens == null && !reasoning) return null;
+
+        OpenAiChatOptions.Builder builder = OpenAiChatOptions.builder();
+        if (StringUtils.hasText(model)) builder.model(model);
+        if (temperature != null) builder.temperature(temperature);
+        if (reasoning) builder.reasoningEffort(reasoningEffort);
+        // Reasoning models only accept max_completion_tokens, which also counts the reasoning tokens
+        if (maxTokens != null) {
+            if (reasoning) builder.maxCompletionTokens(maxTokens);
+            else builder.maxTokens(maxTokens);
+        }
+        return builder.build();
+    }
+}
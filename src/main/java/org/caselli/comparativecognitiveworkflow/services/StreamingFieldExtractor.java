@@ -0,0 +1,87 @@
+package org.caselli.comparativecognitiveworkflow.services;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Extracts the value of a string field from a JSON document while it is being streamed, so the text of the
+ * field can be forwarded to the client as soon as the model generates it. Chunks can be split anywhere,
+ * including in the middle of an escape sequence.
+ */
+class StreamingFieldExtractor {
+
+    private enum State { SEARCHING, IN_VALUE, DONE }
+
+    private final Pattern fieldStart;
+    private final StringBuilder buffer = new StringBuilder();
+    private State state = State.SEARCHING;
+    private int cursor;
+
+    StreamingFieldExtractor(String fieldName) {
+        this.fieldStart = Pattern.compile("\"" + Pattern.quote(fieldName) + "\"\\s*:\\s*\"");
+    }
+
+
+    /**
+     * @return the decoded text of the field contained in the chunk (empty if none)
+     */
+    String accept(String chunk) {
+        buffer.append(chunk);
+
+        if (state == State.SEARCHING) {
+            Matcher matcher = fieldStart.matcher(buffer);
+            if (!matcher.find(Math.max(0, cursor))) {
+                // The beginning of the field may still be split across chunks
+                cursor = Math.max(0, buffer.length() - 64);
+                return "";
+            }
+            cursor = matcher.end();
+            state = State.IN_VALUE;
+        }
+
+        if (state != State.IN_VALUE) return "";
+
+        StringBuilder decoded = new StringBuilder();
+        while (cursor < buffer.length()) {
+            char c = buffer.charAt(cursor);
+
+            if (c == '"') {
+                state = State.DONE;
+                break;
+            }
+
+            if (c != '\\') {
+                decoded.append(c);
+                cursor++;
+                continue;
+            }
+
+            // Escape sequence: wait for the rest of it if it is split across chunks
+            if (cursor + 1 >= buffer.length()) break;
+            char escaped = buffer.charAt(cursor + 1);
+            if (escaped == 'u') {
+                if (cursor + 6 > buffer.length()) break;
+                decoded.append((char) Integer.parseInt(buffer.substring(cursor + 2, cursor + 6), 16));
+                cursor += 6;
+                continue;
+            }
+
+            decoded.append(switch (escaped) {
+                case 'n' -> '\n';
+                case 't' -> '\t';
+                case 'r' -> '\r';
+                case 'b' -> '\b';
+                case 'f' -> '\f';
+                default -> escaped;
+            });
+            cursor += 2;
+        }
+
+        return decoded.toString();
+    }
+
+
+    String text() {
+        return buffer.toString();
+    }
+}
@@ -0,0 +1,142 @@
+package org.caselli.comparativecognitiveworkflow.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.caselli.comparativecognitiveworkflow.services.RoutingTrace.ToolCall;
+import org.springframework.ai.chat.model.ToolContext;
+import org.springframework.ai.tool.ToolCallback;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.logging.Logger;
+
+/**
+ * Executes the tool calls of one function-calling request. Results are memoized by tool name and normalized
+ * arguments, so a repeated call neither hits the backend again nor adds the same payload to the conversation
+ * a second time, and the number of calls is capped. Every call is recorded in the trace of the request.
+ */
+class ToolCallSession {
+
+    static final String EXECUTED = "executed";
+    static final String MEMOIZED = "memoized";
+    static final String REJECTED = "rejected";
+
+    private final Logger logger = Logger.getLogger(ToolCallSession.class.getName());
+
+    private final RoutingTrace trace;
+    private final int maxCalls;
+    private final ObjectMapper objectMapper;
+
+    private final Map<String, String> results = new HashMap<>();
+    private int calls;
+
+    ToolCallSession(RoutingTrace trace, int maxCalls, ObjectMapper objectMapper) {
+        this.trace = trace;
+        this.maxCalls = maxCalls;
+        this.objectMapper = objectMapper;
+    }
+
+
+    String call(ToolCallback tool, String toolInput, ToolContext toolContext) {
+        String name = tool.getToolDefinition().name();
+        String arguments = normalizeArguments(toolInput);
+        String key = name + arguments;
+        long start = System.nanoTime();
+
+        String outcome;
+        int call;
+        synchronized (this) {
+            call = ++calls;
+            if (call > maxCalls + 1) {
+                // The model ignored the limit message: stop the conversation instead of looping
+                record(name, arguments, start, toolInput, "", REJECTED);
+                throw new IllegalStateException("The model exceeded the limit of " + maxCalls + " tool calls");
+            }
+            outcome = call > maxCalls ? REJECTED : results.containsKey(key) ? MEMOIZED : EXECUTED;
+        }
+
+        String result = switch (outcome) {
+            case REJECTED -> message("The limit of " + maxCalls + " tool calls has been reached. Do not call any more tools: "
+                    + "answer with the information already returned.");
+            case MEMOIZED -> message("The result of this call is identical to the previous call of " + name
+                    + " with the same arguments, which is already in the conversation. Do not call it again.");
+            default -> {
+                String executed = trace.time("tool:" + name, () -> tool.call(toolInput, toolContext));
+                synchronized (this) {
+                    results.put(key, executed);
+                }
+                yield executed;
+            }
+        };
+
+        if (!outcome.equals(EXECUTED))
+            logger.info("Tool call " + name + arguments + " " + outcome + " (call " + call + " of at most " + maxCalls + ")");
+
+        record(name, arguments, start, toolInput, result, outcome);
+        return result;
+    }
+
+
+    private void record(String name, String arguments, long start, String toolInput, String result, String outcome) {
+        trace.addToolCall(new ToolCall(
+                name,
+                arguments,
+                (System.nanoTime() - start) / 1_000_000,
+                bytes(toolInput),
+                bytes(result),
+                outcome
+        ));
+    }
+
+
+    /**
+     * Canonical form of the arguments: object fields and lists of values are sorted, so that for example
+     * {@code route} with the same device ids in a different order is recognized as the same call
+     */
+    String normalizeArguments(String toolInput) {
+        if (toolInput == null || toolInput.isBlank()) return "{}";
+        try {
+            return objectMapper.writeValueAsString(canonical(objectMapper.readTree(toolInput)));
+        } catch (JsonProcessingException e) {
+            return toolInput.strip();
+        }
+    }
+
+
+    private JsonNode canonical(JsonNode node) {
+        if (node instanceof ObjectNode object) {
+            TreeMap<String, JsonNode> fields = new TreeMap<>();
+            object.properties().forEach(field -> fields.put(field.getKey(), canonical(field.getValue())));
+
+            ObjectNode sorted = objectMapper.createObjectNode();
+            sorted.setAll(fields);
+            return sorted;
+        }
+
+        if (node instanceof ArrayNode array) {
+            List<JsonNode> items = new ArrayList<>();
+            array.forEach(item -> items.add(canonical(item)));
+            if (items.stream().allMatch(JsonNode::isValueNode))
+                items.sort(Comparator.comparing(JsonNode::asText));
+
+            ArrayNode sorted = objectMapper.createArrayNode();
+            items.forEach(sorted::add);
+            return sorted;
+        }
+
+        return node;
+    }
+
+
+    private String message(String text) {
+        return objectMapper.createObjectNode().put("message", text).toString();
+    }
+
+
+    private static int bytes(String text) {
+        return text == null ? 0 : text.getBytes(StandardCharsets.UTF_8).length;
+    }
+}
@@ -1,68 +1,312 @@
 package org.caselli.comparativecognitiveworkflow.services;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.caselli.comparativecognitiveworkflow.model.InventoryDeltas;
+import org.caselli.comparativecognitiveworkflow.model.InventorySnapshot;
+import org.caselli.comparativecognitiveworkflow.services.ContextAssemblyService.AssembledContext;
+import org.caselli.comparativecognitiveworkflow.services.ContextAssemblyService.ContextSource;
 import org.springframework.ai.tool.annotation.Tool;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpHeaders;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.List;
+import java.util.function.Supplier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
 
 @Service
 public class ToolService {
 
-    private final RestTemplate restTemplate;
-    private final String EXTERNAL_API_BASE_URL = "http://localhost:8000";
+    private final WebClient webClient;
+    private final MeterRegistry meterRegistry;
 
-    public ToolService(RestTemplate restTemplate) {
-        this.restTemplate = restTemplate;
+    private final ContextAssemblyService contextAssemblyService;
+    private final InventoryCache inventoryCache;
+    private final InventoryRefresher inventoryRefresher;
+    private final InventorySnapshotFile snapshotFile;
+    private final ExecutorService backgroundExecutor;
+    private final AtomicLong persistedVersion = new AtomicLong(-1);
+    private volatile boolean restored;
+
+    private final PathScoringService pathScoringService;
+    private final InventoryModelService inventoryModelService;
+    private final boolean localRouting;
+    private final boolean directedTopology;
+
+    private final Logger logger = Logger.getLogger(ToolService.class.getName());
+
+    public ToolService(WebClient inventoryWebClient,
+                       MeterRegistry meterRegistry,
+                       ContextAssemblyService contextAssemblyService,
+                       PathScoringService pathScoringService,
+                       InventoryModelService inventoryModelService,
+                       ObjectMapper objectMapper,
+                       @Value("${ai4ne.inventory.cache.ttl-ms:60000}") long cacheTtlMs,
+                       @Value("${ai4ne.inventory.cache.max-bytes:67108864}") long cacheMaxBytes,
+                       @Value("${ai4ne.inventory.cache.max-stale-ms:3600000}") long cacheMaxStaleMs,
+                       @Value("${ai4ne.inventory.refresh.conditional:true}") boolean conditionalRefresh,
+                       @Value("${ai4ne.inventory.refresh.deltas:true}") boolean deltaRefresh,
+                       @Value("${ai4ne.inventory.persistence.path:}") String persistencePath,
+                       @Value("${ai4ne.topology.directed:false}") boolean directedTopology,
+                       @Value("${ai4ne.routing.engine:local}") String routingEngineMode) {
+        this.webClient = inventoryWebClient;
+        this.meterRegistry = meterRegistry;
+        this.contextAssemblyService = contextAssemblyService;
+        this.pathScoringService = pathScoringService;
+        this.inventoryModelService = inventoryModelService;
+        this.localRouting = "local".equalsIgnoreCase(routingEngineMode);
+        this.directedTopology = directedTopology;
+        this.backgroundExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "inventory-background");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.inventoryCache = new InventoryCache(Duration.ofMillis(cacheTtlMs), cacheMaxBytes, Duration.ofMillis(cacheMaxStaleMs),
+                backgroundExecutor, Clock.systemUTC());
+        this.inventoryRefresher = new InventoryRefresher(this::get, objectMapper, meterRegistry, conditionalRefresh, deltaRefresh, cacheMaxBytes);
+        // Disabled unless a path is configured: a shared default would be overwritten by every instance on the host
+        this.snapshotFile = persistencePath.isBlank() ? null : new InventorySnapshotFile(Path.of(persistencePath));
+        if (snapshotFile != null) restoreSnapshot();
+    }
+
+
+    /**
+     * Serves the snapshot persisted by the previous run, if still within the staleness allowed, and seeds the
+     * validators of its documents so that the refresh is a conditional request
+     */
+    private void restoreSnapshot() {
+        long start = System.nanoTime();
+        snapshotFile.load().ifPresent(persisted -> {
+            InventorySnapshot snapshot = persisted.snapshot();
+            if (!inventoryCache.restore(snapshot)) {
+                logger.info("The persisted inventory snapshot of " + persisted.fetchedAt() + " is too old, not serving it");
+                return;
+            }
+            inventoryRefresher.seed("/devices", snapshot.devices(), persisted.devices().etag(), persisted.devices().lastModified());
+            inventoryRefresher.seed("/network_topology", snapshot.networkTopology(),
+                    persisted.networkTopology().etag(), persisted.networkTopology().lastModified());
+            persistedVersion.set(snapshot.version());
+            restored = true;
+            logger.info("Restored the inventory snapshot v" + snapshot.version() + " of " + persisted.fetchedAt() + " from "
+                    + snapshotFile.path() + " in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+        });
+    }
+
+
+    /**
+     * Refreshes a restored snapshot in the background as soon as the application is up, instead of on the first request
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void refreshRestoredSnapshot() {
+        if (restored) getSnapshot();
+    }
+
+
+    /**
+     * Returns the current inventory snapshot, downloading it only if the cached one is expired or has been invalidated.
+     */
+    public InventorySnapshot getSnapshot() {
+        InventorySnapshot snapshot = inventoryCache.get(this::downloadSnapshot);
+        persist(snapshot);
+        return snapshot;
     }
 
 
+    /**
+     * Writes every new version of the snapshot to disk, in the background, with the validators of its documents
+     */
+    private void persist(InventorySnapshot snapshot) {
+        if (snapshotFile == null || persistedVersion.getAndSet(snapshot.version()) == snapshot.version()) return;
 
-    public String fetchNetworkTopology() {
-        // It is not marked as a tool as the routing tool itself returns the topology. So this service
-        // is used only by the simple llm
-        String url = EXTERNAL_API_BASE_URL + "/network_topology";
-        return restTemplate.getForObject(url, String.class);
+        InventorySnapshotFile.Persisted persisted = new InventorySnapshotFile.Persisted(snapshot.version(), snapshot.fetchedAt(),
+                document("/devices", snapshot.devices()), document("/network_topology", snapshot.networkTopology()));
+        try {
+            backgroundExecutor.execute(() -> {
+                try {
+                    snapshotFile.save(persisted);
+                } catch (IOException e) {
+                    logger.warning("Could not persist the inventory snapshot to " + snapshotFile.path() + ": " + e.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            logger.warning("Not persisting the inventory snapshot v" + snapshot.version() + ", shutting down");
+        }
     }
 
 
-    @Tool(description = "Get a list of hardware devices in a network and their technical specifications")
-    public String fetchDevices() {
-        String url = EXTERNAL_API_BASE_URL + "/devices";
-        return restTemplate.getForObject(url, String.class);
+    /**
+     * Lets the snapshot being written to disk, if any, complete before stopping the background refreshes
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        backgroundExecutor.shutdown();
+        if (!backgroundExecutor.awaitTermination(5, TimeUnit.SECONDS)) backgroundExecutor.shutdownNow();
     }
 
 
+    private InventorySnapshotFile.Document document(String endpoint, String body) {
+        InventoryRefresher.Validators validators = inventoryRefresher.validators(endpoint, body);
+        return validators == null ? new InventorySnapshotFile.Document(body, null, null)
+                : new InventorySnapshotFile.Document(body, validators.etag(), validators.lastModified());
+    }
+
+
+    private InventorySnapshot downloadSnapshot() {
+        // Devices and topology are refreshed in parallel, each one only if it has changed
+        AssembledContext downloaded = contextAssemblyService.assemble(List.of(
+                ContextSource.required("devices", () -> inventoryRefresher.fetch("/devices", InventoryDeltas::applyToDevices)),
+                ContextSource.required("networkTopology", () -> inventoryRefresher.fetch("/network_topology",
+                        (root, delta) -> InventoryDeltas.applyToTopology(root, delta, directedTopology)))
+        ));
+
+        return new InventorySnapshot(0, downloaded.get("devices"), downloaded.get("networkTopology"), Instant.now());
+    }
+
+
+    /**
+     * Drops the cached snapshot and the validators of the previous download, so that the next one is complete
+     */
+    public void invalidateCache() {
+        inventoryRefresher.reset();
+        inventoryCache.invalidate();
+    }
+
+
+    public InventoryCache.Stats getCacheStats() {
+        return inventoryCache.stats();
+    }
+
 
-    @Tool(description = """
-            Calculates a network route based on specified device constraints. 
-            This function takes a list of device IDs and attempts to find a path through the network 
-            that includes these devices. It find all possible paths 
-            that meet the specified constraints.
+
+    /**
+     * Tools of a single request, all reading the given snapshot: the route the model answers with is validated
+     * against the same data its tool calls returned, even if the inventory is refreshed during the conversation.
+     * @param devices output of {@code fetchDevices}, {@code null} for all the devices of the snapshot
+     */
+    public SnapshotTools tools(InventorySnapshot snapshot, Supplier<String> devices) {
+        return new SnapshotTools(snapshot, devices);
+    }
+
+
+    public final class SnapshotTools {
+
+        private final InventorySnapshot snapshot;
+        private final Supplier<String> devices;
+
+        private SnapshotTools(InventorySnapshot snapshot, Supplier<String> devices) {
+            this.snapshot = snapshot;
+            this.devices = devices;
+        }
+
+
+        public String fetchNetworkTopology() {
+            // It is not marked as a tool as the routing tool itself returns the topology
+            return inventoryModelService.modelFor(snapshot).prompt().topologyJson();
+        }
+
+
+        @Tool(description = "Get a list of hardware devices in a network and their technical specifications")
+        public String fetchDevices() {
+            if (devices != null) return devices.get();
+            // Compact serialization of the shared model, without re-parsing the downloaded document
+            return inventoryModelService.modelFor(snapshot).prompt().devicesJson();
+        }
+
+
+        @Tool(description = """
+                Calculates a network route based on specified device constraints. 
+                This function takes a list of device IDs and attempts to find a path through the network 
+                that includes these devices. It find all possible paths 
+                that meet the specified constraints.
            
-            Returns: 
-            {
-                 "paths": [ <list of candidate paths>  ],
-                 "constraints": <considered constraint nodes>,
-                 "network_topology": {
-                     "topology": {
-                         "nodes": [
-                             <list of nodes>
-                         ],
-                         "connections": [
-                           <lust of edges>
-                         ]
+                The candidate paths are ranked by a deterministic scoring of hops, latency, bottleneck bandwidth and power.
+           
+                Returns: 
+                {
+                     "paths": [ <list of candidate paths, best first>  ],
+                     "scores": [ <metrics and score of each path, when computed locally> ],
+                     "constraints": <considered constraint nodes>,
+                     "network_topology": {
+                         "topology": {
+                             "nodes": [
+                                 <list of nodes>
+                             ],
+                             "connections": [
+                               <lust of edges>
+                             ]
+                         }
                      }
-                 }
-            }
-            """)
-    public String route(List<String> deviceIds) {
-        String url = EXTERNAL_API_BASE_URL + "/route";
-        DeviceConstraints constraints = new DeviceConstraints(deviceIds);
-        return restTemplate.postForObject(url, constraints, String.class);
+                }
+                """)
+        public String route(List<String> deviceIds) {
+            if (localRouting)
+                return pathScoringService.routeAsJson(snapshot, deviceIds);
+
+            DeviceConstraints constraints = new DeviceConstraints(deviceIds);
+            return timed("/route", webClient.post().uri("/route").bodyValue(constraints).retrieve().bodyToMono(String.class)).block();
+        }
+    }
+
+
+    /**
+     * Conditional GET, optionally with the {@code since} parameter of the delta requests
+     */
+    private InventoryRefresher.Response get(String path, String since, String etag, String lastModified) {
+        return timed(path, webClient.get()
+                .uri(uriBuilder -> since == null ? uriBuilder.path(path).build() : uriBuilder.path(path).queryParam("since", "{since}").build(since))
+                .headers(headers -> {
+                    if (etag != null) headers.setIfNoneMatch(etag);
+                    if (lastModified != null) headers.set(HttpHeaders.IF_MODIFIED_SINCE, lastModified);
+                })
+                .exchangeToMono(response -> response.bodyToMono(String.class)
+                        .defaultIfEmpty("")
+                        .map(body -> new InventoryRefresher.Response(response.statusCode().value(), body,
+                                response.headers().asHttpHeaders().getETag(),
+                                response.headers().asHttpHeaders().getFirst(HttpHeaders.LAST_MODIFIED)))))
+                .block();
+    }
+
+
+    /**
+     * Records the latency of each request to the backend, by endpoint and outcome
+     */
+    private <T> Mono<T> timed(String endpoint, Mono<T> request) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return request
+                    .doOnSuccess(body -> recordLatency(endpoint, "success", start))
+                    .doOnError(e -> recordLatency(endpoint, e.getClass().getSimpleName(), start));
+        });
+    }
+
+
+    private void recordLatency(String endpoint, String outcome, long start) {
+        Timer.builder("ai4ne.inventory.requests")
+                .description("Latency of the requests to the inventory and routing backend")
+                .tag("endpoint", endpoint)
+                .tag("outcome", outcome)
+                .register(meterRegistry)
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
     }
 
 
 
     private record DeviceConstraints(List<String> device_ids) { }
-}
\ No newline at end of file
+}
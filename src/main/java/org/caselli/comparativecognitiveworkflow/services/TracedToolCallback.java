@@ -0,0 +1,43 @@
+package org.caselli.comparativecognitiveworkflow.services;
+
+import org.springframework.ai.chat.model.ToolContext;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+import org.springframework.ai.tool.metadata.ToolMetadata;
+
+/**
+ * Tool callback that runs the calls made by the model through the {@link ToolCallSession} of the request,
+ * which memoizes, caps and records them.
+ */
+class TracedToolCallback implements ToolCallback {
+
+    private final ToolCallback delegate;
+    private final ToolCallSession session;
+
+    TracedToolCallback(ToolCallback delegate, ToolCallSession session) {
+        this.delegate = delegate;
+        this.session = session;
+    }
+
+
+    @Override
+    public ToolDefinition getToolDefinition() {
+        return delegate.getToolDefinition();
+    }
+
+    @Override
+    public ToolMetadata getToolMetadata() {
+        return delegate.getToolMetadata();
+    }
+
+
+    @Override
+    public String call(String toolInput) {
+        return call(toolInput, null);
+    }
+
+    @Override
+    public String call(String toolInput, ToolContext toolContext) {
+        return session.call(delegate, toolInput, toolContext);
+    }
+}
@@ -0,0 +1,25 @@
+package org.caselli.comparativecognitiveworkflow.services;
+
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+
+import java.util.List;
+
+/**
+ * In-process model answering the warmup requests, so that the workflows can run end to end before the instance
+ * receives traffic without paying for (or waiting on) the real model. The answer fits both the route and the region
+ * selection outputs: an empty path, which also exercises the validation and the repair prompt.
+ */
+final class WarmupChatModel implements ChatModel {
+
+    static final String ANSWER = """
+            {"motivation": "Warmup answer of the stub model", "selectedPath": [], "qualifiedDevices": [], "regions": []}""";
+
+    @Override
+    public ChatResponse call(Prompt prompt) {
+        return new ChatResponse(List.of(new Generation(new AssistantMessage(ANSWER))));
+    }
+}
@@ -0,0 +1,101 @@
+package org.caselli.comparativecognitiveworkflow.services;
+
+import org.caselli.comparativecognitiveworkflow.model.InventoryModel;
+import org.caselli.comparativecognitiveworkflow.model.InventorySnapshot;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Warms the instance up before it receives traffic: the inventory snapshot is loaded (opening the connections to the
+ * inventory service) and its shared model built, then synthetic routing requests run through every strategy against
+ * the in-process stub model, building the prompt templates and output converters and giving the JIT the hot paths.
+ * <p>
+ * It runs as the first application runner, when the application is live but not yet ready: Spring Boot only switches
+ * the readiness state (and {@code /actuator/health/readiness}) to accepting traffic once all the runners are done, so a
+ * rolling deploy does not send requests to a cold instance. Failures are logged and never prevent the instance from
+ * becoming ready.
+ */
+@Service
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class WarmupService implements ApplicationRunner {
+
+    static final List<String> REQUESTS = List.of(
+            "Route from the start node to the end node through a GPU with at least 100 Gbps of bandwidth",
+            "Find the lowest latency path from start to end using a DPU that supports RoCE v2 and draws less than 75 W"
+    );
+
+    private final AI4NeService ai4NeService;
+    private final ToolService toolService;
+    private final InventoryModelService inventoryModelService;
+
+    private final boolean enabled;
+    private final List<RoutingStrategy> strategies;
+    private final int rounds;
+    private final long maxDurationMs;
+
+    private final Logger logger = Logger.getLogger(WarmupService.class.getName());
+
+    public WarmupService(AI4NeService ai4NeService, ToolService toolService, InventoryModelService inventoryModelService,
+                         @Value("${ai4ne.warmup.enabled:true}") boolean enabled,
+                         @Value("${ai4ne.warmup.strategies:SIMPLE_LLM,REASONING_LLM,FUNCTION_CALLING,HYBRID,CASCADE,SCORING_ENGINE}") List<RoutingStrategy> strategies,
+                         @Value("${ai4ne.warmup.rounds:3}") int rounds,
+                         @Value("${ai4ne.warmup.max-duration-ms:30000}") long maxDurationMs) {
+        this.ai4NeService = ai4NeService;
+        this.toolService = toolService;
+        this.inventoryModelService = inventoryModelService;
+        this.enabled = enabled;
+        this.strategies = strategies;
+        this.rounds = rounds;
+        this.maxDurationMs = maxDurationMs;
+    }
+
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!enabled) return;
+
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(maxDurationMs);
+
+        InventorySnapshot snapshot;
+        try {
+            snapshot = toolService.getSnapshot();
+            InventoryModel model = inventoryModelService.modelFor(snapshot);
+            logger.info("Warmup: inventory snapshot v" + snapshot.version() + " loaded, " + model.graph().size() + " nodes");
+        } catch (RuntimeException e) {
+            logger.warning("Warmup: the inventory snapshot could not be loaded, skipping the synthetic requests: " + e.getMessage());
+            return;
+        }
+
+        int requests = 0, failures = 0;
+        warmup:
+        for (int round = 0; round < rounds; round++) {
+            for (RoutingStrategy strategy : strategies) {
+                for (String request : REQUESTS) {
+                    if (System.nanoTime() - deadline > 0) {
+                        logger.warning("Warmup: stopped after " + maxDurationMs + " ms");
+                        break warmup;
+                    }
+                    requests++;
+                    try {
+                        ai4NeService.warmup(strategy, request, snapshot);
+                    } catch (RuntimeException e) {
+                        // Only the first failure is logged, the other strategies are still warmed up
+                        if (failures++ == 0) logger.warning("Warmup: synthetic " + strategy + " request failed: " + e);
+                    }
+                }
+            }
+        }
+
+        logger.info("Warmup done in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms: "
+                + requests + " synthetic requests, " + failures + " failed");
+    }
+}
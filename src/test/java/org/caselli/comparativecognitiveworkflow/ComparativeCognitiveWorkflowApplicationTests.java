@@ -3,7 +3,8 @@ package org.caselli.comparativecognitiveworkflow;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
 
-@SpringBootTest
+// No inventory snapshot is persisted by the test runs
+@SpringBootTest(properties = "ai4ne.inventory.persistence.path=")
 class ComparativeCognitiveWorkflowApplicationTests {
 
     @Test
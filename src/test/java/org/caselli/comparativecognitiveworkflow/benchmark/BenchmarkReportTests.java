@@ -0,0 +1,49 @@
+package org.caselli.comparativecognitiveworkflow.benchmark;
+
+import org.caselli.comparativecognitiveworkflow.benchmark.BenchmarkReport.Sample;
+import org.caselli.comparativecognitiveworkflow.benchmark.BenchmarkReport.StrategySummary;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BenchmarkReportTests {
+
+    @Test
+    void nearestRankPercentiles() {
+        long[] latencies = new long[100];
+        for (int i = 0; i < latencies.length; i++) latencies[i] = i + 1;
+
+        assertEquals(50, BenchmarkReport.percentile(latencies, 50));
+        assertEquals(95, BenchmarkReport.percentile(latencies, 95));
+        assertEquals(99, BenchmarkReport.percentile(latencies, 99));
+        assertEquals(7, BenchmarkReport.percentile(new long[]{ 7 }, 99));
+        assertEquals(0, BenchmarkReport.percentile(new long[0], 50));
+    }
+
+    @Test
+    void failuresCountAsInvalidAndAreLeftOutOfTheMeans() {
+        List<Sample> samples = new ArrayList<>();
+        samples.add(new Sample(100, false, true, Map.of("model", 80L, "tool:route", 10L), 1000, 50, 2, true));
+        samples.add(new Sample(300, false, false, Map.of("model", 120L), 3000, 150, 0, false));
+        samples.add(Sample.failure(20));
+
+        StrategySummary summary = BenchmarkReport.summarize(samples, 1000);
+
+        assertEquals(3, summary.requests());
+        assertEquals(1, summary.failures());
+        assertEquals(1.0 / 3, summary.validityRate(), 1e-9);
+        assertEquals(3.0, summary.throughputPerSecond(), 1e-9);
+        assertEquals(300, summary.latencyMs().max());
+        assertEquals(100, summary.latencyMs().p50());
+        assertEquals(100.0, summary.phaseMeanMs().get("model"), 1e-9);
+        assertEquals(5.0, summary.phaseMeanMs().get("tool:route"), 1e-9);
+        assertEquals(2000.0, summary.promptTokensMean(), 1e-9);
+        assertEquals(4200, summary.totalTokens());
+        assertEquals(1.0, summary.toolCallsMean(), 1e-9);
+        assertEquals(0.5, summary.escalationRate(), 1e-9);
+    }
+}
@@ -0,0 +1,29 @@
+package org.caselli.comparativecognitiveworkflow.model;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.time.Instant;
+import java.util.Set;
+
+/**
+ * Inventory models of the test documents, built with the same streaming parser as the application
+ */
+public final class TestInventories {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private TestInventories() { }
+
+
+    public static InventoryModel model(String devices, String topology) {
+        return InventoryModel.parse(new InventorySnapshot(0, devices, topology, Instant.now()), OBJECT_MAPPER, false, Set.of());
+    }
+
+    public static NetworkGraph graph(String topology) {
+        return model("[]", topology).graph();
+    }
+
+    public static DeviceIndex devices(String devices) {
+        return model(devices, "{}").devices();
+    }
+}
@@ -0,0 +1,77 @@
+package org.caselli.comparativecognitiveworkflow.routing;
+
+import org.caselli.comparativecognitiveworkflow.model.NetworkGraph;
+import org.caselli.comparativecognitiveworkflow.model.TestInventories;
+import org.caselli.comparativecognitiveworkflow.routing.PathEnumerator.ConstraintMode;
+import org.caselli.comparativecognitiveworkflow.routing.PathEnumerator.Limits;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PathEnumeratorTests {
+
+    // s - a - e
+    // s - b - c - e
+    // a - b
+    static final String TOPOLOGY = """
+            {
+              "topology": {
+                "nodes": [
+                  { "id": "s", "device": "modem-1", "start": true },
+                  { "id": "a", "device": "switch-1" },
+                  { "id": "b", "device": "dpu-1" },
+                  { "id": "c", "device": "dpu-2" },
+                  { "id": "e", "device": "server-1", "end": true }
+                ],
+                "connections": [
+                  { "source": "s", "target": "a" },
+                  { "source": "a", "target": "e" },
+                  { "source": "s", "target": "b" },
+                  { "source": "b", "target": "c" },
+                  { "source": "c", "target": "e" },
+                  { "source": "a", "target": "b" }
+                ]
+              }
+            }
+            """;
+
+    private final NetworkGraph graph = TestInventories.graph(TOPOLOGY);
+
+    @Test
+    void enumeratesAllLooplessPathsInHopOrder() {
+        PathEnumerator.Result result = new PathEnumerator(graph, new Limits(10, 1000)).enumerate(List.of(), ConstraintMode.ANY);
+
+        List<List<String>> paths = result.paths().stream().map(graph::ids).toList();
+        assertEquals(List.of("s", "a", "e"), paths.get(0));
+        assertEquals(4, paths.size());
+        assertTrue(paths.contains(List.of("s", "b", "a", "e")));
+        assertTrue(paths.contains(List.of("s", "a", "b", "c", "e")));
+        assertFalse(result.truncated());
+    }
+
+    @Test
+    void keepsOnlyPathsThroughConstraintDevices() {
+        PathEnumerator.Result result = new PathEnumerator(graph, new Limits(10, 1000)).enumerate(List.of("dpu-2"), ConstraintMode.ANY);
+
+        List<List<String>> paths = result.paths().stream().map(graph::ids).toList();
+        assertEquals(List.of(List.of("s", "b", "c", "e"), List.of("s", "a", "b", "c", "e")), paths);
+        assertEquals(List.of("c"), graph.ids(result.constraintNodes()));
+    }
+
+    @Test
+    void requiresEveryDeviceInAllMode() {
+        PathEnumerator.Result result = new PathEnumerator(graph, new Limits(10, 1000)).enumerate(List.of("switch-1", "dpu-2"), ConstraintMode.ALL);
+
+        assertEquals(List.of(List.of("s", "a", "b", "c", "e")), result.paths().stream().map(graph::ids).toList());
+    }
+
+    @Test
+    void capsTheEnumeration() {
+        PathEnumerator.Result result = new PathEnumerator(graph, new Limits(2, 1000)).enumerate(List.of(), ConstraintMode.ANY);
+
+        assertEquals(2, result.paths().size());
+        assertTrue(result.truncated());
+    }
+}
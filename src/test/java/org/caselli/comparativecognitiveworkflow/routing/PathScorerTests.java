@@ -0,0 +1,109 @@
+package org.caselli.comparativecognitiveworkflow.routing;
+
+import org.caselli.comparativecognitiveworkflow.model.DeviceIndex;
+import org.caselli.comparativecognitiveworkflow.model.InventoryModel;
+import org.caselli.comparativecognitiveworkflow.model.LinkSpecs;
+import org.caselli.comparativecognitiveworkflow.model.NetworkGraph;
+import org.caselli.comparativecognitiveworkflow.model.TestInventories;
+import org.caselli.comparativecognitiveworkflow.routing.PathScorer.PathScore;
+import org.caselli.comparativecognitiveworkflow.routing.PathScorer.Requirements;
+import org.caselli.comparativecognitiveworkflow.routing.PathScorer.Weights;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PathScorerTests {
+
+    private static final String TOPOLOGY = """
+            {
+              "topology": {
+                "nodes": [
+                  { "id": "s", "device": "modem-1", "start": true },
+                  { "id": "a", "device": "switch-1" },
+                  { "id": "b", "device": "dpu-1" },
+                  { "id": "c", "device": "dpu-2" },
+                  { "id": "e", "device": "server-1", "end": true }
+                ],
+                "connections": [
+                  { "source": "s", "target": "a", "bandwidth_gbps": 10, "latency_us": 5 },
+                  { "source": "a", "target": "e", "bandwidth_gbps": 10, "latency_us": 5 },
+                  { "source": "s", "target": "b", "bandwidth_gbps": 100, "latency_us": 1 },
+                  { "source": "b", "target": "c", "bandwidth_gbps": 100, "latency_us": 1 },
+                  { "source": "c", "target": "e", "bandwidth_gbps": 100, "latency_us": 1 }
+                ]
+              }
+            }
+            """;
+
+    private static final String DEVICES = """
+            [
+              { "id": "modem-1", "power_w": 10 },
+              { "id": "switch-1", "latency_ns": 500 },
+              { "id": "dpu-1", "ports": [ { "speed_gbps": 100 }, { "speed_gbps": 100 } ], "max_power_w": 75 },
+              { "id": "dpu-2", "bandwidth_gbps": 200, "max_power_w": 75 },
+              { "id": "server-1" }
+            ]
+            """;
+
+    private static final List<List<String>> PATHS = List.of(List.of("s", "b", "c", "e"), List.of("s", "a", "e"));
+
+    private final InventoryModel model = TestInventories.model(DEVICES, TOPOLOGY);
+    private final NetworkGraph graph = model.graph();
+    private final DeviceIndex devices = model.devices();
+    private final LinkSpecs links = model.links();
+
+    @Test
+    void computesPathMetricsFromDeviceAndLinkSpecs() {
+        List<PathScore> scores = PathScorer.rank(graph, devices, links, PATHS, List.of("dpu-2"),
+                new Weights(1, 1, 1, 1, 1), Requirements.NONE);
+
+        PathScore direct = find(scores, List.of("s", "a", "e"));
+        assertEquals(2, direct.hops());
+        assertEquals(10.5, direct.latencyUs(), 1e-9);
+        assertEquals(10, direct.bottleneckGbps(), 1e-9);
+        assertEquals(10, direct.powerW(), 1e-9);
+        assertEquals(0, direct.qualifiedDevices());
+
+        PathScore viaDpus = find(scores, List.of("s", "b", "c", "e"));
+        assertEquals(3, viaDpus.latencyUs(), 1e-9);
+        assertEquals(100, viaDpus.bottleneckGbps(), 1e-9);
+        assertEquals(160, viaDpus.powerW(), 1e-9);
+        assertEquals(1, viaDpus.qualifiedDevices());
+    }
+
+    @Test
+    void ranksByWeightedScore() {
+        List<PathScore> byHops = PathScorer.rank(graph, devices, links, PATHS, null, new Weights(1, 0, 0, 0, 0), Requirements.NONE);
+        assertEquals(List.of("s", "a", "e"), byHops.get(0).path());
+        assertEquals(1.0, byHops.get(0).score());
+        assertNull(byHops.get(0).qualifiedDevices());
+
+        List<PathScore> byBandwidth = PathScorer.rank(graph, devices, links, PATHS, null, new Weights(0, 0, 1, 0, 0), Requirements.NONE);
+        assertEquals(List.of("s", "b", "c", "e"), byBandwidth.get(0).path());
+    }
+
+    @Test
+    void ranksPathsViolatingTheRequirementsLast() {
+        List<PathScore> scores = PathScorer.rank(graph, devices, links, PATHS, null, new Weights(1, 0, 0, 0, 0),
+                new Requirements(50, Double.NaN));
+
+        assertEquals(List.of("s", "b", "c", "e"), scores.get(0).path());
+        assertTrue(scores.get(0).violations().isEmpty());
+        assertEquals(1, scores.get(1).violations().size());
+    }
+
+    @Test
+    void linkSpecsAreSymmetricOnUndirectedTopologies() {
+        int a = graph.ordinal("a"), e = graph.ordinal("e");
+
+        assertEquals(10, links.bandwidth(e, a), 1e-9);
+        assertEquals(5, links.latency(a, e), 1e-9);
+        assertTrue(Double.isNaN(links.bandwidth(a, graph.ordinal("c"))));
+    }
+
+    private static PathScore find(List<PathScore> scores, List<String> path) {
+        return scores.stream().filter(s -> s.path().equals(path)).findFirst().orElseThrow();
+    }
+}
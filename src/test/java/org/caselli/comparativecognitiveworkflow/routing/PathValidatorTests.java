@@ -0,0 +1,38 @@
+package org.caselli.comparativecognitiveworkflow.routing;
+
+import org.caselli.comparativecognitiveworkflow.model.NetworkGraph;
+import org.caselli.comparativecognitiveworkflow.model.TestInventories;
+import org.caselli.comparativecognitiveworkflow.routing.PathValidator.PathValidation;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PathValidatorTests {
+
+    private final NetworkGraph graph = TestInventories.graph(PathEnumeratorTests.TOPOLOGY);
+
+    @Test
+    void acceptsValidPath() {
+        PathValidation validation = PathValidator.validate(graph, List.of("s", "b", "c", "e"), List.of("dpu-2"));
+
+        assertTrue(validation.valid(), validation.errors().toString());
+    }
+
+    @Test
+    void rejectsMissingNodesAndEdges() {
+        PathValidation validation = PathValidator.validate(graph, List.of("s", "c", "x", "e"), List.of());
+
+        assertFalse(validation.valid());
+        assertTrue(validation.errors().contains("Node 'x' does not exist in the topology"));
+        assertTrue(validation.errors().contains("There is no connection from 's' to 'c'"));
+    }
+
+    @Test
+    void rejectsPathMissingConstraintDevicesOrEndpoints() {
+        assertFalse(PathValidator.validate(graph, List.of("s", "a", "e"), List.of("dpu-2")).valid());
+        assertFalse(PathValidator.validate(graph, List.of("s", "b", "c"), List.of()).valid());
+        assertFalse(PathValidator.validate(graph, List.of(), List.of()).valid());
+    }
+}
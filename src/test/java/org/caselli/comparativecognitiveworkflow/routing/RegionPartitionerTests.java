@@ -0,0 +1,45 @@
+package org.caselli.comparativecognitiveworkflow.routing;
+
+import org.caselli.comparativecognitiveworkflow.model.NetworkGraph;
+import org.caselli.comparativecognitiveworkflow.model.TestInventories;
+import org.caselli.comparativecognitiveworkflow.routing.RegionPartitioner.Regions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RegionPartitionerTests {
+
+    @Test
+    void regionsAreBoundedAndCoverEveryNode() {
+        NetworkGraph graph = TestInventories.graph(PathEnumeratorTests.TOPOLOGY);
+
+        Regions regions = RegionPartitioner.partition(graph, 2);
+
+        assertEquals(3, regions.count());
+        assertTrue(Arrays.stream(regions.members()).allMatch(members -> members.length <= 2));
+        assertEquals(graph.size(), Arrays.stream(regions.members()).mapToInt(members -> members.length).sum());
+        assertTrue(Arrays.stream(regions.regionOf()).allMatch(region -> region >= 0));
+    }
+
+    @Test
+    void regionGraphLinksAdjacentRegions() {
+        NetworkGraph graph = TestInventories.graph(PathEnumeratorTests.TOPOLOGY);
+
+        Regions regions = RegionPartitioner.partition(graph, 2);
+        NetworkGraph regionGraph = regions.regionGraph();
+
+        int start = regions.regionOf()[graph.ordinal("s")];
+        int end = regions.regionOf()[graph.ordinal("e")];
+        assertArrayEquals(new int[]{ start }, regionGraph.startNodes());
+        assertTrue(regionGraph.isEnd(end));
+
+        for (int u = 0; u < graph.size(); u++) {
+            for (int i = 0; i < graph.degree(u); i++) {
+                int from = regions.regionOf()[u], to = regions.regionOf()[graph.neighbour(u, i)];
+                assertTrue(from == to || regionGraph.hasEdge(from, to));
+            }
+        }
+    }
+}
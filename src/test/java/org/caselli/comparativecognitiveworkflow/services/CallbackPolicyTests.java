@@ -0,0 +1,43 @@
+package org.caselli.comparativecognitiveworkflow.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CallbackPolicyTests {
+
+    @Test
+    void refusesInternalAddresses() {
+        CallbackPolicy policy = new CallbackPolicy(Set.of());
+
+        assertTrue(policy.allows("https://93.184.216.34/hooks/route"));
+        assertTrue(policy.allows("http://[2606:4700::1111]:8080/done"));
+
+        assertFalse(policy.allows("http://localhost:8000/devices"));
+        assertFalse(policy.allows("http://127.0.0.1:3002/ai4ne/jobs"));
+        assertFalse(policy.allows("http://169.254.169.254/latest/meta-data/"));
+        assertFalse(policy.allows("http://10.1.2.3/"));
+        assertFalse(policy.allows("http://192.168.0.10/"));
+        assertFalse(policy.allows("http://172.20.0.1/"));
+        assertFalse(policy.allows("http://100.64.0.1/"));
+        assertFalse(policy.allows("http://0.0.0.0:8000/"));
+        assertFalse(policy.allows("http://[::1]/"));
+        assertFalse(policy.allows("http://[fd00::1]/"));
+        assertFalse(policy.allows("http://[::ffff:127.0.0.1]/"));
+
+        assertFalse(policy.allows("file:///etc/passwd"));
+        assertFalse(policy.allows("/relative/path"));
+        assertFalse(policy.allows("http://exa mple.com/"));
+    }
+
+    @Test
+    void acceptsOnlyTheAllowedHostsWhenConfigured() {
+        CallbackPolicy policy = new CallbackPolicy(Set.of(" Hooks.Internal ", "127.0.0.1"));
+
+        assertTrue(policy.allows("https://hooks.internal/route"));
+        assertTrue(policy.allows("http://127.0.0.1:9000/done"));
+        assertFalse(policy.allows("https://93.184.216.34/hooks/route"));
+    }
+}
@@ -0,0 +1,48 @@
+package org.caselli.comparativecognitiveworkflow.services;
+
+import org.caselli.comparativecognitiveworkflow.routing.PathScorer.PathScore;
+import org.caselli.comparativecognitiveworkflow.routing.PathValidator.PathValidation;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CascadePolicyTests {
+
+    private static final PathValidation VALID = new PathValidation(true, List.of(), 0);
+
+    private static final List<PathScore> RANKED = List.of(
+            new PathScore(List.of("s", "b", "c", "e"), 3, 3.0, 100.0, 160.0, 1, 0.8, List.of()),
+            new PathScore(List.of("s", "a", "e"), 2, 10.5, 10.0, 10.0, 0, 0.6, List.of("bottleneck bandwidth 10.0 Gbps < 50.0 Gbps"))
+    );
+
+    @Test
+    void acceptsValidCandidateWithQualifiedDevices() {
+        assertNull(CascadePolicy.escalationReason(VALID, List.of("s", "b", "c", "e"), List.of("dpu-2"), true, RANKED, Set.of("dpu-2")));
+    }
+
+    @Test
+    void escalatesInvalidPaths() {
+        PathValidation invalid = new PathValidation(false, List.of("There is no connection from 's' to 'c'"), 0);
+
+        assertEquals(CascadePolicy.INVALID_PATH,
+                CascadePolicy.escalationReason(invalid, List.of("s", "c", "e"), List.of(), false, RANKED, null));
+    }
+
+    @Test
+    void escalatesAnswersDisagreeingWithTheScoring() {
+        assertEquals(CascadePolicy.NOT_A_CANDIDATE,
+                CascadePolicy.escalationReason(VALID, List.of("s", "a", "b", "c", "e"), List.of("dpu-2"), true, RANKED, null));
+        assertEquals(CascadePolicy.VIOLATIONS,
+                CascadePolicy.escalationReason(VALID, List.of("s", "a", "e"), List.of(), true, RANKED, null));
+        assertEquals(CascadePolicy.UNQUALIFIED_DEVICES,
+                CascadePolicy.escalationReason(VALID, List.of("s", "b", "c", "e"), List.of("dpu-1"), true, RANKED, Set.of("dpu-2")));
+    }
+
+    @Test
+    void onlyChecksValidityWithoutConfidenceCheck() {
+        assertNull(CascadePolicy.escalationReason(VALID, List.of("s", "a", "e"), List.of("dpu-1"), false, RANKED, Set.of("dpu-2")));
+    }
+}
@@ -0,0 +1,87 @@
+package org.caselli.comparativecognitiveworkflow.services;
+
+import org.caselli.comparativecognitiveworkflow.services.ContextAssemblyService.AssembledContext;
+import org.caselli.comparativecognitiveworkflow.services.ContextAssemblyService.ContextAssemblyException;
+import org.caselli.comparativecognitiveworkflow.services.ContextAssemblyService.ContextSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ContextAssemblyServiceTests {
+
+    private final ContextAssemblyService service = new ContextAssemblyService(4, 1000, 2000);
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    @Test
+    void fetchesSourcesConcurrently() {
+        long start = System.nanoTime();
+
+        AssembledContext context = service.assemble(List.of(
+                ContextSource.required("devices", () -> sleepAndReturn(300, "d")),
+                ContextSource.required("networkTopology", () -> sleepAndReturn(300, "t"))
+        ));
+
+        long elapsedMs = Duration.ofNanos(System.nanoTime() - start).toMillis();
+        assertEquals("d", context.get("devices"));
+        assertEquals("t", context.get("networkTopology"));
+        assertTrue(elapsedMs < 550, "sources were not fetched in parallel: " + elapsedMs + "ms");
+    }
+
+    @Test
+    void skipsOptionalSourceOnTimeout() {
+        AssembledContext context = service.assemble(List.of(
+                ContextSource.required("devices", () -> "d"),
+                ContextSource.optional("enrichment", () -> sleepAndReturn(1000, "e"), Duration.ofMillis(50))
+        ));
+
+        assertEquals("d", context.get("devices"));
+        assertNull(context.get("enrichment"));
+    }
+
+    @Test
+    void interruptsTimedOutSources() throws InterruptedException {
+        CountDownLatch interrupted = new CountDownLatch(1);
+
+        AssembledContext context = service.assemble(List.of(
+                ContextSource.required("devices", () -> "d"),
+                ContextSource.optional("enrichment", () -> {
+                    try {
+                        Thread.sleep(60_000);
+                    } catch (InterruptedException e) {
+                        interrupted.countDown();
+                    }
+                    return "e";
+                }, Duration.ofMillis(50))
+        ));
+
+        assertNull(context.get("enrichment"));
+        // The hung source gave its pool thread back
+        assertTrue(interrupted.await(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void failsWhenRequiredSourceFails() {
+        assertThrows(ContextAssemblyException.class, () -> service.assemble(List.of(
+                ContextSource.required("devices", () -> { throw new IllegalStateException("backend down"); })
+        )));
+    }
+
+    private static String sleepAndReturn(long millis, String value) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return value;
+    }
+}
@@ -0,0 +1,120 @@
+package org.caselli.comparativecognitiveworkflow.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.caselli.comparativecognitiveworkflow.model.InventorySnapshot;
+import org.caselli.comparativecognitiveworkflow.services.ContextPruningService.PrunedContext;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ContextPruningServiceTests {
+
+    // s - a - e, s - b - c - e, a - b, plus a dead end s - far
+    private static final String TOPOLOGY = """
+            {
+              "topology": {
+                "nodes": [
+                  { "id": "s", "device": "modem-1", "start": true },
+                  { "id": "a", "device": "switch-1" },
+                  { "id": "b", "device": "dpu-1" },
+                  { "id": "c", "device": "dpu-2" },
+                  { "id": "e", "device": "server-1", "end": true },
+                  { "id": "far", "device": "gpu-1" }
+                ],
+                "connections": [
+                  { "source": "s", "target": "a" },
+                  { "source": "a", "target": "e" },
+                  { "source": "s", "target": "b" },
+                  { "source": "b", "target": "c" },
+                  { "source": "c", "target": "e" },
+                  { "source": "a", "target": "b" },
+                  { "source": "s", "target": "far" }
+                ]
+              }
+            }
+            """;
+
+    private static final String DEVICES = """
+            [
+              { "id": "modem-1", "category": "Modem", "price": 100, "notes": "" },
+              { "id": "switch-1", "category": "Switch", "price": 200 },
+              { "id": "dpu-1", "category": "DPU", "price": 300 },
+              { "id": "dpu-2", "category": "DPU", "price": 400 },
+              { "id": "server-1", "category": "CPU", "price": 500 },
+              { "id": "gpu-1", "category": "GPU", "price": 600 },
+              { "id": "spare-1", "category": "GPU", "price": 700 }
+            ]
+            """;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final InventorySnapshot snapshot = new InventorySnapshot(1, DEVICES, TOPOLOGY, Instant.now());
+
+    private ContextPruningService service(int hopRadius) {
+        return new ContextPruningService(new InventoryModelService(objectMapper, false, Set.of("price")), true, hopRadius);
+    }
+
+    @Test
+    void dropsNodesOutsideTheHopRadius() {
+        PrunedContext context = service(1).prune(snapshot, List.of("dpu-1"));
+
+        assertFalse(context.networkTopology().contains("\"far\""));
+        assertTrue(context.networkTopology().contains("\"c\""));
+        assertFalse(context.devices().contains("gpu-1"));
+        assertFalse(context.devices().contains("spare-1"));
+        assertEquals(5, context.report().nodesAfter());
+        assertTrue(context.report().tokensAfter() < context.report().tokensBefore());
+    }
+
+    @Test
+    void keepsTheWholeTopologyWithoutCandidates() {
+        PrunedContext context = service(0).prune(snapshot, null);
+
+        assertTrue(context.networkTopology().contains("\"far\""));
+        assertTrue(context.devices().contains("gpu-1"));
+        assertTrue(context.devices().contains("spare-1"));
+        assertEquals(6, context.report().nodesAfter());
+    }
+
+    @Test
+    void keepsTheDetourToACandidateOffTheShortestRoute() {
+        // s - a - e is the shortest route, the only GPU is on the 4-hop detour s - x - y - z - e
+        String topology = """
+                {"nodes": [ {"id": "s", "start": true}, {"id": "a", "device": "switch-1"}, {"id": "e", "end": true},
+                            {"id": "x"}, {"id": "y", "device": "gpu-1"}, {"id": "z"}, {"id": "w"} ],
+                 "connections": [ {"source": "s", "target": "a"}, {"source": "a", "target": "e"}, {"source": "s", "target": "x"},
+                                  {"source": "x", "target": "y"}, {"source": "y", "target": "z"}, {"source": "z", "target": "e"},
+                                  {"source": "y", "target": "w"} ]}""";
+        InventorySnapshot detour = new InventorySnapshot(2, "[ {\"id\": \"switch-1\"}, {\"id\": \"gpu-1\"} ]", topology, Instant.now());
+
+        PrunedContext context = service(0).prune(detour, List.of("gpu-1"));
+        for (String node : List.of("s", "x", "y", "z", "e")) assertTrue(context.networkTopology().contains("\"" + node + "\""), node);
+        assertFalse(context.networkTopology().contains("\"a\""));
+        assertFalse(context.networkTopology().contains("\"w\""));
+        assertTrue(context.devices().contains("gpu-1"));
+
+        // Within 2 extra hops of the route through the GPU: the dead end w and the shortcut through a
+        assertEquals(7, service(2).prune(detour, List.of("gpu-1")).report().nodesAfter());
+    }
+
+    @Test
+    void dropsExcludedAndEmptyAttributes() {
+        PrunedContext context = service(2).prune(snapshot, null);
+
+        assertFalse(context.devices().contains("price"));
+        assertFalse(context.devices().contains("notes"));
+        assertTrue(context.devices().contains("{\"id\":\"modem-1\",\"category\":\"Modem\"}"));
+    }
+
+    @Test
+    void keepsOnlyCandidateDevices() throws Exception {
+        PrunedContext context = service(0).prune(snapshot, List.of("dpu-2"));
+
+        assertEquals(1, objectMapper.readTree(context.devices()).size());
+        assertTrue(context.networkTopology().contains("\"c\""));
+        assertFalse(context.networkTopology().contains("\"far\""));
+    }
+}
@@ -0,0 +1,154 @@
+package org.caselli.comparativecognitiveworkflow.services;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.caselli.comparativecognitiveworkflow.model.DeviceIndex;
+import org.caselli.comparativecognitiveworkflow.model.InventorySnapshot;
+import org.caselli.comparativecognitiveworkflow.model.SpecDimension;
+import org.caselli.comparativecognitiveworkflow.model.TestInventories;
+import org.caselli.comparativecognitiveworkflow.services.DeviceFilterService.DeviceFilter;
+import org.caselli.comparativecognitiveworkflow.services.DeviceFilterService.HardConstraint;
+import org.caselli.comparativecognitiveworkflow.services.DeviceFilterService.NumericConstraint;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeviceFilterServiceTests {
+
+    private static final String TOPOLOGY = """
+            { "topology": { "nodes": [ { "id": "s", "start": true }, { "id": "e", "end": true } ],
+                            "connections": [ { "source": "s", "target": "e" } ] } }
+            """;
+
+    private static final String DEVICES = """
+            [
+              { "id": "switch-1", "category": "Switch", "bandwidth_gbps": 100, "power_w": 80,
+                "manual": "L3 switch with QoS marking and VXLAN" },
+              { "id": "dpu-1", "category": "DPU", "power_w": 45, "specs": { "cpu_cores": 16, "memory_gb": 32 },
+                "ports": [ { "speed_gbps": 25 }, { "speed_gbps": 25 } ],
+                "manual": "DPU with inline TLS and IPsec offload, RoCE v2" },
+              { "id": "nic-1", "category": "SmartNIC", "bandwidth_gbps": 10, "power_w": 20, "protocols": [ "P4", "DPDK" ] },
+              { "id": "gpu-1", "category": "GPU", "power_w": 300, "latency_us": 250 }
+            ]
+            """;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final InventorySnapshot snapshot = new InventorySnapshot(1, DEVICES, TOPOLOGY, Instant.now());
+
+    private final DeviceFilterService service;
+
+    DeviceFilterServiceTests() {
+        InventoryModelService models = new InventoryModelService(objectMapper, false, Set.of());
+        service = new DeviceFilterService(models, new ContextPruningService(models, true, 2), objectMapper, true);
+    }
+
+    @Test
+    void rangeQueriesAggregateRepeatedAttributes() {
+        DeviceIndex index = TestInventories.devices(DEVICES);
+
+        assertEquals(Set.of("switch-1", "nic-1"), index.reporting("bandwidth_gbps"));
+        assertEquals(Set.of("switch-1"), index.atLeast("bandwidth_gbps", 40));
+        // The ports of the DPU add up to 50 Gbps, and its slowest port is 25 Gbps
+        assertEquals(Set.of("dpu-1"), index.atLeast("ports.speed_gbps", 50));
+        assertEquals(Set.of("dpu-1"), index.atMost("ports.speed_gbps", 25));
+        assertEquals(Set.of("nic-1", "dpu-1"), index.atMost("power_w", 45));
+        assertEquals(Set.of(), index.atLeast("missing", 1));
+    }
+
+    @Test
+    void termsMatchAcrossSpellings() {
+        DeviceIndex index = TestInventories.devices(DEVICES);
+
+        assertEquals(Set.of("dpu-1"), index.mentioning("rocev2"));
+        assertEquals(Set.of("dpu-1"), index.mentioning("tls"));
+        assertEquals(Set.of("nic-1"), index.mentioning("p4"));
+        assertTrue(DeviceIndex.terms("SR-IOV support").contains("sriov"));
+    }
+
+    @Test
+    void extractsFiguresAndProtocols() {
+        List<String> constraints = DeviceFilterService.extract(
+                "Route 2 streams of 500 MB/s and a 10 Gbps flow with end-to-end latency under 100 microseconds, "
+                        + "terminating TLS on a device drawing at most 60 W with at least 8 cores and 16 GB of memory"
+        ).stream().map(HardConstraint::description).toList();
+
+        assertEquals(List.of("bandwidth >= 10 Gbps", "power <= 60 W", "latency <= 100 us", "cores >= 8",
+                "memory >= 16 GB", "protocol TLS"), constraints);
+
+        assertTrue(DeviceFilterService.extract("Find a path for a low-power IoT telemetry flow").isEmpty());
+        // Latency figures only count when the request talks about latency
+        assertTrue(DeviceFilterService.extract("Finish the job within 5 ms").isEmpty());
+    }
+
+    @Test
+    void tellsBitsFromBytesAndSkipsNegatedProtocols() {
+        assertEquals(List.of("bandwidth >= 10 Gbps"), descriptions("Route a 10 Gb/s flow"));
+        assertEquals(List.of("bandwidth >= 80 Gbps"), descriptions("Route a 10 GB/s flow"));
+        assertEquals(List.of("bandwidth >= 0.5 Gbps"), descriptions("Route 500 Mb/s and 50 MB/s flows"));
+        assertEquals(List.of("bandwidth >= 25 Gbps"), descriptions("Route 25 Gbit/s over a 1.5 KBps control link"));
+
+        assertEquals(List.of("protocol IPsec"), descriptions("Encrypt with IPsec, without TLS"));
+        assertTrue(descriptions("A 1 Gbps flow with no TLS or MACsec termination").stream().noneMatch(c -> c.startsWith("protocol")));
+    }
+
+    private static List<String> descriptions(String request) {
+        return DeviceFilterService.extract(request).stream().map(HardConstraint::description).toList();
+    }
+
+    @Test
+    void attributeUnitsComeFromTheirNames() {
+        assertEquals(SpecDimension.BANDWIDTH, SpecDimension.of("specs.maxBandwidthGbps").orElseThrow().dimension());
+        assertEquals(0.001, SpecDimension.of("latency_ns").orElseThrow().scale());
+        assertEquals(SpecDimension.CORES, SpecDimension.of("cpu_cores").orElseThrow().dimension());
+        assertTrue(SpecDimension.of("memory_bandwidth_gbps").isEmpty());
+        assertTrue(SpecDimension.of("bandwidth").isEmpty());
+    }
+
+    @Test
+    void eliminatesOnlyDevicesReportingAFailingValue() {
+        DeviceFilter filter = service.filter("Terminate TLS for a 40 Gbps flow under 100 W", snapshot);
+
+        assertTrue(filter.report().applied());
+        // nic-1 is too slow, gpu-1 draws too much power, and none of them mentions TLS
+        assertEquals(Set.of("dpu-1"), filter.candidates());
+        assertEquals(3, filter.report().constraints().size());
+        assertEquals(List.of("nic-1"), filter.report().constraints().get(0).eliminatedDevices());
+        assertEquals(List.of("bandwidth_gbps", "ports.speed_gbps"), filter.report().constraints().get(0).attributes());
+        assertTrue(filter.promptNote().contains("bandwidth >= 40 Gbps, power <= 100 W, protocol TLS"));
+    }
+
+    @Test
+    void leavesTheDecisionToTheModelWhenNothingCanBeDecided() {
+        // No device mentions MPLS: the constraint cannot be evaluated
+        DeviceFilter unknown = service.filter("Route an MPLS service", snapshot);
+        assertFalse(unknown.report().applied());
+        assertNull(unknown.candidates());
+        assertFalse(unknown.report().constraints().get(0).evaluated());
+
+        // The only device reaching 400 Gbps, as far as the inventory says, does not support TLS:
+        // the filter is not applied instead of leaving no device
+        DeviceFilter none = service.filter("Route a 400 Gbps flow over TLS", snapshot);
+        assertFalse(none.report().applied());
+        assertNull(none.candidates());
+        assertEquals(3, none.report().constraints().get(0).eliminated());
+    }
+
+    @Test
+    void filteredToolOutputListsTheCandidatesOnly() throws Exception {
+        DeviceFilter filter = service.filter("Route a 40 Gbps flow", snapshot);
+
+        JsonNode output = objectMapper.readTree(service.devicesJson(snapshot, filter));
+        assertTrue(output.get("preFilter").asText().contains("bandwidth >= 40 Gbps"));
+        assertEquals(3, output.get("devices").size());
+    }
+
+    @Test
+    void constraintDescriptionsUseTheDimensionUnit() {
+        assertEquals("bandwidth >= 0.8 Gbps", new NumericConstraint(SpecDimension.BANDWIDTH, true, 0.8).description());
+        assertEquals("cores >= 32", new NumericConstraint(SpecDimension.CORES, true, 32).description());
+    }
+}
@@ -0,0 +1,95 @@
+package org.caselli.comparativecognitiveworkflow.services;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.caselli.comparativecognitiveworkflow.model.InventorySnapshot;
+import org.caselli.comparativecognitiveworkflow.services.ContextPruningService.PrunedContext;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HierarchicalContextServiceTests {
+
+    // s - a - b - c - e, plus a dead-end branch s - x - y - z
+    private static final String TOPOLOGY = """
+            {
+              "topology": {
+                "nodes": [
+                  { "id": "s", "device": "modem-1", "start": true },
+                  { "id": "a", "device": "switch-1" },
+                  { "id": "b", "device": "dpu-1" },
+                  { "id": "c", "device": "switch-2" },
+                  { "id": "e", "device": "server-1", "end": true },
+                  { "id": "x", "device": "gpu-1" },
+                  { "id": "y", "device": "gpu-2" },
+                  { "id": "z", "device": "gpu-3" }
+                ],
+                "connections": [
+                  { "source": "s", "target": "a" },
+                  { "source": "a", "target": "b" },
+                  { "source": "b", "target": "c" },
+                  { "source": "c", "target": "e" },
+                  { "source": "s", "target": "x" },
+                  { "source": "x", "target": "y" },
+                  { "source": "y", "target": "z" }
+                ]
+              }
+            }
+            """;
+
+    private static final String DEVICES = """
+            [
+              { "id": "modem-1", "category": "Modem" },
+              { "id": "switch-1", "category": "Switch" },
+              { "id": "dpu-1", "category": "DPU" },
+              { "id": "switch-2", "category": "Switch" },
+              { "id": "server-1", "category": "CPU" },
+              { "id": "gpu-1", "category": "GPU" },
+              { "id": "gpu-2", "category": "GPU" },
+              { "id": "gpu-3", "category": "GPU" }
+            ]
+            """;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final InventorySnapshot snapshot = new InventorySnapshot(1, DEVICES, TOPOLOGY, Instant.now());
+
+    private final HierarchicalContextService service;
+
+    HierarchicalContextServiceTests() {
+        InventoryModelService models = new InventoryModelService(objectMapper, false, Set.of());
+        ContextPruningService pruning = new ContextPruningService(models, true, 2);
+        service = new HierarchicalContextService(models, pruning, objectMapper, true, 8, 2, 6);
+    }
+
+    @Test
+    void summaryDescribesRegionsAndLinks() throws Exception {
+        assertTrue(service.appliesTo(snapshot));
+
+        JsonNode summary = objectMapper.readTree(service.regionSummary(snapshot));
+
+        assertEquals(5, summary.get("regions").size());
+        assertEquals(4, summary.get("links").size());
+        JsonNode first = summary.get("regions").get(0);
+        assertTrue(first.path("start").asBoolean());
+        assertEquals(1, first.path("categories").path("Modem").asInt());
+    }
+
+    @Test
+    void expansionConnectsStartAndEndRegions() {
+        PrunedContext context = service.expand(snapshot, List.of("R1", "unknown"), null);
+
+        // R1 (x, y) is picked by the model, the regions of s-a, b-c and e are always needed, z is left out
+        assertEquals(7, context.report().nodesAfter());
+        assertFalse(context.networkTopology().contains("\"z\""));
+
+        context = service.expand(snapshot, List.of(), null);
+        assertEquals(5, context.report().nodesAfter());
+        assertTrue(context.networkTopology().contains("\"c\""));
+        assertFalse(context.networkTopology().contains("\"x\""));
+        assertFalse(context.devices().contains("gpu-1"));
+    }
+}
@@ -0,0 +1,148 @@
+package org.caselli.comparativecognitiveworkflow.services;
+
+import org.caselli.comparativecognitiveworkflow.model.InventorySnapshot;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InventoryCacheTests {
+
+    private final MutableClock clock = new MutableClock();
+
+    @Test
+    void servesCachedSnapshotUntilExpired() {
+        InventoryCache cache = new InventoryCache(Duration.ofSeconds(10), Long.MAX_VALUE, clock);
+        AtomicInteger downloads = new AtomicInteger();
+        Supplier<InventorySnapshot> loader = () -> {
+            downloads.incrementAndGet();
+            return snapshot("d", "t");
+        };
+
+        cache.get(loader);
+        cache.get(loader);
+        assertEquals(1, downloads.get());
+
+        clock.advance(Duration.ofSeconds(11));
+        cache.get(loader);
+        assertEquals(2, downloads.get());
+
+        InventoryCache.Stats stats = cache.stats();
+        assertEquals(1, stats.hits());
+        assertEquals(2, stats.misses());
+    }
+
+    @Test
+    void bumpsVersionOnlyWhenContentChanges() {
+        InventoryCache cache = new InventoryCache(Duration.ofSeconds(10), Long.MAX_VALUE, clock);
+
+        long first = cache.get(() -> snapshot("d", "t")).version();
+        cache.invalidate();
+        long unchanged = cache.get(() -> snapshot("d", "t")).version();
+        cache.invalidate();
+        long changed = cache.get(() -> snapshot("d", "t2")).version();
+
+        assertEquals(first, unchanged);
+        assertTrue(changed > first);
+    }
+
+    @Test
+    void doesNotRetainOversizedSnapshots() {
+        InventoryCache cache = new InventoryCache(Duration.ofSeconds(10), 4, clock);
+        AtomicInteger downloads = new AtomicInteger();
+
+        cache.get(() -> { downloads.incrementAndGet(); return snapshot("devices", "topology"); });
+        cache.get(() -> { downloads.incrementAndGet(); return snapshot("devices", "topology"); });
+
+        assertEquals(2, downloads.get());
+        assertEquals(2, cache.stats().oversized());
+        assertNull(cache.stats().cachedVersion());
+    }
+
+    @Test
+    void servesStaleSnapshotWhileRefreshingInBackground() {
+        List<Runnable> background = new ArrayList<>();
+        InventoryCache cache = new InventoryCache(Duration.ofSeconds(10), Long.MAX_VALUE, Duration.ofSeconds(60), background::add, clock);
+        AtomicInteger downloads = new AtomicInteger();
+        Supplier<InventorySnapshot> loader = () -> snapshot("d", "t" + downloads.incrementAndGet());
+
+        InventorySnapshot first = cache.get(loader);
+        clock.advance(Duration.ofSeconds(20));
+
+        // Stale: served at once, a single refresh is started
+        assertSame(first, cache.get(loader));
+        assertSame(first, cache.get(loader));
+        assertEquals(1, background.size());
+        assertEquals(1, downloads.get());
+
+        background.remove(0).run();
+        InventorySnapshot refreshed = cache.get(loader);
+        assertEquals("t2", refreshed.networkTopology());
+        assertTrue(refreshed.version() > first.version());
+        assertEquals(2, cache.stats().staleHits());
+
+        // A failed refresh keeps serving the stale snapshot, until it is too old
+        clock.advance(Duration.ofSeconds(20));
+        Supplier<InventorySnapshot> failing = () -> { throw new IllegalStateException("inventory down"); };
+        assertSame(refreshed, cache.get(failing));
+        background.remove(0).run();
+        assertSame(refreshed, cache.get(failing));
+
+        clock.advance(Duration.ofSeconds(60));
+        assertThrows(IllegalStateException.class, () -> cache.get(failing));
+    }
+
+    @Test
+    void restoresPersistedSnapshotsWithinTheStalenessAllowed() {
+        InventoryCache cache = new InventoryCache(Duration.ofSeconds(10), Long.MAX_VALUE, Duration.ofSeconds(60), Runnable::run, clock);
+        InventorySnapshot persisted = new InventorySnapshot(7, "d", "t", clock.instant().minusSeconds(30));
+
+        assertTrue(cache.restore(persisted));
+        // Expired at once: served while the refresh runs, and the version is kept if the content did not change
+        assertSame(persisted, cache.get(() -> snapshot("d", new String("t"))));
+        InventorySnapshot refreshed = cache.get(() -> snapshot("d", "t2"));
+        assertNotSame(persisted, refreshed);
+        assertEquals(7, refreshed.version());
+        assertEquals(1, cache.stats().misses());
+
+        InventoryCache other = new InventoryCache(Duration.ofSeconds(10), Long.MAX_VALUE, Duration.ofSeconds(60), Runnable::run, clock);
+        assertFalse(other.restore(new InventorySnapshot(7, "d", "t", clock.instant().minusSeconds(71))));
+        assertNull(other.stats().cachedVersion());
+    }
+
+    private InventorySnapshot snapshot(String devices, String topology) {
+        return new InventorySnapshot(0, devices, topology, clock.instant());
+    }
+
+    static class MutableClock extends Clock {
+        private Instant now = Instant.parse("2025-01-01T00:00:00Z");
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneOffset getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package org.caselli.comparativecognitiveworkflow.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.caselli.comparativecognitiveworkflow.model.*;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InventoryModelServiceTests {
+
+    private static final String TOPOLOGY = """
+            {
+              "network_topology": {
+                "version": 3,
+                "topology": {
+                  "connections": [
+                    { "source": "s", "target": "a", "bandwidth_gbps": 10, "latency_us": 5 },
+                    { "source": "a", "target": "e" },
+                    { "source": "s", "target": "b", "bandwidth_gbps": 100 },
+                    { "source": "b", "target": "x" },
+                    { "source": "b", "target": "e", "latency_ms": 1 }
+                  ],
+                  "nodes": [
+                    { "id": "s", "device": "modem-1", "start": true },
+                    { "id": "a", "devices": [ "switch-1" ], "location": { "rack": 4 } },
+                    { "id": "b", "devices": [ { "id": "dpu-1" } ] },
+                    { "id": "e", "device_id": "server-1", "end": true }
+                  ]
+                }
+              }
+            }
+            """;
+
+    private static final String DEVICES = """
+            {
+              "count": 4,
+              "devices": {
+                "modem-1": { "category": "Modem", "power_w": 10, "price": 100 },
+                "switch-1": { "type": "Switch", "latency_ns": 500 },
+                "dpu-1": { "category": "DPU", "ports": [ { "speed_gbps": 100 }, { "speed_gbps": 100 } ], "max_power_w": 75 },
+                "server-1": { "protocols": [ "RoCE v2" ] }
+              }
+            }
+            """;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final InventoryModelService service = new InventoryModelService(objectMapper, false, Set.of("price"));
+
+    private static InventorySnapshot snapshot(long version) {
+        return new InventorySnapshot(version, DEVICES, TOPOLOGY, Instant.now());
+    }
+
+    @Test
+    void buildsTheModelFromTheStreamedDocuments() {
+        InventoryModel model = service.modelFor(snapshot(1));
+
+        NetworkGraph graph = model.graph();
+        // x is only referenced by a connection
+        assertEquals(5, graph.size());
+        // Undirected: both directions of the five connections
+        assertEquals(10, graph.edgeCount());
+        assertEquals(3, graph.degree(graph.ordinal("b")));
+        assertEquals(1, graph.degree(graph.ordinal("x")));
+        assertTrue(graph.hasEdge(graph.ordinal("e"), graph.ordinal("b")));
+        assertEquals(List.of("s"), graph.ids(graph.startNodes()));
+        assertEquals(List.of("e"), graph.ids(graph.endNodes()));
+        assertEquals(List.of("modem-1"), graph.devicesOf(graph.ordinal("s")));
+        assertEquals(List.of("switch-1"), graph.devicesOf(graph.ordinal("a")));
+        assertEquals(List.of("dpu-1"), graph.devicesOf(graph.ordinal("b")));
+        assertEquals(List.of("server-1"), graph.devicesOf(graph.ordinal("e")));
+
+        int s = graph.ordinal("s"), a = graph.ordinal("a"), b = graph.ordinal("b"), e = graph.ordinal("e");
+        assertEquals(10, model.links().bandwidth(s, a));
+        assertEquals(5, model.links().latency(a, s));
+        assertEquals(100, model.links().bandwidth(b, s));
+        assertEquals(1000, model.links().latency(e, b));
+
+        DeviceIndex devices = model.devices();
+        assertEquals(List.of("modem-1", "switch-1", "dpu-1", "server-1"), List.copyOf(devices.deviceIds()));
+        assertEquals(200, devices.spec("dpu-1", SpecDimension.BANDWIDTH));
+        assertEquals(75, devices.spec("dpu-1", SpecDimension.POWER));
+        assertEquals(10, devices.spec("modem-1", SpecDimension.POWER));
+        assertTrue(Double.isNaN(devices.spec("server-1", SpecDimension.POWER)));
+        assertEquals("Switch", devices.category("switch-1"));
+        assertNull(devices.category("server-1"));
+        assertEquals(Set.of("server-1"), devices.mentioning("rocev2"));
+    }
+
+    @Test
+    void reSerializesCompactFragments() {
+        PromptInventory prompt = service.modelFor(snapshot(1)).prompt();
+
+        boolean[] all = new boolean[5];
+        Arrays.fill(all, true);
+        String topology = prompt.topologyJson(all);
+        assertFalse(topology.contains(" "));
+        assertTrue(topology.contains("{\"id\":\"x\"}"));
+        assertTrue(topology.contains("\"location\":{\"rack\":4}"));
+        assertTrue(topology.contains("\"connections\":["));
+
+        String devices = prompt.devicesJson(Set.of("modem-1"));
+        assertEquals("[{\"id\":\"modem-1\",\"category\":\"Modem\",\"power_w\":10}]", devices);
+    }
+
+    @Test
+    void buildsTheModelOncePerVersion() {
+        InventoryModel first = service.modelFor(snapshot(1));
+        assertSame(first, service.modelFor(snapshot(1)));
+        assertSame(first.graph(), service.graphFor(snapshot(1)));
+
+        InventoryModel next = service.modelFor(snapshot(2));
+        assertNotSame(first, next);
+        assertEquals(2, next.version());
+
+        // The previous version is kept for the requests still working on it, older ones are dropped
+        assertSame(first, service.modelFor(snapshot(1)));
+        InventoryModel third = service.modelFor(snapshot(3));
+        assertSame(third, service.modelFor(snapshot(3)));
+        assertSame(first, service.modelFor(snapshot(1)));
+        assertNotSame(next, service.modelFor(snapshot(2)));
+    }
+
+    @Test
+    void acceptsDeviceListsAndRejectsInvalidJson() {
+        InventorySnapshot listed = new InventorySnapshot(1, "[ { \"device_id\": \"d1\", \"kind\": \"GPU\" }, { \"cores\": 8 } ]",
+                "{\"nodes\": [\"d\"], \"links\": [[\"d\", \"f\"]]}", Instant.now());
+        InventoryModel model = service.modelFor(listed);
+
+        assertEquals(Set.of("d1", "#1"), model.devices().deviceIds());
+        assertEquals("GPU", model.devices().category("d1"));
+        assertEquals(8, model.devices().spec("#1", SpecDimension.CORES));
+        assertEquals(2, model.graph().size());
+        assertTrue(model.prompt().topologyJson(new boolean[]{ true, true }).contains("\"links\":[[\"d\",\"f\"]]"));
+
+        InventorySnapshot broken = new InventorySnapshot(2, "[]", "{\"nodes\": [", Instant.now());
+        assertThrows(IllegalArgumentException.class, () -> service.modelFor(broken));
+    }
+}
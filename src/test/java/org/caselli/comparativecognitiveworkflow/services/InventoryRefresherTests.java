@@ -0,0 +1,169 @@
+package org.caselli.comparativecognitiveworkflow.services;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.caselli.comparativecognitiveworkflow.model.InventoryDeltas;
+import org.caselli.comparativecognitiveworkflow.model.NetworkGraph;
+import org.caselli.comparativecognitiveworkflow.model.TestInventories;
+import org.caselli.comparativecognitiveworkflow.services.InventoryRefresher.Response;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InventoryRefresherTests {
+
+    private static final String TOPOLOGY = """
+            {"topology": {
+              "nodes": [ {"id": "A", "start": true}, {"id": "B"}, {"id": "C"}, {"id": "D", "end": true} ],
+              "connections": [ {"source": "A", "target": "B"}, {"source": "B", "target": "D"}, {"source": "A", "target": "C"} ]
+            }}""";
+
+    private static final BiConsumer<JsonNode, JsonNode> UNDIRECTED = (root, delta) -> InventoryDeltas.applyToTopology(root, delta, false);
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    /**
+     * Inventory service answering from a table of responses by path, recording the requests
+     */
+    private static class FakeBackend implements InventoryRefresher.Transport {
+        final Map<String, Response> responses = new HashMap<>();
+        final List<String> requests = new ArrayList<>();
+
+        @Override
+        public Response get(String path, String since, String etag, String lastModified) {
+            requests.add(path + (since != null ? "?since=" + since : "") + (etag != null ? " If-None-Match " + etag : ""));
+            Response response = responses.get(path);
+            if (response == null) return new Response(404, "", null, null);
+            return etag != null && etag.equals(response.etag()) && !path.endsWith("/delta") ? new Response(304, "", etag, null) : response;
+        }
+    }
+
+    private InventoryRefresher refresher(FakeBackend backend, boolean deltas) {
+        return new InventoryRefresher(backend, objectMapper, registry, true, deltas, Long.MAX_VALUE);
+    }
+
+    private double refreshes(String outcome) {
+        var counter = registry.find("ai4ne.inventory.refreshes").tags("outcome", outcome).counter();
+        return counter == null ? 0 : counter.count();
+    }
+
+    @Test
+    void keepsThePreviousDocumentWhenNotModified() {
+        FakeBackend backend = new FakeBackend();
+        backend.responses.put("/network_topology", new Response(200, TOPOLOGY, "\"v1\"", null));
+        InventoryRefresher refresher = refresher(backend, false);
+
+        String first = refresher.fetch("/network_topology", UNDIRECTED);
+        String second = refresher.fetch("/network_topology", UNDIRECTED);
+
+        assertSame(first, second);
+        assertEquals(List.of("/network_topology", "/network_topology If-None-Match \"v1\""), backend.requests);
+        assertEquals(1, refreshes(InventoryRefresher.FULL));
+        assertEquals(1, refreshes(InventoryRefresher.NOT_MODIFIED));
+
+        refresher.reset();
+        refresher.fetch("/network_topology", UNDIRECTED);
+        assertEquals("/network_topology", backend.requests.get(2));
+    }
+
+    @Test
+    void appliesTopologyDeltas() {
+        FakeBackend backend = new FakeBackend();
+        backend.responses.put("/network_topology", new Response(200, TOPOLOGY, "\"v1\"", null));
+        InventoryRefresher refresher = refresher(backend, true);
+        refresher.fetch("/network_topology", UNDIRECTED);
+
+        backend.responses.put("/network_topology/delta", new Response(200, """
+                {"nodes": {"upserted": [ {"id": "E"}, {"id": "B", "devices": ["dev-b2"]} ], "removed": ["C"]},
+                 "connections": {"added": [ {"source": "B", "target": "E"} ], "removed": [ {"source": "D", "target": "B"} ]}}""", "\"v2\"", null));
+        NetworkGraph graph = TestInventories.graph(refresher.fetch("/network_topology", UNDIRECTED));
+
+        assertEquals("/network_topology/delta?since=\"v1\"", backend.requests.get(1));
+        assertEquals(2, backend.requests.size());
+        assertEquals(4, graph.size());
+        assertEquals(-1, graph.ordinal("C"));
+        assertTrue(graph.hasEdge(graph.ordinal("B"), graph.ordinal("E")));
+        assertFalse(graph.hasEdge(graph.ordinal("B"), graph.ordinal("D")));
+        assertEquals(List.of("dev-b2"), graph.devicesOf(graph.ordinal("B")));
+        assertEquals(1, refreshes(InventoryRefresher.DELTA));
+
+        // The next delta is asked from the new version
+        backend.responses.put("/network_topology/delta", new Response(304, "", "\"v2\"", null));
+        refresher.fetch("/network_topology", UNDIRECTED);
+        assertEquals("/network_topology/delta?since=\"v2\"", backend.requests.get(2));
+    }
+
+    @Test
+    void removesOnlyTheGivenDirectionOfADirectedTopology() throws Exception {
+        JsonNode delta = objectMapper.readTree("""
+                {"connections": {"removed": [ {"source": "D", "target": "B"}, {"source": "A", "target": "C"} ]}}""");
+
+        JsonNode directed = objectMapper.readTree(TOPOLOGY);
+        InventoryDeltas.applyToTopology(directed, delta, true);
+        assertEquals(2, directed.path("topology").path("connections").size());
+        assertEquals("B", directed.path("topology").path("connections").get(1).path("source").asText());
+
+        JsonNode undirected = objectMapper.readTree(TOPOLOGY);
+        InventoryDeltas.applyToTopology(undirected, delta, false);
+        assertEquals(1, undirected.path("topology").path("connections").size());
+    }
+
+    @Test
+    void appliesDeviceDeltasToListsAndMaps() throws Exception {
+        JsonNode list = objectMapper.readTree("""
+                [ {"id": "d1", "bandwidth_gbps": 10}, {"id": "d2", "bandwidth_gbps": 10} ]""");
+        InventoryDeltas.applyToDevices(list, objectMapper.readTree("""
+                {"upserted": [ {"id": "d2", "bandwidth_gbps": 40}, {"id": "d3"} ], "removed": ["d1"]}"""));
+
+        assertEquals(List.of("d2", "d3"), List.copyOf(TestInventories.devices(list.toString()).deviceIds()));
+        assertEquals(40, list.get(0).path("bandwidth_gbps").asInt());
+
+        JsonNode map = objectMapper.readTree("""
+                {"devices": {"d1": {"category": "GPU"}, "d2": {"category": "CPU"}}}""");
+        InventoryDeltas.applyToDevices(map, objectMapper.readTree("""
+                {"upserted": [ {"id": "d3", "category": "DPU"} ], "removed": ["d2"]}"""));
+        assertEquals(List.of("d1", "d3"), List.copyOf(TestInventories.devices(map.toString()).deviceIds()));
+    }
+
+    @Test
+    void fallsBackToConditionalDownloadsWithoutDeltas() {
+        FakeBackend backend = new FakeBackend();
+        backend.responses.put("/devices", new Response(200, "[{\"id\": \"d1\"}]", "\"v1\"", null));
+        InventoryRefresher refresher = refresher(backend, true);
+        refresher.fetch("/devices", InventoryDeltas::applyToDevices);
+
+        // No delta endpoint: asked once, then only conditional requests
+        refresher.fetch("/devices", InventoryDeltas::applyToDevices);
+        refresher.fetch("/devices", InventoryDeltas::applyToDevices);
+        assertEquals(List.of("/devices", "/devices/delta?since=\"v1\"", "/devices If-None-Match \"v1\"", "/devices If-None-Match \"v1\""),
+                backend.requests);
+    }
+
+    @Test
+    void downloadsInFullWhenTheDeltaDoesNotApply() {
+        FakeBackend backend = new FakeBackend();
+        backend.responses.put("/network_topology", new Response(200, TOPOLOGY, "\"v1\"", null));
+        InventoryRefresher refresher = refresher(backend, true);
+        refresher.fetch("/network_topology", UNDIRECTED);
+
+        backend.responses.put("/network_topology/delta", new Response(200, "{\"connections\": {\"added\": [ {\"source\": \"A\"} ]}}", "\"v2\"", null));
+        backend.responses.put("/network_topology", new Response(200, TOPOLOGY.replace("\"C\"", "\"X\""), "\"v2\"", null));
+
+        String body = refresher.fetch("/network_topology", UNDIRECTED);
+        assertTrue(body.contains("\"X\""));
+        assertEquals("/network_topology If-None-Match \"v1\"", backend.requests.get(2));
+
+        backend.responses.put("/network_topology", new Response(500, "", null, null));
+        backend.responses.remove("/network_topology/delta");
+        refresher.reset();
+        assertThrows(IllegalStateException.class, () -> refresher.fetch("/network_topology", UNDIRECTED));
+    }
+}
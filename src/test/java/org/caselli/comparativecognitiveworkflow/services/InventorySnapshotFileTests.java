@@ -0,0 +1,63 @@
+package org.caselli.comparativecognitiveworkflow.services;
+
+import org.caselli.comparativecognitiveworkflow.services.InventorySnapshotFile.Document;
+import org.caselli.comparativecognitiveworkflow.services.InventorySnapshotFile.Persisted;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InventorySnapshotFileTests {
+
+    @TempDir
+    Path directory;
+
+    private static Persisted persisted(long version, String topology) {
+        return new Persisted(version, Instant.parse("2025-01-01T00:00:00Z"),
+                new Document("[{\"id\": \"dpu-1\", \"vendor\": \"Société\"}]", "\"d1\"", null),
+                new Document(topology, "\"t1\"", "Wed, 01 Jan 2025 00:00:00 GMT"));
+    }
+
+    @Test
+    void roundTripsTheSnapshotAndItsValidators() throws Exception {
+        InventorySnapshotFile file = new InventorySnapshotFile(directory.resolve("inventory.snapshot"));
+        assertTrue(file.load().isEmpty());
+
+        file.save(persisted(3, "{\"nodes\": []}"));
+        assertEquals(persisted(3, "{\"nodes\": []}"), file.load().orElseThrow());
+
+        // Replaced by the next version
+        file.save(persisted(4, "{\"nodes\": [\"a\"]}"));
+        Persisted loaded = file.load().orElseThrow();
+        assertEquals(4, loaded.version());
+        assertEquals("{\"nodes\": [\"a\"]}", loaded.snapshot().networkTopology());
+        assertNull(loaded.devices().lastModified());
+        try (var files = Files.list(directory)) {
+            assertEquals(1, files.count());
+        }
+    }
+
+    @Test
+    void ignoresCorruptedAndTruncatedFiles() throws Exception {
+        Path path = directory.resolve("inventory.snapshot");
+        InventorySnapshotFile file = new InventorySnapshotFile(path);
+        file.save(persisted(3, "{\"nodes\": []}"));
+        byte[] bytes = Files.readAllBytes(path);
+
+        byte[] corrupted = bytes.clone();
+        corrupted[bytes.length / 2] ^= 1;
+        Files.write(path, corrupted);
+        assertTrue(file.load().isEmpty());
+
+        Files.write(path, Arrays.copyOf(bytes, bytes.length - 10));
+        assertTrue(file.load().isEmpty());
+
+        Files.writeString(path, "{}");
+        assertTrue(file.load().isEmpty());
+    }
+}
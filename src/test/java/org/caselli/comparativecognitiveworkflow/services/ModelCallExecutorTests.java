@@ -0,0 +1,91 @@
+package org.caselli.comparativecognitiveworkflow.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.caselli.comparativecognitiveworkflow.services.ModelCallExecutor.ModelCallTimeoutException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.retry.NonTransientAiException;
+import org.springframework.ai.retry.TransientAiException;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ModelCallExecutorTests {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private ModelCallExecutor executor;
+
+    @AfterEach
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    private ModelCallExecutor executor(long timeoutMs, boolean hedge) {
+        MockEnvironment environment = new MockEnvironment().withProperty("ai4ne.models.reasoning-llm.timeout-ms", "150");
+        executor = new ModelCallExecutor(environment, registry, 4, timeoutMs, 3, 1, 5, hedge, 95, 3);
+        return executor;
+    }
+
+    @Test
+    void retriesTransientErrorsOnly() {
+        ModelCallExecutor executor = executor(5000, false);
+        AtomicInteger calls = new AtomicInteger();
+
+        String result = executor.call(RoutingStrategy.SIMPLE_LLM, true, () -> {
+            if (calls.incrementAndGet() < 3) throw new TransientAiException("503 Service Unavailable");
+            return "ok";
+        });
+
+        assertEquals("ok", result);
+        assertEquals(2, registry.get("ai4ne.model.retries").tags("strategy", "SIMPLE_LLM").counter().count());
+
+        AtomicInteger rejected = new AtomicInteger();
+        assertThrows(NonTransientAiException.class, () -> executor.call(RoutingStrategy.SIMPLE_LLM, true, () -> {
+            rejected.incrementAndGet();
+            throw new NonTransientAiException("400 Bad Request");
+        }));
+        assertEquals(1, rejected.get());
+    }
+
+    @Test
+    void failsOnTheDeadlineOfTheStrategy() {
+        ModelCallExecutor executor = executor(5000, false);
+
+        assertThrows(ModelCallTimeoutException.class, () -> executor.call(RoutingStrategy.REASONING_LLM, true, () -> {
+            sleep(2000);
+            return "late";
+        }));
+        assertEquals(1, registry.get("ai4ne.model.calls").tags("strategy", "REASONING_LLM", "outcome", "timeout").timer().count());
+    }
+
+    @Test
+    void hedgesCallsSlowerThanThePercentile() {
+        ModelCallExecutor executor = executor(5000, true);
+        for (int i = 0; i < 3; i++) executor.call(RoutingStrategy.SIMPLE_LLM, true, () -> { sleep(20); return "warm"; });
+        assertTrue(executor.hedgeDelayNanos(RoutingStrategy.SIMPLE_LLM) > 0);
+
+        AtomicInteger calls = new AtomicInteger();
+        String result = executor.call(RoutingStrategy.SIMPLE_LLM, true, () -> {
+            // The first call is stuck, the hedge answers normally
+            if (calls.incrementAndGet() == 1) sleep(3000);
+            return "call " + calls.get();
+        });
+
+        assertEquals("call 2", result);
+        assertEquals(1, registry.get("ai4ne.model.hedges").tags("winner", ModelCallExecutor.HEDGE).counter().count());
+
+        AtomicInteger toolCalls = new AtomicInteger();
+        executor.call(RoutingStrategy.SIMPLE_LLM, false, () -> { toolCalls.incrementAndGet(); sleep(200); return "tools"; });
+        assertEquals(1, toolCalls.get());
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
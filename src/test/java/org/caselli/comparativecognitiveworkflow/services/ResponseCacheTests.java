@@ -0,0 +1,56 @@
+package org.caselli.comparativecognitiveworkflow.services;
+
+import org.caselli.comparativecognitiveworkflow.services.AI4NeService.RouteResponse;
+import org.caselli.comparativecognitiveworkflow.services.InventoryCacheTests.MutableClock;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResponseCacheTests {
+
+    private final MutableClock clock = new MutableClock();
+
+    @Test
+    void normalizedRequestsShareTheEntryUntilExpired() {
+        ResponseCache cache = new ResponseCache(true, 10, Duration.ofMinutes(1), clock);
+        RouteResponse response = new RouteResponse();
+
+        cache.put(RoutingStrategy.SIMPLE_LLM, "Route  via a DPU\n", 1, response);
+
+        assertSame(response, cache.get(RoutingStrategy.SIMPLE_LLM, "route via a dpu", 1));
+        assertNull(cache.get(RoutingStrategy.REASONING_LLM, "route via a dpu", 1));
+
+        clock.advance(Duration.ofMinutes(2));
+        assertNull(cache.get(RoutingStrategy.SIMPLE_LLM, "route via a dpu", 1));
+        assertEquals(1, cache.stats().expirations());
+    }
+
+    @Test
+    void newerSnapshotVersionDropsOutdatedEntries() {
+        ResponseCache cache = new ResponseCache(true, 10, Duration.ofMinutes(1), clock);
+        cache.put(RoutingStrategy.SIMPLE_LLM, "a", 1, new RouteResponse());
+        cache.put(RoutingStrategy.SIMPLE_LLM, "b", 1, new RouteResponse());
+
+        assertNull(cache.get(RoutingStrategy.SIMPLE_LLM, "a", 2));
+        assertEquals(0, cache.size());
+
+        // Computed on the old snapshot while the new one was already in use
+        cache.put(RoutingStrategy.SIMPLE_LLM, "b", 1, new RouteResponse());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void evictsLeastRecentlyUsed() {
+        ResponseCache cache = new ResponseCache(true, 2, Duration.ofMinutes(1), clock);
+        cache.put(RoutingStrategy.SIMPLE_LLM, "a", 1, new RouteResponse());
+        cache.put(RoutingStrategy.SIMPLE_LLM, "b", 1, new RouteResponse());
+        cache.get(RoutingStrategy.SIMPLE_LLM, "a", 1);
+        cache.put(RoutingStrategy.SIMPLE_LLM, "c", 1, new RouteResponse());
+
+        assertNotNull(cache.get(RoutingStrategy.SIMPLE_LLM, "a", 1));
+        assertNull(cache.get(RoutingStrategy.SIMPLE_LLM, "b", 1));
+        assertEquals(1, cache.stats().evictions());
+    }
+}
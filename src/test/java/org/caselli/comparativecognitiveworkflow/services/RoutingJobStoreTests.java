@@ -0,0 +1,50 @@
+package org.caselli.comparativecognitiveworkflow.services;
+
+import org.caselli.comparativecognitiveworkflow.services.AI4NeService.RouteResponse;
+import org.caselli.comparativecognitiveworkflow.services.InventoryCacheTests.MutableClock;
+import org.caselli.comparativecognitiveworkflow.services.RoutingJobStore.RoutingJob;
+import org.caselli.comparativecognitiveworkflow.services.RoutingJobStore.Status;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RoutingJobStoreTests {
+
+    private final MutableClock clock = new MutableClock();
+
+    @Test
+    void tracksTheLifecycleAndExpiresFinishedJobs() {
+        RoutingJobStore store = new RoutingJobStore(10, Duration.ofMinutes(1), clock);
+        RoutingJob job = store.create(RoutingStrategy.SIMPLE_LLM, "route via a dpu", null).orElseThrow();
+        assertEquals(Status.QUEUED, job.status());
+
+        assertEquals(Status.RUNNING, store.started(job.id()).status());
+        RouteResponse result = new RouteResponse();
+        RoutingJob finished = store.finished(job.id(), result, null);
+        assertEquals(Status.SUCCEEDED, finished.status());
+        assertSame(result, store.get(job.id()).orElseThrow().result());
+
+        clock.advance(Duration.ofMinutes(2));
+        assertTrue(store.get(job.id()).isEmpty());
+    }
+
+    @Test
+    void makesRoomByEvictingTheOldestFinishedJob() {
+        RoutingJobStore store = new RoutingJobStore(2, Duration.ofMinutes(1), clock);
+        RoutingJob first = store.create(RoutingStrategy.SIMPLE_LLM, "a", null).orElseThrow();
+        RoutingJob second = store.create(RoutingStrategy.SIMPLE_LLM, "b", null).orElseThrow();
+
+        // Full of unfinished jobs
+        assertTrue(store.create(RoutingStrategy.SIMPLE_LLM, "c", null).isEmpty());
+
+        store.finished(second.id(), null, "model unavailable");
+        RoutingJob third = store.create(RoutingStrategy.SIMPLE_LLM, "c", null).orElseThrow();
+
+        assertTrue(store.get(second.id()).isEmpty());
+        assertTrue(store.get(first.id()).isPresent());
+        assertTrue(store.get(third.id()).isPresent());
+        assertEquals(2, store.size());
+    }
+}
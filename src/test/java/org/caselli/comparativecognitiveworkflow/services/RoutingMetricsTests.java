@@ -0,0 +1,37 @@
+package org.caselli.comparativecognitiveworkflow.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RoutingMetricsTests {
+
+    @Test
+    void publishesPhasesToolsAndFailedPhase() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        RoutingMetrics metrics = new RoutingMetrics(registry);
+
+        RoutingTrace trace = new RoutingTrace(RoutingStrategy.FUNCTION_CALLING);
+        trace.addPhase("model", 120);
+        trace.addPhase("tool:route", 15);
+        trace.addToolCall(new RoutingTrace.ToolCall("route", "{}", 15, 2, 4096, ToolCallSession.EXECUTED));
+        metrics.record(trace);
+
+        assertEquals(1, registry.get("ai4ne.routing.phase").tags("strategy", "FUNCTION_CALLING", "phase", "model").timer().count());
+        assertEquals(15, registry.get("ai4ne.routing.tool").tags("tool", "route").timer().totalTime(TimeUnit.MILLISECONDS));
+        assertEquals(1, registry.get("ai4ne.routing.tool.calls").tags("tool", "route", "outcome", "executed").counter().count());
+        assertEquals(4096, registry.get("ai4ne.routing.tool.result").summary().totalAmount());
+
+        RoutingTrace failed = new RoutingTrace(RoutingStrategy.SIMPLE_LLM);
+        IllegalStateException error = new IllegalStateException("unparsable");
+        assertThrows(IllegalStateException.class, () -> failed.time("parsing", () -> { throw error; }));
+        metrics.recordFailure(failed, error);
+
+        assertEquals(1, registry.get("ai4ne.routing.errors")
+                .tags("strategy", "SIMPLE_LLM", "phase", "parsing", "exception", "IllegalStateException").counter().count());
+        assertEquals(1, registry.get("ai4ne.routing.requests").tags("outcome", "error").timer().count());
+    }
+}
@@ -0,0 +1,92 @@
+package org.caselli.comparativecognitiveworkflow.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SingleFlightTests {
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @Test
+    void concurrentCallersShareOneComputation() throws Exception {
+        SingleFlight<String, String> flight = new SingleFlight<>();
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger computations = new AtomicInteger();
+
+        Future<SingleFlight.Result<String>> leader = executor.submit(() -> flight.execute("k", () -> {
+            computations.incrementAndGet();
+            await(release);
+            return "route";
+        }));
+        waitUntilInFlight(flight);
+        Future<SingleFlight.Result<String>> follower = executor.submit(() -> flight.execute("k", () -> "other"));
+
+        Thread.sleep(50);
+        release.countDown();
+
+        assertFalse(leader.get(5, TimeUnit.SECONDS).shared());
+        assertEquals("route", follower.get(5, TimeUnit.SECONDS).value());
+        assertTrue(follower.get().shared());
+        assertEquals(1, computations.get());
+        assertEquals(0, flight.inFlight());
+    }
+
+    @Test
+    void failureIsPropagatedToWaitingCallers() throws Exception {
+        SingleFlight<String, String> flight = new SingleFlight<>();
+        CountDownLatch release = new CountDownLatch(1);
+
+        Future<?> leader = executor.submit(() -> flight.execute("k", () -> {
+            await(release);
+            throw new IllegalStateException("model unavailable");
+        }));
+        waitUntilInFlight(flight);
+        Future<SingleFlight.Result<String>> follower = executor.submit(() -> flight.execute("k", () -> "other"));
+
+        Thread.sleep(50);
+        release.countDown();
+
+        ExecutionException leaderError = assertThrows(ExecutionException.class, () -> leader.get(5, TimeUnit.SECONDS));
+        ExecutionException followerError = assertThrows(ExecutionException.class, () -> follower.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(IllegalStateException.class, leaderError.getCause());
+        assertInstanceOf(IllegalStateException.class, followerError.getCause());
+    }
+
+    @Test
+    void waitingCallerTakesOverWhenTheLeaderIsCancelled() throws Exception {
+        SingleFlight<String, String> flight = new SingleFlight<>();
+        CountDownLatch release = new CountDownLatch(1);
+
+        Future<?> leader = executor.submit(() -> flight.execute("k", () -> {
+            await(release);
+            throw new CancellationException("client went away");
+        }));
+        waitUntilInFlight(flight);
+        Future<SingleFlight.Result<String>> follower = executor.submit(() -> flight.execute("k", () -> "recomputed"));
+
+        Thread.sleep(50);
+        release.countDown();
+
+        assertThrows(ExecutionException.class, () -> leader.get(5, TimeUnit.SECONDS));
+        SingleFlight.Result<String> result = follower.get(5, TimeUnit.SECONDS);
+        assertEquals("recomputed", result.value());
+        assertFalse(result.shared());
+    }
+
+
+    private static void waitUntilInFlight(SingleFlight<?, ?> flight) throws InterruptedException {
+        while (flight.inFlight() == 0) Thread.sleep(5);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
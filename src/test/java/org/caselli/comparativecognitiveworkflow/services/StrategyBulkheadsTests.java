@@ -0,0 +1,132 @@
+package org.caselli.comparativecognitiveworkflow.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.caselli.comparativecognitiveworkflow.services.StrategyBulkheads.Bulkhead;
+import org.caselli.comparativecognitiveworkflow.services.StrategyBulkheads.OverloadedException;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.env.MockEnvironment;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StrategyBulkheadsTests {
+
+    private static final long WAIT = TimeUnit.SECONDS.toNanos(5);
+
+    @Test
+    void rejectsAtOnceWhenTheQueueIsFull() {
+        Bulkhead bulkhead = new Bulkhead(1, 0, false, 1, 1, 2.0);
+
+        assertNull(bulkhead.acquire(WAIT));
+        assertEquals(StrategyBulkheads.QUEUE_FULL, bulkhead.acquire(WAIT));
+
+        bulkhead.release(1_000_000, true);
+        assertNull(bulkhead.acquire(WAIT));
+    }
+
+    @Test
+    void admitsAWaiterOnRelease() throws Exception {
+        Bulkhead bulkhead = new Bulkhead(1, 1, false, 1, 1, 2.0);
+        assertNull(bulkhead.acquire(WAIT));
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<String> waiter = executor.submit(() -> bulkhead.acquire(WAIT));
+            while (bulkhead.waiting() == 0) Thread.sleep(5);
+            assertEquals(StrategyBulkheads.QUEUE_FULL, bulkhead.acquire(WAIT));
+
+            bulkhead.release(1_000_000, true);
+            assertNull(waiter.get(5, TimeUnit.SECONDS));
+            assertEquals(1, bulkhead.inFlight());
+            assertEquals(0, bulkhead.waiting());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void queuedWorkWaitsWithoutTimeoutAfterTheInteractiveRequests() throws Exception {
+        Bulkhead bulkhead = new Bulkhead(1, 1, false, 1, 1, 2.0);
+        assertNull(bulkhead.acquire(WAIT));
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> queued = executor.submit(bulkhead::acquireQueued);
+            Thread.sleep(50);
+            Future<String> interactive = executor.submit(() -> bulkhead.acquire(WAIT));
+            while (bulkhead.waiting() == 0) Thread.sleep(5);
+
+            bulkhead.release(1_000_000, true);
+            assertNull(interactive.get(5, TimeUnit.SECONDS));
+            assertFalse(queued.isDone());
+
+            bulkhead.release(1_000_000, true);
+            queued.get(5, TimeUnit.SECONDS);
+            assertEquals(1, bulkhead.inFlight());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void timesOutWithRetryAfter() {
+        MockEnvironment environment = new MockEnvironment()
+                .withProperty("ai4ne.bulkheads.reasoning-llm.limit", "1")
+                .withProperty("ai4ne.bulkheads.reasoning-llm.queue-capacity", "1");
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        StrategyBulkheads bulkheads = new StrategyBulkheads(environment, registry, true, 8, 16, 50, false, 2, 32, 2.0);
+        assertNull(bulkheads.bulkhead(RoutingStrategy.REASONING_LLM).acquire(WAIT));
+
+        OverloadedException e = assertThrows(OverloadedException.class,
+                () -> bulkheads.run(RoutingStrategy.REASONING_LLM, () -> "never"));
+
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, e.getStatusCode());
+        assertNotNull(e.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+        assertEquals(1, registry.get("ai4ne.bulkhead.rejections").tags("strategy", "REASONING_LLM", "reason", StrategyBulkheads.WAIT_TIMEOUT).counter().count());
+        // Other strategies are not affected
+        assertEquals("ok", bulkheads.run(RoutingStrategy.SIMPLE_LLM, () -> "ok"));
+    }
+
+    @Test
+    void streamsTakeTheSlotOnlyWhileSubscribed() {
+        MockEnvironment environment = new MockEnvironment()
+                .withProperty("ai4ne.bulkheads.simple-llm.limit", "1")
+                .withProperty("ai4ne.bulkheads.simple-llm.queue-capacity", "0");
+        StrategyBulkheads bulkheads = new StrategyBulkheads(environment, new SimpleMeterRegistry(), true, 8, 16, 50, false, 2, 32, 2.0);
+        Bulkhead bulkhead = bulkheads.bulkhead(RoutingStrategy.SIMPLE_LLM);
+
+        Flux<String> neverSubscribed = bulkheads.stream(RoutingStrategy.SIMPLE_LLM, () -> Flux.just("never"));
+        assertEquals(0, bulkhead.inFlight());
+
+        Flux<String> stream = bulkheads.stream(RoutingStrategy.SIMPLE_LLM, () -> Flux.just("a", "b"));
+        assertEquals(List.of("a", "b"), stream.collectList().block());
+        assertEquals(0, bulkhead.inFlight());
+
+        assertNull(bulkhead.acquire(WAIT));
+        assertThrows(OverloadedException.class, () -> neverSubscribed.blockLast());
+    }
+
+    @Test
+    void adaptiveLimitShrinksOnSlowResponsesAndRecovers() {
+        Bulkhead bulkhead = new Bulkhead(10, 0, true, 2, 20, 2.0);
+        long fast = TimeUnit.MILLISECONDS.toNanos(100);
+
+        for (int i = 0; i < 5; i++) bulkhead.release(fast, true);
+        double steady = bulkhead.limit();
+        assertTrue(steady > 10);
+
+        for (int i = 0; i < 5; i++) bulkhead.release(fast * 10, true);
+        assertTrue(bulkhead.limit() < steady * 0.65);
+
+        for (int i = 0; i < 50; i++) bulkhead.release(1000 * 1000 * 1000L, false);
+        assertEquals(2, bulkhead.limit());
+
+        for (int i = 0; i < 20; i++) bulkhead.release(fast, true);
+        assertTrue(bulkhead.limit() > 2);
+    }
+}
@@ -0,0 +1,36 @@
+package org.caselli.comparativecognitiveworkflow.services;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.openai.OpenAiChatOptions;
+import org.springframework.mock.env.MockEnvironment;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StrategyChatOptionsTests {
+
+    @Test
+    void readsTheOptionsOfEachStrategy() {
+        MockEnvironment environment = new MockEnvironment()
+                .withProperty("ai4ne.models.simple-llm.model", "")
+                .withProperty("ai4ne.models.cascade.model", "gpt-4.1-mini")
+                .withProperty("ai4ne.models.cascade.temperature", "0")
+                .withProperty("ai4ne.models.cascade.max-tokens", "2048")
+                .withProperty("ai4ne.models.reasoning-llm.model", "o4-mini")
+                .withProperty("ai4ne.models.reasoning-llm.reasoning-effort", "medium")
+                .withProperty("ai4ne.models.reasoning-llm.max-tokens", "8192");
+
+        StrategyChatOptions options = new StrategyChatOptions(environment);
+
+        assertNull(options.of(RoutingStrategy.SIMPLE_LLM));
+
+        OpenAiChatOptions cascade = (OpenAiChatOptions) options.of(RoutingStrategy.CASCADE);
+        assertEquals("gpt-4.1-mini", cascade.getModel());
+        assertEquals(0.0, cascade.getTemperature());
+        assertEquals(2048, cascade.getMaxTokens());
+
+        OpenAiChatOptions reasoning = (OpenAiChatOptions) options.of(RoutingStrategy.REASONING_LLM);
+        assertEquals("medium", reasoning.getReasoningEffort());
+        assertEquals(8192, reasoning.getMaxCompletionTokens());
+        assertNull(reasoning.getMaxTokens());
+    }
+}
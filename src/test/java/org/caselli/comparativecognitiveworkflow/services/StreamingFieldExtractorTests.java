@@ -0,0 +1,27 @@
+package org.caselli.comparativecognitiveworkflow.services;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StreamingFieldExtractorTests {
+
+    @Test
+    void extractsFieldSplitAcrossChunks() {
+        StreamingFieldExtractor extractor = new StreamingFieldExtractor("motivation");
+        String[] chunks = { "```json\n{\"moti", "vation\" : \"Step 1", ": use \\", "\"dpu\\", "u0031\\", "\" only\\nStep 2\", ", "\"selectedPath\": [\"a\"]}" };
+
+        StringBuilder streamed = new StringBuilder();
+        for (String chunk : chunks) streamed.append(extractor.accept(chunk));
+
+        assertEquals("Step 1: use \"dpu1\" only\nStep 2", streamed.toString());
+        assertEquals(String.join("", chunks), extractor.text());
+    }
+
+    @Test
+    void ignoresOtherFields() {
+        StreamingFieldExtractor extractor = new StreamingFieldExtractor("motivation");
+
+        assertEquals("", extractor.accept("{\"selectedPath\": [\"a\", \"b\"]}"));
+    }
+}
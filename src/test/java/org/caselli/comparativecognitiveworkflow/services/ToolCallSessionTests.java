@@ -0,0 +1,59 @@
+package org.caselli.comparativecognitiveworkflow.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ToolCallSessionTests {
+
+    private final AtomicInteger executions = new AtomicInteger();
+
+    private final ToolCallback route = new ToolCallback() {
+        @Override
+        public ToolDefinition getToolDefinition() {
+            return ToolDefinition.builder().name("route").description("route").inputSchema("{}").build();
+        }
+
+        @Override
+        public String call(String toolInput) {
+            executions.incrementAndGet();
+            return "{\"paths\":[[\"s\",\"a\",\"e\"]]}";
+        }
+    };
+
+    @Test
+    void repeatedCallWithReorderedArgumentsIsMemoized() {
+        RoutingTrace trace = new RoutingTrace(RoutingStrategy.FUNCTION_CALLING);
+        ToolCallSession session = new ToolCallSession(trace, 4, new ObjectMapper());
+
+        String first = session.call(route, "{\"deviceIds\":[\"dpu-2\",\"nic-1\"]}", null);
+        String second = session.call(route, "{ \"deviceIds\": [\"nic-1\", \"dpu-2\"] }", null);
+
+        assertEquals(1, executions.get());
+        assertTrue(first.contains("paths"));
+        assertFalse(second.contains("paths"));
+        assertEquals(ToolCallSession.MEMOIZED, trace.getToolCallLog().get(1).outcome());
+        assertEquals("{\"deviceIds\":[\"dpu-2\",\"nic-1\"]}", trace.getToolCallLog().get(1).arguments());
+        assertEquals(first.length(), trace.getToolCallLog().get(0).resultBytes());
+    }
+
+    @Test
+    void callsBeyondTheLimitAreRefusedThenAborted() {
+        RoutingTrace trace = new RoutingTrace(RoutingStrategy.FUNCTION_CALLING);
+        ToolCallSession session = new ToolCallSession(trace, 2, new ObjectMapper());
+
+        session.call(route, "{\"deviceIds\":[\"a\"]}", null);
+        session.call(route, "{\"deviceIds\":[\"b\"]}", null);
+        String refused = session.call(route, "{\"deviceIds\":[\"c\"]}", null);
+
+        assertEquals(2, executions.get());
+        assertTrue(refused.contains("limit"));
+        assertThrows(IllegalStateException.class, () -> session.call(route, "{\"deviceIds\":[\"d\"]}", null));
+        assertEquals(4, trace.getToolCalls());
+    }
+}